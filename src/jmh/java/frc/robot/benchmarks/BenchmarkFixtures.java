@@ -0,0 +1,65 @@
+package frc.robot.benchmarks;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.*;
+import frc.robot.subsystems.vision.apriltags.AprilTagVisionIO;
+import frc.robot.subsystems.vision.apriltags.PhotonCameraProperties;
+import java.util.List;
+
+/**
+ * Synthetic inputs for the benchmarks, so that the hot paths can be measured without hardware or a physics simulation.
+ *
+ * <p>The fixtures reuse their arrays, so that they do not add to the allocation rates reported by the GC profiler. The
+ * drive IOs are shared with the tests, in {@link frc.robot.testing}.
+ */
+final class BenchmarkFixtures {
+    private BenchmarkFixtures() {}
+
+    /** the subsystems register themselves to the command scheduler, which needs the HAL */
+    static void initializeHAL() {
+        HAL.initialize(500, 0);
+    }
+
+    /**
+     * Fills the inputs of a camera with the exact camera-to-target transforms of the tags in front of it, as seen from
+     * a given robot pose.
+     */
+    static void fillCameraInputs(
+            AprilTagVisionIO.CameraInputs inputs,
+            List<AprilTag> tags,
+            PhotonCameraProperties cameraProperties,
+            Pose3d robotPose,
+            double arrivalTimeSeconds,
+            double delaySeconds) {
+        inputs.clear();
+        inputs.cameraConnected = true;
+        inputs.arrivalTimeStampSeconds = arrivalTimeSeconds;
+        inputs.resultsDelaySeconds = delaySeconds;
+        inputs.captureTimeStampSeconds = arrivalTimeSeconds - delaySeconds;
+
+        final Pose3d cameraPose = robotPose.transformBy(cameraProperties.robotToCamera);
+        for (AprilTag tag : tags) {
+            if (inputs.currentTargetsCount == AprilTagVisionIO.CameraInputs.MAX_TARGET_PER_CAMERA) break;
+            final Transform3d cameraToTarget = new Transform3d(cameraPose, tag.pose);
+            /* only the tags in front of the camera are visible */
+            if (cameraToTarget.getX() <= 0) continue;
+
+            final int index = inputs.currentTargetsCount++;
+            inputs.fiducialMarksID[index] = tag.ID;
+            writeTransform(cameraToTarget, inputs.bestCameraToTargets, index);
+        }
+    }
+
+    private static void writeTransform(Transform3d transform, double[] destination, int index) {
+        final int offset = index * AprilTagVisionIO.CameraInputs.TRANSFORM_STRIDE;
+        final Quaternion rotation = transform.getRotation().getQuaternion();
+        destination[offset] = transform.getX();
+        destination[offset + 1] = transform.getY();
+        destination[offset + 2] = transform.getZ();
+        destination[offset + 3] = rotation.getW();
+        destination[offset + 4] = rotation.getX();
+        destination[offset + 5] = rotation.getY();
+        destination[offset + 6] = rotation.getZ();
+    }
+}
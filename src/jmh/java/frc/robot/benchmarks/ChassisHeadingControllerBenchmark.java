@@ -0,0 +1,39 @@
+package frc.robot.benchmarks;
+
+import static edu.wpi.first.units.Units.*;
+import static frc.robot.constants.DriveTrainConstants.*;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import frc.robot.Robot;
+import frc.robot.constants.DriveControlLoops;
+import frc.robot.utils.ChassisHeadingController;
+import org.openjdk.jmh.annotations.*;
+
+/** The cost of one heading correction while aiming at a target and translating. */
+@State(Scope.Benchmark)
+public class ChassisHeadingControllerBenchmark {
+    private ChassisHeadingController controller;
+    private final Translation2d target = new Translation2d(16, 5.5);
+    private double robotX = 10, robotY = 3;
+
+    @Setup
+    public void setup() {
+        controller = new ChassisHeadingController(
+                new TrapezoidProfile.Constraints(
+                        CHASSIS_MAX_ANGULAR_VELOCITY.in(RadiansPerSecond),
+                        CHASSIS_MAX_ANGULAR_ACCELERATION.in(RadiansPerSecondPerSecond)),
+                DriveControlLoops.CHASSIS_ROTATION_CLOSE_LOOP,
+                new Rotation2d(),
+                DriveControlLoops.CHASSIS_HEADING_ACTUATION_DELAY_SECONDS);
+        controller.setHeadingRequest(new ChassisHeadingController.FaceToTargetRequest(() -> target, null));
+    }
+
+    @Benchmark
+    public double faceToTarget() {
+        /* drive across the field, wrapping around so the geometry stays in range */
+        robotY = robotY > 7 ? 1 : robotY + 3 * Robot.defaultPeriodSecs;
+        return controller.calculate(0, 3, 0.2, robotX, robotY, 0.1);
+    }
+}
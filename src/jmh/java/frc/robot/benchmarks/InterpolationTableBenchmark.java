@@ -0,0 +1,34 @@
+package frc.robot.benchmarks;
+
+import frc.robot.utils.CustomConfigs.MapleInterpolationTable;
+import org.openjdk.jmh.annotations.*;
+
+/** The cost of one lookup in an interpolation table, linear against monotone cubic. */
+@State(Scope.Benchmark)
+public class InterpolationTableBenchmark {
+    private static final int QUERIES_COUNT = 64;
+
+    @Param({"LINEAR", "MONOTONE_CUBIC"})
+    public MapleInterpolationTable.InterpolationMode mode;
+
+    private MapleInterpolationTable table;
+    private final double[] queries = new double[QUERIES_COUNT];
+    private int queryIndex = 0;
+
+    @Setup
+    public void setup() {
+        table = new MapleInterpolationTable(
+                "Benchmark-" + mode,
+                mode,
+                new MapleInterpolationTable.Variable("Distance", 1.4, 2, 3, 3.5, 4, 4.5, 4.8),
+                new MapleInterpolationTable.Variable("Shooter-Angle-Degrees", 54, 49, 37, 33.5, 30.5, 25, 25),
+                new MapleInterpolationTable.Variable("Shooter-RPM", 3000, 3000, 3500, 3700, 4000, 4300, 4500));
+        for (int i = 0; i < QUERIES_COUNT; i++) queries[i] = 1.2 + 3.8 * i / QUERIES_COUNT;
+    }
+
+    @Benchmark
+    public double interpolateVariable() {
+        queryIndex = (queryIndex + 1) % QUERIES_COUNT;
+        return table.interpolateVariable("Shooter-RPM", queries[queryIndex]);
+    }
+}
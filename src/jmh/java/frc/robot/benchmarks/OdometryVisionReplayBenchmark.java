@@ -0,0 +1,98 @@
+package frc.robot.benchmarks;
+
+import static frc.robot.constants.DriveTrainConstants.*;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.Robot;
+import frc.robot.subsystems.drive.SwerveDriveOdometryEngine;
+import frc.robot.utils.CustomMaths.FourModuleSwerveKinematics;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * One robot period of odometry with latency-compensated vision measurements, one per camera: the odometry engine of
+ * this project against the stock WPILib {@link SwerveDrivePoseEstimator}.
+ */
+@State(Scope.Benchmark)
+public class OdometryVisionReplayBenchmark {
+    private static final double VISION_DELAY_SECONDS = 0.05, WHEEL_SPEED_MPS = 2;
+
+    @Param({"1", "3", "5"})
+    public int camerasCount;
+
+    private SwerveDriveOdometryEngine engine;
+    private SwerveDriveOdometryEngine.OdometryBatch batch;
+    private SwerveDrivePoseEstimator stockEstimator;
+    private final SwerveModulePosition[] stockPositions = new SwerveModulePosition[4];
+    private final Matrix<N3, N1> visionStdDevs = VecBuilder.fill(0.1, 0.1, 0.2);
+    private final Rotation2d gyroYaw = new Rotation2d();
+    private double time, distance;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        final int historyCapacity =
+                (int) Math.ceil(SwerveDriveOdometryEngine.POSE_HISTORY_DURATION_SECONDS * ODOMETRY_FREQUENCY)
+                        + ODOMETRY_MAX_SAMPLES_PER_PERIOD;
+        engine = new SwerveDriveOdometryEngine(
+                new FourModuleSwerveKinematics(MODULE_TRANSLATIONS), new double[] {0.02, 0.02, 0.01}, historyCapacity);
+        batch = new SwerveDriveOdometryEngine.OdometryBatch(SIMULATION_TICKS_IN_1_PERIOD, 4);
+        batch.size = SIMULATION_TICKS_IN_1_PERIOD;
+
+        for (int i = 0; i < 4; i++) stockPositions[i] = new SwerveModulePosition();
+        stockEstimator = new SwerveDrivePoseEstimator(
+                DRIVE_KINEMATICS,
+                gyroYaw,
+                stockPositions,
+                new Pose2d(),
+                VecBuilder.fill(0.02, 0.02, 0.01),
+                visionStdDevs);
+        time = 1;
+        distance = 0;
+    }
+
+    @Benchmark
+    public Pose2d odometryEngine() {
+        for (int sample = 0; sample < SIMULATION_TICKS_IN_1_PERIOD; sample++) {
+            advance();
+            batch.timeStampsSeconds[sample] = time;
+            batch.gyroYawsRad[sample] = 0;
+            for (int module = 0; module < 4; module++) batch.modulesDistancesMeters[sample][module] = distance;
+        }
+        engine.integrate(batch);
+        for (int camera = 0; camera < camerasCount; camera++)
+            engine.addVisionMeasurement(visionPose(camera), visionTimeStamp(camera), 0.1, 0.1, 0.2);
+        return engine.getEstimatedPose();
+    }
+
+    @Benchmark
+    public Pose2d stockPoseEstimator() {
+        for (int sample = 0; sample < SIMULATION_TICKS_IN_1_PERIOD; sample++) {
+            advance();
+            for (int module = 0; module < 4; module++) stockPositions[module].distanceMeters = distance;
+            stockEstimator.updateWithTime(time, gyroYaw, stockPositions);
+        }
+        for (int camera = 0; camera < camerasCount; camera++)
+            stockEstimator.addVisionMeasurement(visionPose(camera), visionTimeStamp(camera), visionStdDevs);
+        return stockEstimator.getEstimatedPosition();
+    }
+
+    private void advance() {
+        time += Robot.defaultPeriodSecs / SIMULATION_TICKS_IN_1_PERIOD;
+        distance += WHEEL_SPEED_MPS * Robot.defaultPeriodSecs / SIMULATION_TICKS_IN_1_PERIOD;
+    }
+
+    /* the cameras capture at slightly different times, all in the past */
+    private double visionTimeStamp(int camera) {
+        return time - VISION_DELAY_SECONDS - camera * 0.005;
+    }
+
+    private Pose2d visionPose(int camera) {
+        return new Pose2d(distance - WHEEL_SPEED_MPS * (VISION_DELAY_SECONDS + camera * 0.005) + 0.01, 0.01, gyroYaw);
+    }
+}
@@ -0,0 +1,44 @@
+package frc.robot.benchmarks;
+
+import static frc.robot.constants.VisionConstants.*;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.subsystems.vision.apriltags.AprilTagVisionIO;
+import frc.robot.subsystems.vision.apriltags.CameraHeightAndPitchRollAngleFilter;
+import frc.robot.subsystems.vision.apriltags.MapleMultiTagPoseEstimator;
+import frc.robot.subsystems.vision.apriltags.PhotonCameraProperties;
+import java.util.List;
+import org.openjdk.jmh.annotations.*;
+
+/** The cost of solving the robot pose from one frame of each camera. */
+@State(Scope.Benchmark)
+public class PoseEstimatorBenchmark {
+    @Param({"1", "3", "5"})
+    public int camerasCount;
+
+    private MapleMultiTagPoseEstimator estimator;
+    private AprilTagVisionIO.VisionInputs inputs;
+    /* in front of the red speaker */
+    private final Pose2d robotPose = new Pose2d(14.5, 5.5, Rotation2d.fromDegrees(0));
+
+    @Setup
+    public void setup() {
+        final List<PhotonCameraProperties> cameras = photonVisionCameras.subList(0, camerasCount);
+        estimator = new MapleMultiTagPoseEstimator(
+                fieldLayout, new CameraHeightAndPitchRollAngleFilter(), cameras, false);
+        inputs = new AprilTagVisionIO.VisionInputs(camerasCount);
+        for (int i = 0; i < camerasCount; i++) {
+            BenchmarkFixtures.fillCameraInputs(
+                    inputs.camerasFrames[i][0], fieldLayout.getTags(), cameras.get(i), new Pose3d(robotPose), 1, 0.03);
+            inputs.camerasConnected[i] = true;
+            inputs.camerasFramesCount[i] = 1;
+        }
+    }
+
+    @Benchmark
+    public List<MapleMultiTagPoseEstimator.RobotPoseEstimationResult> estimateRobotPose() {
+        return estimator.estimateRobotPose(inputs, robotPose);
+    }
+}
@@ -0,0 +1,39 @@
+package frc.robot.benchmarks;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.Robot;
+import frc.robot.subsystems.drive.SwerveDrive;
+import frc.robot.testing.ConstantSpeedModuleIO;
+import frc.robot.testing.StillGyroIO;
+import org.openjdk.jmh.annotations.*;
+
+/** The per-period cost of the drivetrain: odometry inputs, pose estimation and the module setpoints. */
+@State(Scope.Benchmark)
+public class SwerveDrivePeriodicBenchmark {
+    private SwerveDrive drive;
+    private final ChassisSpeeds speeds = new ChassisSpeeds(2, 1, 0.5);
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.initializeHAL();
+        drive = new SwerveDrive(
+                SwerveDrive.DriveType.GENERIC,
+                new StillGyroIO(),
+                new ConstantSpeedModuleIO(2, Robot.defaultPeriodSecs),
+                new ConstantSpeedModuleIO(2, Robot.defaultPeriodSecs),
+                new ConstantSpeedModuleIO(2, Robot.defaultPeriodSecs),
+                new ConstantSpeedModuleIO(2, Robot.defaultPeriodSecs));
+    }
+
+    @Benchmark
+    public Pose2d periodic() {
+        drive.periodic(Robot.defaultPeriodSecs, true);
+        return drive.getPose();
+    }
+
+    @Benchmark
+    public void runRawChassisSpeeds() {
+        drive.runRawChassisSpeeds(speeds);
+    }
+}
@@ -0,0 +1,35 @@
+package frc.robot.benchmarks;
+
+import static frc.robot.constants.DriveTrainConstants.*;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.utils.CustomMaths.FourModuleSwerveKinematics;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** The inverse then forward kinematics of the drivetrain, closed-form against WPILib. */
+@State(Scope.Benchmark)
+public class SwerveKinematicsBenchmark {
+    private final FourModuleSwerveKinematics kinematics = new FourModuleSwerveKinematics(MODULE_TRANSLATIONS);
+    private final double[] speeds = new double[4], anglesRad = new double[4], chassisSpeeds = new double[3];
+    private final ChassisSpeeds requestedSpeeds = new ChassisSpeeds(2, 1, 0.5);
+
+    @Benchmark
+    public void fourModuleKinematics(Blackhole blackhole) {
+        kinematics.toModuleStates(
+                requestedSpeeds.vxMetersPerSecond,
+                requestedSpeeds.vyMetersPerSecond,
+                requestedSpeeds.omegaRadiansPerSecond,
+                speeds,
+                anglesRad);
+        kinematics.toChassisSpeeds(speeds, anglesRad, chassisSpeeds);
+        blackhole.consume(chassisSpeeds);
+    }
+
+    @Benchmark
+    public ChassisSpeeds wpilibKinematics() {
+        final SwerveModuleState[] states = DRIVE_KINEMATICS.toSwerveModuleStates(requestedSpeeds);
+        return DRIVE_KINEMATICS.toChassisSpeeds(states);
+    }
+}
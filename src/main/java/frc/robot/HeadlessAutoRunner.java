@@ -0,0 +1,352 @@
+package frc.robot;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.autos.Auto;
+import frc.robot.constants.RobotMode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ *
+ *
+ * <h1>Runs every auto in a headless simulation, as fast as possible.</h1>
+ *
+ * <p>Boots the robot code in {@link RobotMode#SIM}, without the simulation GUI, the NetworkTables server and the
+ * AdvantageKit NT publisher, and with the loop timing disabled: the simulated clock is paused, and advanced by one
+ * robot period at the end of every loop, so the loops run back to back while the robot code still sees the normal
+ * period.
+ *
+ * <p>Each auto of {@link RobotContainer#getAutos()} is run from its starting pose, and then from random perturbations
+ * of it: the robot is placed off the starting pose while the odometry starts on it, like a robot that was placed
+ * inaccurately. A run lasts until the auto command finishes, or for {@link #AUTO_DURATION_SECONDS}. Once all the runs
+ * are done, a summary is printed and the program exits.
+ *
+ * <p>The runs are spread over several processes, one simulation each, since a robot program only holds one
+ * {@link frc.robot.utils.SimulationContext}. The runs are listed the same way in every process, each process runs a
+ * shard of them and reports the results on its output, and the first process prints the summary.
+ *
+ * <p>Run with <code>./gradlew simulateAutosHeadless -Pperturbations=20 -Pjobs=8</code>.
+ */
+public class HeadlessAutoRunner extends Robot {
+    public static final double AUTO_DURATION_SECONDS = 15.0;
+    private static final double PERTURBATION_TRANSLATION_METERS = 0.1, PERTURBATION_ROTATION_DEGREES = 5;
+    /* the perturbations are the same on every execution, so that the summaries can be compared */
+    private static final long PERTURBATIONS_SEED = 488;
+    /* the loops between two runs, so that the subsystems see the robot disabled */
+    private static final int DISABLED_LOOPS_BETWEEN_RUNS = 2;
+    /* runs all the runs in this process, and prints the summary */
+    private static final int ALL_SHARDS = -1;
+
+    private final int perturbations, jobs, shard;
+    private final List<AutoRun> runs = new ArrayList<>();
+    private final List<RunResult> results = new ArrayList<>();
+    private int currentRunIndex = 0, disabledLoops = 0;
+    private boolean running = false;
+    private double runStartTimeSeconds = 0;
+    /* updated on every physics sub-tick */
+    private boolean touchingObstacle = false;
+    private int collisions = 0;
+
+    /** Arguments: the number of perturbations per auto, the number of processes, and the shard of a sub-process. */
+    public static void main(String... args) throws IOException, InterruptedException {
+        final int perturbations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final int jobs = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        final int shard = args.length > 2 ? Integer.parseInt(args[2]) : ALL_SHARDS;
+        if (shard == ALL_SHARDS && jobs > 1) runInSubProcesses(perturbations, jobs);
+        else RobotBase.startRobot(() -> new HeadlessAutoRunner(perturbations, jobs, shard));
+    }
+
+    private HeadlessAutoRunner(int perturbations, int jobs, int shard) {
+        this.perturbations = perturbations;
+        this.jobs = jobs;
+        this.shard = shard;
+        setUseTiming(false);
+        NetworkTableInstance.getDefault().stopServer();
+    }
+
+    @Override
+    protected boolean isHeadless() {
+        return true;
+    }
+
+    @Override
+    public void robotInit() {
+        if (CURRENT_ROBOT_MODE != RobotMode.SIM)
+            throw new IllegalStateException("the headless auto runner only runs in simulation");
+        SimHooks.pauseTiming();
+        super.robotInit();
+
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setAllianceStationId(AllianceStationID.Blue1);
+        setAutonomousEnabled(false);
+        robotContainer.simulation.arena.addSubTickCallback(dtSeconds -> trackCollisions());
+
+        final Random random = new Random(PERTURBATIONS_SEED);
+        int runIndex = 0;
+        for (Map.Entry<String, Auto> auto : robotContainer.getAutos().entrySet())
+            for (int i = 0; i <= perturbations; i++, runIndex++) {
+                /* the first run of each auto is unperturbed */
+                final Transform2d startingPoseOffset = i == 0
+                        ? new Transform2d()
+                        : new Transform2d(
+                                randomInRange(random, PERTURBATION_TRANSLATION_METERS),
+                                randomInRange(random, PERTURBATION_TRANSLATION_METERS),
+                                Rotation2d.fromDegrees(randomInRange(random, PERTURBATION_ROTATION_DEGREES)));
+                if (shard == ALL_SHARDS || runIndex % jobs == shard)
+                    runs.add(new AutoRun(runIndex, auto.getKey(), auto.getValue(), i, startingPoseOffset));
+            }
+        System.err.printf("Headless auto runner: %d runs%n", runs.size());
+    }
+
+    private static double randomInRange(Random random, double maxMagnitude) {
+        return (random.nextDouble() * 2 - 1) * maxMagnitude;
+    }
+
+    /* the autos are selected by the runner, not from the dashboard */
+    @Override
+    public void disabledPeriodic() {}
+
+    @Override
+    public void simulationPeriodic() {
+        super.simulationPeriodic();
+        updateRuns();
+        SimHooks.stepTiming(defaultPeriodSecs);
+    }
+
+    private void updateRuns() {
+        if (running) {
+            final double elapsedSeconds = Timer.getFPGATimestamp() - runStartTimeSeconds;
+            final boolean completed = !robotContainer.getAutonomousCommand().isScheduled();
+            if (!completed && elapsedSeconds < AUTO_DURATION_SECONDS) return;
+            finishRun(runs.get(currentRunIndex++), completed, elapsedSeconds);
+            running = false;
+            disabledLoops = 0;
+            setAutonomousEnabled(false);
+            return;
+        }
+
+        if (++disabledLoops < DISABLED_LOOPS_BETWEEN_RUNS) return;
+        if (currentRunIndex < runs.size()) startRun(runs.get(currentRunIndex));
+        else {
+            if (shard == ALL_SHARDS) printSummary(results);
+            Logger.end();
+            System.exit(0);
+        }
+    }
+
+    private void startRun(AutoRun run) {
+        try {
+            robotContainer.selectAutoForSimulation(run.auto, run.startingPoseOffset);
+        } catch (Exception e) {
+            throw new RuntimeException("failed to load auto " + run.autoName, e);
+        }
+        touchingObstacle = false;
+        collisions = 0;
+        runStartTimeSeconds = Timer.getFPGATimestamp();
+        running = true;
+        setAutonomousEnabled(true);
+    }
+
+    private void finishRun(AutoRun run, boolean completed, double durationSeconds) {
+        final Pose2d finalPose = robotContainer.driveSimulation.getSimulatedDriveTrainPose();
+        final RunResult result = new RunResult(
+                run.runIndex,
+                run.autoName,
+                run.perturbationIndex,
+                completed,
+                durationSeconds,
+                finalPose.getX(),
+                finalPose.getY(),
+                robotContainer.drive.getPose().getTranslation().getDistance(finalPose.getTranslation()),
+                collisions);
+        results.add(result);
+        /* a sub-process reports to the main process, and only the results go to the output */
+        if (shard == ALL_SHARDS) System.out.println(result.describe());
+        else System.out.println(result.toLine());
+    }
+
+    /** the new state is seen by the robot code from the next loop */
+    private static void setAutonomousEnabled(boolean enabled) {
+        DriverStationSim.setAutonomous(true);
+        DriverStationSim.setEnabled(enabled);
+        DriverStationSim.notifyNewData();
+    }
+
+    private void trackCollisions() {
+        if (!running) return;
+        final boolean touching = robotContainer.simulation.arena.isTouchingObstacle(robotContainer.driveSimulation);
+        if (touching && !touchingObstacle) collisions++;
+        touchingObstacle = touching;
+    }
+
+    /** Runs the shards in sub-processes, with the same JVM and arguments, and prints the summary of all of them. */
+    private static void runInSubProcesses(int perturbations, int jobs) throws IOException, InterruptedException {
+        final List<Process> processes = new ArrayList<>();
+        for (int shard = 0; shard < jobs; shard++) {
+            final List<String> command = new ArrayList<>();
+            command.add(ProcessHandle.current().info().command().orElse("java"));
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(HeadlessAutoRunner.class.getName());
+            command.add(String.valueOf(perturbations));
+            command.add(String.valueOf(jobs));
+            command.add(String.valueOf(shard));
+            processes.add(new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+        }
+
+        /* every output is read on its own thread, so that no process blocks on a full pipe */
+        final ExecutorService readers = Executors.newFixedThreadPool(jobs);
+        final List<Future<List<RunResult>>> shardsResults = new ArrayList<>();
+        for (Process process : processes) shardsResults.add(readers.submit(() -> readResults(process)));
+        final List<RunResult> results = new ArrayList<>();
+        try {
+            for (Future<List<RunResult>> shardResults : shardsResults) results.addAll(shardResults.get());
+        } catch (ExecutionException e) {
+            throw new IOException("failed to read the results of a simulation process", e.getCause());
+        } finally {
+            readers.shutdown();
+        }
+
+        for (Process process : processes)
+            if (process.waitFor() != 0)
+                throw new IllegalStateException("a simulation process failed with exit code " + process.exitValue());
+        results.sort(Comparator.comparingInt(RunResult::runIndex));
+        printSummary(results);
+    }
+
+    private static List<RunResult> readResults(Process process) throws IOException {
+        final List<RunResult> results = new ArrayList<>();
+        try (BufferedReader reader = process.inputReader()) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (line.startsWith(RunResult.LINE_PREFIX)) {
+                    final RunResult result = RunResult.fromLine(line);
+                    System.out.println(result.describe());
+                    results.add(result);
+                }
+        }
+        return results;
+    }
+
+    /** @param results all the results, ordered by run, so that the runs of each auto follow its unperturbed run */
+    private static void printSummary(List<RunResult> results) {
+        System.out.printf(
+                "%n%-52s %6s %10s %10s %12s %12s %12s %10s%n",
+                "Auto",
+                "Done",
+                "Time(s)",
+                "MaxTime(s)",
+                "PoseErr(m)",
+                "MaxPoseErr",
+                "OdomErr(m)",
+                "Collisions");
+        int i = 0;
+        while (i < results.size()) {
+            /* the final pose errors are relative to the unperturbed run of the auto */
+            final RunResult nominalRun = results.get(i);
+            int completedRuns = 0, collisionsTotal = 0, runsCount = 0;
+            double totalTime = 0, maxTime = 0, totalPoseError = 0, maxPoseError = 0, totalOdometryError = 0;
+            for (; i < results.size() && results.get(i).autoName.equals(nominalRun.autoName); i++) {
+                final RunResult run = results.get(i);
+                final double poseError =
+                        Math.hypot(run.finalX - nominalRun.finalX, run.finalY - nominalRun.finalY);
+                runsCount++;
+                if (run.completed) completedRuns++;
+                collisionsTotal += run.collisions;
+                totalTime += run.durationSeconds;
+                maxTime = Math.max(maxTime, run.durationSeconds);
+                totalPoseError += poseError;
+                maxPoseError = Math.max(maxPoseError, poseError);
+                totalOdometryError += run.odometryErrorMeters;
+            }
+            System.out.printf(
+                    "%-52s %6s %10.2f %10.2f %12.3f %12.3f %12.3f %10d%n",
+                    nominalRun.autoName,
+                    completedRuns + "/" + runsCount,
+                    totalTime / runsCount,
+                    maxTime,
+                    totalPoseError / runsCount,
+                    maxPoseError,
+                    totalOdometryError / runsCount,
+                    collisionsTotal);
+        }
+        System.out.printf(
+                "%nTime: until the auto finishes, or %.0f s; PoseErr: final pose against the unperturbed run; "
+                        + "OdomErr: final estimated pose against the simulated pose%n",
+                AUTO_DURATION_SECONDS);
+    }
+
+    private record AutoRun(
+            int runIndex, String autoName, Auto auto, int perturbationIndex, Transform2d startingPoseOffset) {}
+
+    private record RunResult(
+            int runIndex,
+            String autoName,
+            int perturbationIndex,
+            boolean completed,
+            double durationSeconds,
+            double finalX,
+            double finalY,
+            double odometryErrorMeters,
+            int collisions) {
+        private static final String LINE_PREFIX = "RUN_RESULT\t";
+
+        /** @return the result on one tab-separated line, the auto name last since it may contain anything else */
+        private String toLine() {
+            return LINE_PREFIX
+                    + String.join(
+                            "\t",
+                            String.valueOf(runIndex),
+                            String.valueOf(perturbationIndex),
+                            String.valueOf(completed),
+                            String.valueOf(durationSeconds),
+                            String.valueOf(finalX),
+                            String.valueOf(finalY),
+                            String.valueOf(odometryErrorMeters),
+                            String.valueOf(collisions),
+                            autoName);
+        }
+
+        private static RunResult fromLine(String line) {
+            final String[] fields = line.substring(LINE_PREFIX.length()).split("\t", 9);
+            return new RunResult(
+                    Integer.parseInt(fields[0]),
+                    fields[8],
+                    Integer.parseInt(fields[1]),
+                    Boolean.parseBoolean(fields[2]),
+                    Double.parseDouble(fields[3]),
+                    Double.parseDouble(fields[4]),
+                    Double.parseDouble(fields[5]),
+                    Double.parseDouble(fields[6]),
+                    Integer.parseInt(fields[7]));
+        }
+
+        private String describe() {
+            return String.format(
+                    "%s #%d: %s in %.2f s, %d collisions",
+                    autoName, perturbationIndex, completed ? "done" : "timed out", durationSeconds, collisions);
+        }
+    }
+}
@@ -9,7 +9,8 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import frc.robot.constants.RobotMode;
 import frc.robot.subsystems.MapleSubsystem;
-import org.ironmaple.simulation.SimulatedArena;
+import frc.robot.subsystems.MapleSubsystemScheduler;
+import frc.robot.utils.LoopTimingProfiler;
 import org.littletonrobotics.junction.LogFileUtil;
 import org.littletonrobotics.junction.LoggedRobot;
 import org.littletonrobotics.junction.Logger;
@@ -20,8 +21,10 @@ import org.littletonrobotics.junction.wpilog.WPILOGWriter;
 public class Robot extends LoggedRobot {
     private static final RobotMode JAVA_SIM_MODE = RobotMode.SIM;
     public static final RobotMode CURRENT_ROBOT_MODE = isReal() ? RobotMode.REAL : JAVA_SIM_MODE;
+    private static final LoopTimingProfiler.Scope ARENA_SIMULATION_SCOPE = LoopTimingProfiler.SIMULATION.child("Arena"),
+            FIELD_DISPLAY_SCOPE = LoopTimingProfiler.SIMULATION.child("FieldDisplay");
     private Command autonomousCommand;
-    private RobotContainer robotContainer;
+    protected RobotContainer robotContainer;
 
     @Override
     public void robotInit() {
@@ -54,7 +57,7 @@ public class Robot extends LoggedRobot {
                 // Running a physics simulator
                 // Log to CodeDirectory/logs if you want to test logging system in a simulation
                 // Logger.addDataReceiver(new WPILOGWriter());
-                Logger.addDataReceiver(new NT4Publisher());
+                if (!isHeadless()) Logger.addDataReceiver(new NT4Publisher());
             }
             case REPLAY -> {
                 // Replaying a log, set up replay source
@@ -73,11 +76,21 @@ public class Robot extends LoggedRobot {
         Logger.start();
     }
 
+    /** Whether the robot runs without the dashboards, see {@link HeadlessAutoRunner}. */
+    protected boolean isHeadless() {
+        return false;
+    }
+
     /** This function is called periodically during all modes. */
     @Override
     public void robotPeriodic() {
+        LoopTimingProfiler.startLoop();
         MapleSubsystem.checkForOnDisableAndEnable();
+        MapleSubsystemScheduler.runCriticalSubsystems();
+        LoopTimingProfiler.COMMAND_SCHEDULER.begin();
         CommandScheduler.getInstance().run();
+        LoopTimingProfiler.COMMAND_SCHEDULER.end();
+        MapleSubsystemScheduler.runRemainingSubsystems();
     }
 
     /** This function is called once when the robot is disabled. */
@@ -137,7 +150,13 @@ public class Robot extends LoggedRobot {
     /** This function is called periodically whilst in simulation. */
     @Override
     public void simulationPeriodic() {
-        SimulatedArena.getInstance().simulationPeriodic();
+        LoopTimingProfiler.SIMULATION.begin();
+        ARENA_SIMULATION_SCOPE.begin();
+        if (robotContainer.simulation != null) robotContainer.simulation.arena.simulationPeriodic();
+        ARENA_SIMULATION_SCOPE.end();
+        FIELD_DISPLAY_SCOPE.begin();
         robotContainer.updateFieldSimAndDisplay();
+        FIELD_DISPLAY_SCOPE.end();
+        LoopTimingProfiler.SIMULATION.end();
     }
 }
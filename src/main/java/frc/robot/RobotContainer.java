@@ -12,6 +12,7 @@ import com.pathplanner.lib.commands.PathPlannerAuto;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.wpilibj.*;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
@@ -29,16 +30,20 @@ import frc.robot.subsystems.vision.apriltags.AprilTagVision;
 import frc.robot.subsystems.vision.apriltags.AprilTagVisionIOReal;
 import frc.robot.subsystems.vision.apriltags.ApriltagVisionIOSim;
 import frc.robot.subsystems.vision.apriltags.PhotonCameraProperties;
-import frc.robot.utils.AIRobotInSimulation;
 import frc.robot.utils.MapleJoystickDriveInput;
 import frc.robot.utils.MapleShooterOptimization;
+import frc.robot.utils.SimulationContext;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Supplier;
-import org.ironmaple.simulation.SimulatedArena;
 import org.ironmaple.simulation.drivesims.SwerveDriveSimulation;
 import org.ironmaple.simulation.drivesims.SwerveModuleSimulation;
 import org.ironmaple.simulation.drivesims.configs.DriveTrainSimulationConfig;
+import org.json.simple.parser.ParseException;
 import org.littletonrobotics.junction.Logger;
 import org.littletonrobotics.junction.networktables.LoggedDashboardChooser;
 
@@ -66,11 +71,13 @@ public class RobotContainer {
     }
     // Dashboard Selections
     private final LoggedDashboardChooser<JoystickMode> driverModeChooser;
+    private final Map<String, Auto> autos;
     private final LoggedDashboardChooser<Auto> autoChooser;
     private final SendableChooser<Supplier<Command>> testChooser;
 
-    // Simulated drive
-    private final SwerveDriveSimulation driveSimulation;
+    // Simulated match and drive, null outside the simulation
+    public final SimulationContext simulation;
+    public final SwerveDriveSimulation driveSimulation;
 
     /** The container for the robot. Contains subsystems, OI devices, and commands. */
     public RobotContainer() {
@@ -83,6 +90,7 @@ public class RobotContainer {
         switch (Robot.CURRENT_ROBOT_MODE) {
             case REAL -> {
                 // Real robot, instantiate hardware IO implementations
+                simulation = null;
                 driveSimulation = null;
 
                 powerDistribution = new PowerDistribution(0, PowerDistribution.ModuleType.kCTRE);
@@ -111,6 +119,7 @@ public class RobotContainer {
             }
 
             case SIM -> {
+                this.simulation = new SimulationContext();
                 this.driveSimulation = new SwerveDriveSimulation(
                         DriveTrainSimulationConfig.Default()
                                 .withRobotMass(DriveTrainConstants.ROBOT_MASS)
@@ -129,7 +138,7 @@ public class RobotContainer {
                                         DriveTrainConstants.WHEEL_RADIUS.in(Meters),
                                         DriveTrainConstants.STEER_INERTIA.in(KilogramSquareMeters))),
                         new Pose2d(3, 3, new Rotation2d()));
-                SimulatedArena.getInstance().addDriveTrainSimulation(driveSimulation);
+                simulation.arena.addDriveTrainSimulation(driveSimulation);
 
                 powerDistribution = new PowerDistribution();
                 // Sim robot, instantiate physics sim IO implementations
@@ -140,6 +149,7 @@ public class RobotContainer {
                 final GyroIOSim gyroIOSim = new GyroIOSim(driveSimulation.getGyroSimulation());
                 drive = new SwerveDrive(
                         SwerveDrive.DriveType.GENERIC, gyroIOSim, frontLeft, frontRight, backLeft, backRight);
+                simulation.arena.addSubTickCallback(drive::simulationSubTick);
 
                 aprilTagVision = new AprilTagVision(
                         new ApriltagVisionIOSim(
@@ -149,22 +159,30 @@ public class RobotContainer {
                         camerasProperties,
                         drive);
 
-                SimulatedArena.getInstance().resetFieldForAuto();
-                AIRobotInSimulation.startOpponentRobotSimulations();
+                simulation.arena.resetFieldForAuto();
+                simulation.startAIRobots();
             }
 
             default -> {
+                this.simulation = null;
                 this.driveSimulation = null;
 
                 powerDistribution = new PowerDistribution();
                 // Replayed robot, disable IO implementations
+                final ModuleIO replayedModuleIO = new ModuleIO() {
+                    @Override
+                    public void updateInputs(ModuleIOInputs inputs) {}
+
+                    @Override
+                    public void updateControlFeedback(double[] feedback) {}
+                };
                 drive = new SwerveDrive(
                         SwerveDrive.DriveType.GENERIC,
                         (inputs) -> {},
-                        (inputs) -> {},
-                        (inputs) -> {},
-                        (inputs) -> {},
-                        (inputs) -> {});
+                        replayedModuleIO,
+                        replayedModuleIO,
+                        replayedModuleIO,
+                        replayedModuleIO);
 
                 aprilTagVision = new AprilTagVision((inputs) -> {}, camerasProperties, drive);
             }
@@ -173,6 +191,7 @@ public class RobotContainer {
         this.drive.configHolonomicPathPlannerAutoBuilder();
 
         SmartDashboard.putData("Select Test", testChooser = buildTestsChooser());
+        autos = buildAutos();
         autoChooser = buildAutoChooser();
 
         driverModeChooser = new LoggedDashboardChooser<>("Driver Mode", new SendableChooser<>());
@@ -202,24 +221,33 @@ public class RobotContainer {
         pathPlannerAuto.event("hello world").onTrue(Commands.runOnce(() -> System.out.println("hello world!!!")));
     }
 
-    private LoggedDashboardChooser<Auto> buildAutoChooser() {
-        final LoggedDashboardChooser<Auto> autoSendableChooser = new LoggedDashboardChooser<>("Select Auto");
-        autoSendableChooser.addDefaultOption("None", Auto.none());
-        autoSendableChooser.addOption(
+    private static Map<String, Auto> buildAutos() {
+        final Map<String, Auto> autos = new LinkedHashMap<>();
+        autos.put(
                 "Example Custom Auto With PathPlanner Trajectories",
                 new ExampleCustomAutoWithPathPlannerTrajectories());
-        autoSendableChooser.addOption(
-                "Example Custom Auto With Choreo Trajectories: Rush", new ExampleCustomAutoWithChoreoTrajectories());
-        autoSendableChooser.addOption(
-                "Example Custom Auto With Choreo Trajectories", new ExampleCustomAutoWithChoreoTrajectories2());
-        autoSendableChooser.addOption("Example Pathplanner Auto", new PathPlannerAutoWrapper("Example Auto"));
-        autoSendableChooser.addOption("Example Face To Target", new ExampleFaceToTarget());
+        autos.put("Example Custom Auto With Choreo Trajectories: Rush", new ExampleCustomAutoWithChoreoTrajectories());
+        autos.put("Example Custom Auto With Choreo Trajectories", new ExampleCustomAutoWithChoreoTrajectories2());
+        autos.put("Example Pathplanner Auto", new PathPlannerAutoWrapper("Example Auto"));
+        autos.put("Example Face To Target", new ExampleFaceToTarget());
         // TODO: add your autos here
+        return autos;
+    }
+
+    private LoggedDashboardChooser<Auto> buildAutoChooser() {
+        final LoggedDashboardChooser<Auto> autoSendableChooser = new LoggedDashboardChooser<>("Select Auto");
+        autoSendableChooser.addDefaultOption("None", Auto.none());
+        autos.forEach(autoSendableChooser::addOption);
 
         SmartDashboard.putData("Select Auto", autoSendableChooser.getSendableChooser());
         return autoSendableChooser;
     }
 
+    /** @return all the autos, by name, in the order of the dashboard */
+    public Map<String, Auto> getAutos() {
+        return Collections.unmodifiableMap(autos);
+    }
+
     private static SendableChooser<Supplier<Command>> buildTestsChooser() {
         final SendableChooser<Supplier<Command>> testsChooser = new SendableChooser<>();
         testsChooser.setDefaultOption("None", Commands::none);
@@ -241,10 +269,7 @@ public class RobotContainer {
         final Auto selectedAuto = autoChooser.get();
         if (FieldConstants.isSidePresentedAsRed() != isDSPresentedAsRed || selectedAuto != previouslySelectedAuto) {
             try {
-                this.autonomousCommand =
-                        selectedAuto.getAutoCommand(this).finallyDo(MapleSubsystem::disableAllSubsystems);
-                configureAutoTriggers(
-                        new PathPlannerAuto(autonomousCommand, selectedAuto.getStartingPoseAtBlueAlliance()));
+                loadAuto(selectedAuto);
             } catch (Exception e) {
                 this.autonomousCommand = Commands.none();
                 DriverStation.reportError(
@@ -262,16 +287,37 @@ public class RobotContainer {
         isDSPresentedAsRed = FieldConstants.isSidePresentedAsRed();
     }
 
+    private void loadAuto(Auto auto) throws IOException, ParseException {
+        this.autonomousCommand = auto.getAutoCommand(this).finallyDo(MapleSubsystem::disableAllSubsystems);
+        configureAutoTriggers(new PathPlannerAuto(autonomousCommand, auto.getStartingPoseAtBlueAlliance()));
+    }
+
+    /**
+     * Selects an auto without the dashboard, for the headless simulations, and places the robot for it.
+     *
+     * @param startingPoseOffset the offset of the simulated robot from the starting pose of the auto, while the
+     *     odometry still starts at the starting pose, like a robot that was placed inaccurately
+     */
+    public void selectAutoForSimulation(Auto auto, Transform2d startingPoseOffset)
+            throws IOException, ParseException {
+        loadAuto(auto);
+        final Pose2d startingPose = auto.getStartingPoseAtBlueAlliance();
+        resetFieldAndOdometryForAuto(startingPose);
+        if (driveSimulation != null)
+            driveSimulation.setSimulationWorldPose(
+                    FieldConstants.toCurrentAlliancePose(startingPose).transformBy(startingPoseOffset));
+    }
+
     private void resetFieldAndOdometryForAuto(Pose2d robotStartingPoseAtBlueAlliance) {
         final Pose2d startingPose = FieldConstants.toCurrentAlliancePose(robotStartingPoseAtBlueAlliance);
 
         if (driveSimulation != null) {
             driveSimulation.setSimulationWorldPose(startingPose);
-            SimulatedArena.getInstance().resetFieldForAuto();
+            simulation.arena.resetFieldForAuto();
             updateFieldSimAndDisplay();
         }
 
-        drive.periodic();
+        drive.runPeriodic();
         drive.setPose(startingPose);
     }
 
@@ -335,9 +381,9 @@ public class RobotContainer {
         Logger.recordOutput("FieldSimulation/RobotPosition", driveSimulation.getSimulatedDriveTrainPose());
         Logger.recordOutput(
                 "FieldSimulation/Notes",
-                SimulatedArena.getInstance().getGamePiecesByType("Note").toArray(Pose3d[]::new));
-        Logger.recordOutput("FieldSimulation/OpponentRobotPositions", AIRobotInSimulation.getOpponentRobotPoses());
+                simulation.arena.getGamePiecesByType("Note").toArray(Pose3d[]::new));
+        Logger.recordOutput("FieldSimulation/OpponentRobotPositions", simulation.getOpponentRobotPoses());
         Logger.recordOutput(
-                "FieldSimulation/AlliancePartnerRobotPositions", AIRobotInSimulation.getAlliancePartnerRobotPoses());
+                "FieldSimulation/AlliancePartnerRobotPositions", simulation.getAlliancePartnerRobotPoses());
     }
 }
@@ -14,6 +14,7 @@ public class ExampleFaceToTarget implements Auto {
     @Override
     public Command getAutoCommand(RobotContainer robot) throws IOException, ParseException {
         return FollowPathFaceToTarget.followPathFacetToTarget(
+                robot.drive,
                 PathPlannerPath.fromPathFile("Test Face To Target"),
                 0,
                 FieldMirroringUtils.SPEAKER_POSITION_SUPPLIER,
@@ -2,30 +2,35 @@ package frc.robot.commands.drive;
 
 import static frc.robot.constants.DriveControlLoops.*;
 
-import edu.wpi.first.math.controller.HolonomicDriveController;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Robot;
 import frc.robot.subsystems.drive.HolonomicDriveSubsystem;
-import frc.robot.utils.CustomPIDs.MaplePIDController;
 import frc.robot.utils.CustomPIDs.MapleProfiledPIDController;
+import frc.robot.utils.PoseAlignmentController;
 import java.util.function.Supplier;
 import org.littletonrobotics.junction.Logger;
 
 public class DriveToPose extends Command {
     private final Supplier<Pose2d> desiredPoseSupplier;
     private final HolonomicDriveSubsystem driveSubsystem;
-    private final HolonomicDriveController positionController;
+    private final PoseAlignmentController translationController;
+    private final MapleProfiledPIDController rotationController;
+    private final double[] fieldVelocity = new double[2];
 
-    private final double speedConstrainMPS;
     private final Pose2d tolerance;
 
     public DriveToPose(HolonomicDriveSubsystem driveSubsystem, Supplier<Pose2d> desiredPoseSupplier) {
         this(driveSubsystem, desiredPoseSupplier, new Pose2d(0.1, 0.1, Rotation2d.fromDegrees(10)), 3);
     }
 
+    /**
+     * @param tolerance the tolerance on x, y and rotation to finish the command
+     * @param speedConstrainMPS the maximum velocity of the approach profile
+     */
     public DriveToPose(
             HolonomicDriveSubsystem driveSubsystem,
             Supplier<Pose2d> desiredPoseSupplier,
@@ -33,52 +38,63 @@ public class DriveToPose extends Command {
             double speedConstrainMPS) {
         this.desiredPoseSupplier = desiredPoseSupplier;
         this.driveSubsystem = driveSubsystem;
-        this.positionController = createPositionController(driveSubsystem);
+        this.translationController = new PoseAlignmentController(
+                Math.min(speedConstrainMPS, driveSubsystem.getChassisMaxLinearVelocityMetersPerSec()),
+                driveSubsystem.getChassisMaxAccelerationMetersPerSecSq(),
+                CHASSIS_TRANSLATION_CLOSE_LOOP);
+        this.rotationController = new MapleProfiledPIDController(
+                CHASSIS_ROTATION_CLOSE_LOOP,
+                new TrapezoidProfile.Constraints(
+                        driveSubsystem.getChassisMaxAngularVelocity(),
+                        driveSubsystem.getChassisMaxAngularAccelerationRadPerSecSq()));
         this.tolerance = tolerance;
-        this.speedConstrainMPS = speedConstrainMPS;
 
         super.addRequirements(driveSubsystem);
     }
 
     @Override
     public void initialize() {
-        positionController
-                .getThetaController()
-                .reset(
-                        driveSubsystem.getFacing().getRadians(),
-                        driveSubsystem.getMeasuredChassisSpeedsRobotRelative().omegaRadiansPerSecond);
+        final Pose2d currentPose = driveSubsystem.getPose();
+        final ChassisSpeeds speeds = driveSubsystem.getMeasuredChassisSpeedsFieldRelative();
+        translationController.reset(
+                currentPose.getX(), currentPose.getY(), speeds.vxMetersPerSecond, speeds.vyMetersPerSecond);
+        rotationController.reset(currentPose.getRotation().getRadians(), speeds.omegaRadiansPerSecond);
     }
 
     @Override
     public void execute() {
-        ChassisSpeeds feedBackSpeeds = getFeedBackSpeeds();
-        final double feedBackSpeedMagnitude =
-                Math.hypot(feedBackSpeeds.vxMetersPerSecond, feedBackSpeeds.vyMetersPerSecond);
-        if (feedBackSpeedMagnitude < speedConstrainMPS) {
-            feedBackSpeeds.vxMetersPerSecond *= speedConstrainMPS / feedBackSpeedMagnitude;
-            feedBackSpeeds.vyMetersPerSecond *= speedConstrainMPS / feedBackSpeedMagnitude;
-        }
-        driveSubsystem.runRobotCentricChassisSpeeds(feedBackSpeeds, false);
-    }
+        final Pose2d desiredPose = desiredPoseSupplier.get(), currentPose = driveSubsystem.getPose();
+        final ChassisSpeeds speeds = driveSubsystem.getMeasuredChassisSpeedsFieldRelative();
 
-    @Override
-    public void end(boolean interrupted) {
-        driveSubsystem.stop();
-    }
+        translationController.calculate(
+                currentPose.getX(),
+                currentPose.getY(),
+                speeds.vxMetersPerSecond,
+                speeds.vyMetersPerSecond,
+                desiredPose.getX(),
+                desiredPose.getY(),
+                Robot.defaultPeriodSecs,
+                fieldVelocity);
+        final double rotationalSpeed = rotationController.calculate(
+                currentPose.getRotation().getRadians(), desiredPose.getRotation().getRadians());
 
-    /** @return the feed-back speed, robot-relative */
-    private ChassisSpeeds getFeedBackSpeeds() {
         Logger.recordOutput(
                 "Odometry/TrajectorySetpoint",
                 new Pose2d(
-                        desiredPoseSupplier.get().getTranslation(),
-                        Rotation2d.fromRadians(
-                                positionController.getThetaController().getSetpoint().position)));
-        return positionController.calculate(
-                driveSubsystem.getPose(),
-                desiredPoseSupplier.get(),
-                0,
-                desiredPoseSupplier.get().getRotation());
+                        translationController.getSetpointX(),
+                        translationController.getSetpointY(),
+                        Rotation2d.fromRadians(rotationController.getSetpoint().position)));
+        Logger.recordOutput(
+                "DriveToPose/TrackingErrorMeters",
+                translationController.getTrackingErrorMeters(currentPose.getX(), currentPose.getY()));
+
+        driveSubsystem.runFieldCentricChassisSpeeds(
+                new ChassisSpeeds(fieldVelocity[0], fieldVelocity[1], rotationalSpeed), false);
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        driveSubsystem.stop();
     }
 
     @Override
@@ -93,14 +109,4 @@ public class DriveToPose extends Command {
                 && Math.hypot(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond) < 0.8
                 && Math.abs(speeds.omegaRadiansPerSecond) < Math.toRadians(30);
     }
-
-    public static HolonomicDriveController createPositionController(HolonomicDriveSubsystem driveSubsystem) {
-        final TrapezoidProfile.Constraints chassisRotationalConstraints = new TrapezoidProfile.Constraints(
-                driveSubsystem.getChassisMaxAngularVelocity(),
-                driveSubsystem.getChassisMaxAngularAccelerationRadPerSecSq());
-        return new HolonomicDriveController(
-                new MaplePIDController(CHASSIS_TRANSLATION_CLOSE_LOOP),
-                new MaplePIDController(CHASSIS_TRANSLATION_CLOSE_LOOP),
-                new MapleProfiledPIDController(CHASSIS_ROTATION_CLOSE_LOOP, chassisRotationalConstraints));
-    }
 }
@@ -3,7 +3,6 @@ package frc.robot.commands.drive;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.subsystems.drive.HolonomicDriveSubsystem;
-import frc.robot.subsystems.drive.SwerveDrive;
 import frc.robot.utils.ChassisHeadingController;
 import frc.robot.utils.MapleJoystickDriveInput;
 import frc.robot.utils.MapleShooterOptimization;
@@ -44,7 +43,7 @@ public class JoystickDriveAndAimAtTarget extends Command {
 
     @Override
     public void initialize() {
-        SwerveDrive.swerveHeadingController.setHeadingRequest(
+        driveSubsystem.getHeadingController().setHeadingRequest(
                 new ChassisHeadingController.FaceToTargetRequest(targetPositionSupplier, shooterOptimization));
     }
 
@@ -57,11 +56,11 @@ public class JoystickDriveAndAimAtTarget extends Command {
     }
 
     public boolean chassisRotationInPosition() {
-        return SwerveDrive.swerveHeadingController.atSetPoint();
+        return driveSubsystem.getHeadingController().atSetPoint();
     }
 
     @Override
     public void end(boolean interrupted) {
-        SwerveDrive.swerveHeadingController.setHeadingRequest(new ChassisHeadingController.NullRequest());
+        driveSubsystem.getHeadingController().setHeadingRequest(new ChassisHeadingController.NullRequest());
     }
 }
@@ -11,6 +11,8 @@ public class DriveControlLoops {
     public static final MaplePIDController.MaplePIDConfig CHASSIS_ROTATION_CLOSE_LOOP =
             new MaplePIDController.MaplePIDConfig(
                     Math.toRadians(400), Math.toRadians(90), 0.03, Math.toRadians(3), 0.04, true, 0);
+    /* the time between a heading correction being calculated and the modules applying it, about one robot period */
+    public static final double CHASSIS_HEADING_ACTUATION_DELAY_SECONDS = 0.02;
 
     public static final MaplePIDController.MaplePIDConfig CHASSIS_TRANSLATION_CLOSE_LOOP =
             new MaplePIDController.MaplePIDConfig(2, 1.2, 0, 0.03, 0, false, 0);
@@ -85,6 +85,10 @@ public class DriveTrainConstants {
     public static final AngularAcceleration CHASSIS_MAX_ANGULAR_ACCELERATION = RadiansPerSecondPerSecond.of(
             CHASSIS_MAX_ACCELERATION.in(MetersPerSecondPerSecond) / DRIVE_BASE_RADIUS.in(Meters) * 2);
 
+    /* steer_velocity = steer_motor_free_speed / steer_gear_ratio */
+    public static final AngularVelocity STEER_MAX_VELOCITY =
+            RadiansPerSecond.of(STEER_MOTOR.freeSpeedRadPerSec / STEER_GEAR_RATIO);
+
     public static final SwerveDriveKinematics DRIVE_KINEMATICS = new SwerveDriveKinematics(MODULE_TRANSLATIONS);
 
     /* for collision detection in simulation */
@@ -102,9 +106,22 @@ public class DriveTrainConstants {
 
     public static final Supplier<GyroSimulation> gyroSimulationFactory = GyroSimulation.getPigeon2();
 
+    /* runs the module control loops on a separate thread at a high rate, instead of once per robot period */
+    public static final boolean DRIVE_CONTROL_THREAD_ENABLED = false;
+    /* in simulation, the control runs in the physics sub-ticks, rounded to the closest whole number of sub-ticks */
+    public static final double DRIVE_CONTROL_FREQUENCY = 200;
+    /* the control thread stops the modules if no setpoint is published for this long */
+    public static final double DRIVE_CONTROL_SETPOINT_TIMEOUT_SECONDS = 0.1;
+
+    /* the time expected for the drive periodic, which runs before the commands every loop */
+    public static final double DRIVE_PERIODIC_TIME_BUDGET_SECONDS = 0.004;
+
     /* dead configs, don't change them */
     public static final int ODOMETRY_CACHE_CAPACITY = 10;
     public static final double ODOMETRY_FREQUENCY = 250;
     public static final double ODOMETRY_WAIT_TIMEOUT_SECONDS = 0.02;
     public static final int SIMULATION_TICKS_IN_1_PERIOD = 5;
+    /* the maximum amount of odometry samples received in one robot period, used to pre-allocate buffers */
+    public static final int ODOMETRY_MAX_SAMPLES_PER_PERIOD =
+            Math.max(ODOMETRY_CACHE_CAPACITY, SIMULATION_TICKS_IN_1_PERIOD);
 }
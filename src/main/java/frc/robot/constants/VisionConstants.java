@@ -24,6 +24,19 @@ public class VisionConstants {
             ODOMETRY_TRANSLATIONAL_STANDARD_ERROR_METERS = 0.04,
             GYRO_ROTATIONAL_STANDARD_ERROR_RADIANS = Math.toRadians(0.3);
 
+    /* solve the poses of each camera on a worker pool, instead of on the main robot thread */
+    public static final boolean PARALLEL_CAMERA_POSE_SOLVING = false;
+    public static final int POSE_SOLVING_WORKER_THREADS = 2;
+
+    /* the photon vision results are polled in the background, and buffered until the next robot period */
+    public static final int VISION_INGESTION_FREQUENCY = 200, VISION_INGESTION_BUFFER_CAPACITY = 16;
+
+    /* frames from different cameras are only fused together if they are captured within this window */
+    public static final double VISION_FUSION_WINDOW_SECONDS = 0.02;
+
+    /* the vision is deferrable: if this does not fit in the loop, the results stay buffered until the next one */
+    public static final double VISION_PERIODIC_TIME_BUDGET_SECONDS = 0.005;
+
     public static final List<PhotonCameraProperties> photonVisionCameras = List.of(
             new PhotonCameraProperties(
                     "FrontCam",
@@ -6,6 +6,7 @@ import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Robot;
 import frc.robot.constants.LogPaths;
+import frc.robot.utils.LoopTimingProfiler;
 import frc.robot.utils.MapleTimeUtils;
 import java.util.ArrayList;
 import java.util.List;
@@ -14,10 +15,27 @@ import org.littletonrobotics.junction.Logger;
 /**
  * Iron Maple's subsystem management. Based on {@link SubsystemBase} from WPILib, we added on-disable/on-enable function
  * calls as well as precise dt calculations
+ *
+ * <p>The periodic of each subsystem is run by the {@link MapleSubsystemScheduler}, according to its {@link Priority}
+ * and time budget, instead of by the {@link edu.wpi.first.wpilibj2.command.CommandScheduler}.
  */
 public abstract class MapleSubsystem extends SubsystemBase {
+    public enum Priority {
+        /** runs before the commands, every loop */
+        CRITICAL,
+        /** runs after the commands, every loop */
+        NORMAL,
+        /** runs after the commands, and is moved to a later loop if its time budget does not fit in this one */
+        DEFERRABLE
+    }
+
+    public static final double DEFAULT_TIME_BUDGET_SECONDS = 0.002;
+
     public static final List<MapleSubsystem> instances = new ArrayList<>();
     private double previousUpdateTimeStamp = 0;
+    private final LoopTimingProfiler.Scope profilingScope;
+    final Priority priority;
+    final double timeBudgetSeconds;
 
     public static void register(MapleSubsystem instance) {
         instances.add(instance);
@@ -30,7 +48,7 @@ public abstract class MapleSubsystem extends SubsystemBase {
     private static boolean wasEnabled = false;
 
     public static void checkForOnDisableAndEnable() {
-        // periodic() is called from CommandScheduler, we only need to check for enable/disable
+        // runPeriodic() is called from MapleSubsystemScheduler, we only need to check for enable/disable
         if (DriverStation.isEnabled() && (!wasEnabled)) enableAlllSubsystems();
         else if (DriverStation.isDisabled() && (wasEnabled)) disableAllSubsystems();
         wasEnabled = DriverStation.isEnabled();
@@ -45,8 +63,21 @@ public abstract class MapleSubsystem extends SubsystemBase {
     }
 
     public MapleSubsystem(String name) {
+        this(name, Priority.NORMAL, DEFAULT_TIME_BUDGET_SECONDS);
+    }
+
+    /**
+     * @param priority when the subsystem runs in the loop, see {@link Priority}
+     * @param timeBudgetSeconds the time that the periodic of the subsystem is expected to take, used to decide whether
+     *     a {@link Priority#DEFERRABLE} subsystem fits in the loop, the loops exceeding it are logged
+     */
+    public MapleSubsystem(String name, Priority priority, double timeBudgetSeconds) {
         super(name);
+        this.priority = priority;
+        this.timeBudgetSeconds = timeBudgetSeconds;
+        this.profilingScope = LoopTimingProfiler.SUBSYSTEMS.child(name);
         register(this);
+        MapleSubsystemScheduler.schedule(this);
     }
 
     public void onEnable() {}
@@ -55,12 +86,26 @@ public abstract class MapleSubsystem extends SubsystemBase {
 
     public abstract void periodic(double dt, boolean enabled);
 
+    /** the periodic is run by {@link MapleSubsystemScheduler} instead, through {@link #runPeriodic()} */
     @Override
-    public void periodic() {
-        final long t0 = System.nanoTime();
+    public final void periodic() {}
+
+    /**
+     * Runs the periodic of this subsystem once.
+     *
+     * @return the time it took, in nanoseconds
+     */
+    public long runPeriodic() {
+        profilingScope.begin();
         periodic(getDt(), DriverStation.isEnabled());
-        final double cpuTimeMS = (System.nanoTime() - t0) / 1_000_000.0;
-        Logger.recordOutput(LogPaths.SYSTEM_PERFORMANCE_PATH + getName() + "-CPUTimeMS", cpuTimeMS);
+        final long cpuTimeNanos = profilingScope.end();
+        Logger.recordOutput(LogPaths.SYSTEM_PERFORMANCE_PATH + getName() + "-CPUTimeMS", cpuTimeNanos / 1_000_000.0);
+        return cpuTimeNanos;
+    }
+
+    /** @return the profiling scope of this subsystem, under which the sections of its periodic can be nested */
+    protected LoopTimingProfiler.Scope getProfilingScope() {
+        return profilingScope;
     }
 
     private double getDt() {
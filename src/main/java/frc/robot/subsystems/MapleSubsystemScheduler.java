@@ -0,0 +1,133 @@
+package frc.robot.subsystems;
+
+import frc.robot.Robot;
+import frc.robot.constants.LogPaths;
+import java.util.ArrayList;
+import java.util.List;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.Logger;
+import org.littletonrobotics.junction.inputs.LoggableInputs;
+
+/**
+ *
+ *
+ * <h1>Deadline-aware scheduling of the {@link MapleSubsystem}s.</h1>
+ *
+ * <p>Replaces the {@link edu.wpi.first.wpilibj2.command.CommandScheduler}'s subsystem periodic calls, which run in
+ * registration order, with two phases around the commands:
+ *
+ * <ul>
+ *   <li>{@link #runCriticalSubsystems()}, before the commands: the {@link MapleSubsystem.Priority#CRITICAL} subsystems
+ *       (the drive), so that the commands act on fresh odometry and their outputs are actuated right away
+ *   <li>{@link #runRemainingSubsystems()}, after the commands: the {@link MapleSubsystem.Priority#NORMAL} subsystems,
+ *       always, and then the {@link MapleSubsystem.Priority#DEFERRABLE} ones, only while their declared time budget
+ *       fits before the loop deadline
+ * </ul>
+ *
+ * <p>A deferrable subsystem that does not fit is shed: it is moved to the next loop, and runs anyway after
+ * {@link #MAX_CONSECUTIVE_SHED_LOOPS} loops in a row. Each decision is logged as an input, so that a replay sheds the
+ * same loops as the robot did. The shed loops, and the subsystems exceeding their budget, are logged under
+ * {@link LogPaths#SYSTEM_PERFORMANCE_PATH}.
+ */
+public final class MapleSubsystemScheduler {
+    /* leaves the rest of the period to the logger and the simulation */
+    private static final double LOOP_DEADLINE_FRACTION = 0.75;
+    public static final int MAX_CONSECUTIVE_SHED_LOOPS = 5;
+    private static final String SCHEDULER_PATH = LogPaths.SYSTEM_PERFORMANCE_PATH + "SubsystemScheduler/";
+    private static final String SHED_THIS_LOOP_KEY = SCHEDULER_PATH + "ShedThisLoop",
+            TOTAL_SHED_KEY = SCHEDULER_PATH + "TotalShed",
+            DEADLINE_SLACK_KEY = SCHEDULER_PATH + "DeadlineSlackMS";
+
+    private static final List<ScheduledSubsystem> scheduled = new ArrayList<>();
+    private static long loopDeadlineNanos = 0, totalShed = 0;
+
+    private MapleSubsystemScheduler() {}
+
+    /** Adds a subsystem, after all the subsystems of the same or a higher priority. */
+    static void schedule(MapleSubsystem subsystem) {
+        int index = 0;
+        while (index < scheduled.size()
+                && scheduled.get(index).subsystem.priority.ordinal() <= subsystem.priority.ordinal()) index++;
+        scheduled.add(index, new ScheduledSubsystem(subsystem));
+    }
+
+    /** Removes a subsystem whose periodic is called by its owner instead, like the swerve modules. */
+    public static void unschedule(MapleSubsystem subsystem) {
+        scheduled.removeIf(scheduledSubsystem -> scheduledSubsystem.subsystem == subsystem);
+    }
+
+    /** Marks the start of the loop and runs the critical subsystems, must be called before the commands. */
+    public static void runCriticalSubsystems() {
+        loopDeadlineNanos = System.nanoTime() + (long) (Robot.defaultPeriodSecs * LOOP_DEADLINE_FRACTION * 1e9);
+        for (ScheduledSubsystem scheduledSubsystem : scheduled)
+            if (scheduledSubsystem.subsystem.priority == MapleSubsystem.Priority.CRITICAL) scheduledSubsystem.run();
+    }
+
+    /** Runs the normal subsystems, and the deferrable subsystems that fit before the deadline, after the commands. */
+    public static void runRemainingSubsystems() {
+        int shedThisLoop = 0;
+        for (ScheduledSubsystem scheduledSubsystem : scheduled) {
+            switch (scheduledSubsystem.subsystem.priority) {
+                case CRITICAL -> {}
+                case NORMAL -> scheduledSubsystem.run();
+                case DEFERRABLE -> {
+                    if (scheduledSubsystem.decide()) scheduledSubsystem.run();
+                    else shedThisLoop++;
+                }
+            }
+        }
+
+        totalShed += shedThisLoop;
+        Logger.recordOutput(SHED_THIS_LOOP_KEY, shedThisLoop);
+        Logger.recordOutput(TOTAL_SHED_KEY, totalShed);
+        Logger.recordOutput(DEADLINE_SLACK_KEY, (loopDeadlineNanos - System.nanoTime()) / 1_000_000.0);
+    }
+
+    private static final class ScheduledSubsystem {
+        private final MapleSubsystem subsystem;
+        private final String decisionInputsKey, shedLoopsKey, overBudgetKey;
+        private final long timeBudgetNanos;
+        private final SchedulingDecision decision = new SchedulingDecision();
+        private int consecutiveShedLoops = 0;
+        private long shedLoops = 0, overBudgetLoops = 0;
+
+        private ScheduledSubsystem(MapleSubsystem subsystem) {
+            this.subsystem = subsystem;
+            this.timeBudgetNanos = (long) (subsystem.timeBudgetSeconds * 1e9);
+            this.decisionInputsKey = "SubsystemScheduler/" + subsystem.getName();
+            this.shedLoopsKey = SCHEDULER_PATH + subsystem.getName() + "/ShedLoops";
+            this.overBudgetKey = SCHEDULER_PATH + subsystem.getName() + "/OverBudgetLoops";
+        }
+
+        /** @return whether to run the subsystem this loop, as decided live or as read from the replayed log */
+        private boolean decide() {
+            decision.run = consecutiveShedLoops >= MAX_CONSECUTIVE_SHED_LOOPS
+                    || System.nanoTime() + timeBudgetNanos <= loopDeadlineNanos;
+            Logger.processInputs(decisionInputsKey, decision);
+            if (decision.run) return true;
+
+            consecutiveShedLoops++;
+            Logger.recordOutput(shedLoopsKey, ++shedLoops);
+            return false;
+        }
+
+        private void run() {
+            consecutiveShedLoops = 0;
+            if (subsystem.runPeriodic() > timeBudgetNanos) Logger.recordOutput(overBudgetKey, ++overBudgetLoops);
+        }
+    }
+
+    private static final class SchedulingDecision implements LoggableInputs {
+        private boolean run = true;
+
+        @Override
+        public void toLog(LogTable table) {
+            table.put("Run", run);
+        }
+
+        @Override
+        public void fromLog(LogTable table) {
+            run = table.get("Run", run);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package frc.robot.subsystems.drive;
+
+import static edu.wpi.first.units.Units.*;
+import static frc.robot.constants.DriveTrainConstants.*;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Threads;
+import frc.robot.Robot;
+import frc.robot.constants.LogPaths;
+import frc.robot.utils.Alert;
+import frc.robot.utils.CustomMaths.FourModuleSwerveKinematics;
+import frc.robot.utils.DoubleFrameSlot;
+import java.util.concurrent.locks.LockSupport;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ *
+ *
+ * <h1>High-rate control of the swerve modules.</h1>
+ *
+ * <p>Runs the {@link SwerveSetpointGenerator} and the control loops of the modules at
+ * {@link frc.robot.constants.DriveTrainConstants#DRIVE_CONTROL_FREQUENCY}, instead of once per robot period, so that
+ * the actuation latency does not depend on the command-based loop. Once started, it owns all the control calls of the
+ * module IOs, and reads their feedback through {@link frc.robot.subsystems.drive.IO.ModuleIO#updateControlFeedback}.
+ *
+ * <p>The main robot thread publishes the desired chassis speeds through a {@link DoubleFrameSlot}, and the control
+ * thread publishes its setpoints and timings back through another, so neither side ever waits for the other. The
+ * heading correction of the {@link frc.robot.utils.ChassisHeadingController} is still calculated on the main thread,
+ * since it needs the pose estimate, and is part of the published speeds. If no setpoint is published for
+ * {@link frc.robot.constants.DriveTrainConstants#DRIVE_CONTROL_SETPOINT_TIMEOUT_SECONDS}, the modules are stopped.
+ *
+ * <p>If a tick throws, the modules are stopped and handed back to the main thread, see {@link #isCrashed()}, and no
+ * more ticks are run.
+ *
+ * <p>In simulation there is no thread: the ticks run in the physics sub-ticks, through
+ * {@link #simulationSubTick(double)}, every as many sub-ticks as is closest to the control frequency. The control laws
+ * then run at the same rate as on the robot, against physics that are updated between every two ticks.
+ */
+public final class DriveControlThread {
+    private static final int MODULES_COUNT = FourModuleSwerveKinematics.MODULES_COUNT;
+    private static final int REAL_TIME_PRIORITY = 15;
+    private static final String CONTROL_THREAD_PERFORMANCE_PATH =
+            LogPaths.SYSTEM_PERFORMANCE_PATH + "DriveControlThread/";
+
+    /* the setpoint frame, written by the main thread */
+    private static final int VX_COLUMN = 0,
+            VY_COLUMN = 1,
+            OMEGA_COLUMN = 2,
+            ENABLED_COLUMN = 3,
+            HOLD_HEADINGS_VERSION_COLUMN = 4,
+            LOCK_HEADINGS_COLUMN = 5,
+            HOLD_HEADINGS_COLUMN = 6,
+            SETPOINT_FRAME_LENGTH = HOLD_HEADINGS_COLUMN + MODULES_COUNT;
+    /* the telemetry frame, written by the control thread, the statistics cover the ticks since the last setpoint */
+    private static final int TOTAL_TICKS_COLUMN = 0,
+            TICKS_COLUMN = 1,
+            MAX_JITTER_COLUMN = 2,
+            MAX_TICK_TIME_COLUMN = 3,
+            TIMED_OUT_COLUMN = 4,
+            LIMITING_FACTOR_COLUMN = 5,
+            SETPOINT_SPEEDS_COLUMN = 6,
+            SETPOINT_ANGLES_COLUMN = SETPOINT_SPEEDS_COLUMN + MODULES_COUNT,
+            TELEMETRY_FRAME_LENGTH = SETPOINT_ANGLES_COLUMN + MODULES_COUNT;
+
+    private final SwerveModule[] modules;
+    private final DoubleFrameSlot setpointSlot = new DoubleFrameSlot(SETPOINT_FRAME_LENGTH),
+            telemetrySlot = new DoubleFrameSlot(TELEMETRY_FRAME_LENGTH);
+    private final double tickPeriodSeconds;
+    private final int setpointTimeoutTicks;
+    /* null in simulation, where the ticks are run by the main thread */
+    private final Thread thread;
+    private volatile boolean crashed = false;
+
+    /* confined to the main thread */
+    private long holdHeadingsVersion = 0;
+    private boolean lockHeadings = false;
+    private final double[] holdHeadingsRad = new double[MODULES_COUNT];
+    private final Alert crashedAlert = new Alert("Drive Control Thread Crashed", Alert.AlertType.ERROR);
+
+    /* confined to the control thread */
+    private final FourModuleSwerveKinematics kinematics = new FourModuleSwerveKinematics(MODULE_TRANSLATIONS);
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+            kinematics,
+            CHASSIS_MAX_VELOCITY.in(MetersPerSecond),
+            CHASSIS_MAX_ACCELERATION.in(MetersPerSecondPerSecond),
+            MAX_FRICTION_ACCELERATION.in(MetersPerSecondPerSecond),
+            STEER_MAX_VELOCITY.in(RadiansPerSecond));
+    private final double[] feedback = new double[2],
+            measuredSpeeds = new double[MODULES_COUNT],
+            measuredAnglesRad = new double[MODULES_COUNT],
+            setpointSpeeds = new double[MODULES_COUNT],
+            setpointAnglesRad = new double[MODULES_COUNT],
+            chassisSpeeds = new double[3],
+            appliedHoldHeadingsRad = new double[MODULES_COUNT];
+    private double appliedHoldHeadingsVersion = 0;
+    private int ticksSinceSetpoint = 0, ticksInWindow = 0;
+    private long totalTicks = 0;
+    private double maxJitterSeconds = 0, maxTickTimeSeconds = 0;
+
+    /* simulation only, confined to the main thread */
+    private final int simulationSubTicksPerTick;
+    private int simulationSubTicksSinceTick = 0;
+    private double simulationSecondsSinceTick = 0;
+
+    /**
+     * Creates the control thread if it is enabled in {@link frc.robot.constants.DriveTrainConstants}.
+     *
+     * @return the control thread, or <code>null</code> if the modules are controlled in the robot period
+     */
+    public static DriveControlThread createInstance(SwerveModule[] modules) {
+        if (!DRIVE_CONTROL_THREAD_ENABLED) return null;
+        return switch (Robot.CURRENT_ROBOT_MODE) {
+            case REAL -> new DriveControlThread(modules, 1.0 / DRIVE_CONTROL_FREQUENCY, 0);
+            case SIM -> {
+                final double subTickPeriodSeconds = Robot.defaultPeriodSecs / SIMULATION_TICKS_IN_1_PERIOD;
+                final int subTicksPerTick =
+                        (int) Math.max(1, Math.round(1.0 / DRIVE_CONTROL_FREQUENCY / subTickPeriodSeconds));
+                yield new DriveControlThread(modules, subTicksPerTick * subTickPeriodSeconds, subTicksPerTick);
+            }
+            /* the module IOs do nothing in replay */
+            case REPLAY -> null;
+        };
+    }
+
+    /**
+     * Package-private for the tests, use {@link #createInstance(SwerveModule[])}.
+     *
+     * @param simulationSubTicksPerTick 0 to run the ticks on a thread, otherwise in the simulation sub-ticks
+     */
+    DriveControlThread(SwerveModule[] modules, double tickPeriodSeconds, int simulationSubTicksPerTick) {
+        if (modules.length != MODULES_COUNT)
+            throw new IllegalArgumentException("expected 4 modules, got " + modules.length);
+        this.modules = modules;
+        this.tickPeriodSeconds = tickPeriodSeconds;
+        this.setpointTimeoutTicks = (int) Math.ceil(DRIVE_CONTROL_SETPOINT_TIMEOUT_SECONDS / tickPeriodSeconds);
+        this.simulationSubTicksPerTick = simulationSubTicksPerTick;
+        for (SwerveModule module : modules) module.setControlledByDriveControlThread();
+        crashedAlert.setActivated(false);
+
+        if (simulationSubTicksPerTick == 0) {
+            this.thread = new Thread(this::runThread, "DriveControlThread");
+            this.thread.setDaemon(true);
+        } else this.thread = null;
+    }
+
+    public void start() {
+        if (thread != null) thread.start();
+    }
+
+    /**
+     * Main thread: publishes the desired chassis speeds, robot-relative.
+     *
+     * @param enabled whether the robot is enabled, the modules are stopped otherwise
+     */
+    public void publishSetpoint(double vx, double vy, double omega, boolean enabled) {
+        final double[] frame = setpointSlot.writeFrame();
+        frame[VX_COLUMN] = vx;
+        frame[VY_COLUMN] = vy;
+        frame[OMEGA_COLUMN] = omega;
+        frame[ENABLED_COLUMN] = enabled ? 1 : 0;
+        frame[HOLD_HEADINGS_VERSION_COLUMN] = holdHeadingsVersion;
+        frame[LOCK_HEADINGS_COLUMN] = lockHeadings ? 1 : 0;
+        System.arraycopy(holdHeadingsRad, 0, frame, HOLD_HEADINGS_COLUMN, MODULES_COUNT);
+        setpointSlot.publish();
+    }
+
+    /**
+     * Main thread: sets the headings that the modules keep when the chassis is not moving, from the next published
+     * setpoint, see {@link SwerveSetpointGenerator#holdHeadings}.
+     */
+    public void holdHeadings(double... headingsRad) {
+        setHoldHeadings(headingsRad, false);
+    }
+
+    /**
+     * Main thread: stops the chassis right away, with the modules at the given headings, from the next published
+     * setpoint, see {@link SwerveSetpointGenerator#reset}.
+     */
+    public void lockHeadings(double... headingsRad) {
+        setHoldHeadings(headingsRad, true);
+    }
+
+    private void setHoldHeadings(double[] headingsRad, boolean lock) {
+        System.arraycopy(headingsRad, 0, holdHeadingsRad, 0, MODULES_COUNT);
+        lockHeadings = lock;
+        holdHeadingsVersion++;
+    }
+
+    /**
+     * @return whether a tick has thrown, in which case the modules are stopped and the main thread must control them
+     *     again
+     */
+    public boolean isCrashed() {
+        return crashed;
+    }
+
+    /** Main thread: logs the setpoints and the timings of the control thread. */
+    public void logTelemetry() {
+        crashedAlert.setActivated(crashed);
+        telemetrySlot.update();
+        final double[] telemetry = telemetrySlot.readFrame();
+        Logger.recordOutput(CONTROL_THREAD_PERFORMANCE_PATH + "TotalTicks", (long) telemetry[TOTAL_TICKS_COLUMN]);
+        Logger.recordOutput(CONTROL_THREAD_PERFORMANCE_PATH + "TicksSinceSetpoint", (int) telemetry[TICKS_COLUMN]);
+        Logger.recordOutput(CONTROL_THREAD_PERFORMANCE_PATH + "MaxJitterMS", telemetry[MAX_JITTER_COLUMN] * 1000);
+        Logger.recordOutput(CONTROL_THREAD_PERFORMANCE_PATH + "MaxTickTimeMS", telemetry[MAX_TICK_TIME_COLUMN] * 1000);
+        Logger.recordOutput(CONTROL_THREAD_PERFORMANCE_PATH + "SetpointTimedOut", telemetry[TIMED_OUT_COLUMN] != 0);
+
+        Logger.recordOutput("SwerveStates/SetpointGeneratorLimitingFactor", telemetry[LIMITING_FACTOR_COLUMN]);
+        final SwerveModuleState[] setPointStates = new SwerveModuleState[MODULES_COUNT];
+        for (int i = 0; i < MODULES_COUNT; i++)
+            setPointStates[i] = new SwerveModuleState(
+                    telemetry[SETPOINT_SPEEDS_COLUMN + i],
+                    Rotation2d.fromRadians(telemetry[SETPOINT_ANGLES_COLUMN + i]));
+        Logger.recordOutput("SwerveStates/Setpoints", setPointStates);
+    }
+
+    /**
+     * Simulation: called on every physics sub-tick, runs a control tick once enough sub-ticks have passed.
+     *
+     * @param dtSeconds the duration of the sub-tick
+     */
+    public void simulationSubTick(double dtSeconds) {
+        if (thread != null) throw new IllegalStateException("the control ticks are run by the control thread");
+        simulationSecondsSinceTick += dtSeconds;
+        if (crashed || ++simulationSubTicksSinceTick < simulationSubTicksPerTick) return;
+        try {
+            tick(simulationSecondsSinceTick);
+        } catch (RuntimeException e) {
+            crash(e);
+        }
+        simulationSubTicksSinceTick = 0;
+        simulationSecondsSinceTick = 0;
+    }
+
+    private void runThread() {
+        Threads.setCurrentThreadPriority(true, REAL_TIME_PRIORITY);
+        final long periodNanos = (long) (tickPeriodSeconds * 1e9);
+        long previousTickNanos = System.nanoTime(), nextTickNanos = previousTickNanos + periodNanos;
+        try {
+            while (true) {
+                LockSupport.parkNanos(nextTickNanos - System.nanoTime());
+                final long tickStartNanos = System.nanoTime();
+                tick((tickStartNanos - previousTickNanos) / 1e9);
+                previousTickNanos = tickStartNanos;
+
+                nextTickNanos += periodNanos;
+                /* skip the ticks missed by an overrun, rather than catching up with a burst */
+                if (nextTickNanos < System.nanoTime()) nextTickNanos = System.nanoTime() + periodNanos;
+            }
+        } catch (RuntimeException e) {
+            crash(e);
+        }
+    }
+
+    /**
+     * Stops the modules and hands them back to the main thread; the motor controllers would otherwise keep their last
+     * outputs for as long as the robot is enabled.
+     */
+    private void crash(RuntimeException e) {
+        DriverStation.reportError("Drive control thread crashed: " + e.getMessage(), e.getStackTrace());
+        try {
+            for (SwerveModule module : modules) module.releaseFromDriveControlThread();
+        } finally {
+            crashed = true;
+        }
+    }
+
+    private void tick(double dtSeconds) {
+        final long tickStartNanos = System.nanoTime();
+        if (setpointSlot.update()) {
+            ticksSinceSetpoint = 0;
+            ticksInWindow = 0;
+            maxJitterSeconds = 0;
+            maxTickTimeSeconds = 0;
+        } else ticksSinceSetpoint++;
+        final double[] setpoint = setpointSlot.readFrame();
+        maxJitterSeconds = Math.max(maxJitterSeconds, Math.abs(dtSeconds - tickPeriodSeconds));
+        /* a stalled tick does not turn into a large step of the setpoint generator */
+        dtSeconds = Math.min(dtSeconds, 2 * tickPeriodSeconds);
+
+        for (int i = 0; i < MODULES_COUNT; i++) {
+            modules[i].updateControlFeedback(feedback);
+            measuredSpeeds[i] = feedback[0];
+            measuredAnglesRad[i] = feedback[1];
+        }
+
+        if (setpoint[HOLD_HEADINGS_VERSION_COLUMN] != appliedHoldHeadingsVersion) {
+            System.arraycopy(setpoint, HOLD_HEADINGS_COLUMN, appliedHoldHeadingsRad, 0, MODULES_COUNT);
+            if (setpoint[LOCK_HEADINGS_COLUMN] != 0) setpointGenerator.reset(0, 0, 0, appliedHoldHeadingsRad);
+            else setpointGenerator.holdHeadings(appliedHoldHeadingsRad);
+            appliedHoldHeadingsVersion = setpoint[HOLD_HEADINGS_VERSION_COLUMN];
+        }
+
+        final boolean timedOut = ticksSinceSetpoint > setpointTimeoutTicks;
+        if (setpoint[ENABLED_COLUMN] != 0 && !timedOut)
+            setpointGenerator.generate(
+                    setpoint[VX_COLUMN],
+                    setpoint[VY_COLUMN],
+                    setpoint[OMEGA_COLUMN],
+                    dtSeconds,
+                    setpointSpeeds,
+                    setpointAnglesRad);
+        else {
+            /* stop, and start the next setpoint from the measured state */
+            kinematics.toChassisSpeeds(measuredSpeeds, measuredAnglesRad, chassisSpeeds);
+            setpointGenerator.reset(chassisSpeeds[0], chassisSpeeds[1], chassisSpeeds[2], measuredAnglesRad);
+            for (int i = 0; i < MODULES_COUNT; i++) {
+                setpointSpeeds[i] = 0;
+                setpointAnglesRad[i] = measuredAnglesRad[i];
+            }
+        }
+
+        for (int i = 0; i < MODULES_COUNT; i++)
+            modules[i].runControlLoops(
+                    setpointSpeeds[i], setpointAnglesRad[i], measuredSpeeds[i], measuredAnglesRad[i]);
+
+        totalTicks++;
+        ticksInWindow++;
+        maxTickTimeSeconds = Math.max(maxTickTimeSeconds, (System.nanoTime() - tickStartNanos) / 1e9);
+        publishTelemetry(timedOut);
+    }
+
+    private void publishTelemetry(boolean timedOut) {
+        final double[] telemetry = telemetrySlot.writeFrame();
+        telemetry[TOTAL_TICKS_COLUMN] = totalTicks;
+        telemetry[TICKS_COLUMN] = ticksInWindow;
+        telemetry[MAX_JITTER_COLUMN] = maxJitterSeconds;
+        telemetry[MAX_TICK_TIME_COLUMN] = maxTickTimeSeconds;
+        telemetry[TIMED_OUT_COLUMN] = timedOut ? 1 : 0;
+        telemetry[LIMITING_FACTOR_COLUMN] = setpointGenerator.getLimitingFactor();
+        System.arraycopy(setpointSpeeds, 0, telemetry, SETPOINT_SPEEDS_COLUMN, MODULES_COUNT);
+        System.arraycopy(setpointAnglesRad, 0, telemetry, SETPOINT_ANGLES_COLUMN, MODULES_COUNT);
+        telemetrySlot.publish();
+    }
+}
@@ -19,6 +19,7 @@ import frc.robot.Robot;
 import frc.robot.constants.DriveTrainConstants;
 import frc.robot.constants.FieldConstants;
 import frc.robot.subsystems.vision.apriltags.MapleMultiTagPoseEstimator;
+import frc.robot.utils.ChassisHeadingController;
 import frc.robot.utils.LocalADStarAK;
 import org.ironmaple.utils.FieldMirroringUtils;
 import org.ironmaple.utils.mathutils.MapleCommonMath;
@@ -32,6 +33,9 @@ public interface HolonomicDriveSubsystem extends Subsystem {
      */
     void runRawChassisSpeeds(ChassisSpeeds speeds);
 
+    /** @return the controller that overrides the rotation of the chassis speeds while a heading is requested */
+    ChassisHeadingController getHeadingController();
+
     /** Returns the current odometry Pose. */
     Pose2d getPose();
 
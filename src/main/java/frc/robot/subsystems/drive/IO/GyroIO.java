@@ -4,6 +4,8 @@
 
 package frc.robot.subsystems.drive.IO;
 
+import static frc.robot.constants.DriveTrainConstants.ODOMETRY_MAX_SAMPLES_PER_PERIOD;
+
 import edu.wpi.first.math.geometry.Rotation2d;
 import org.littletonrobotics.junction.AutoLog;
 
@@ -12,7 +14,9 @@ public interface GyroIO {
     class GyroIOInputs {
         public boolean connected = false;
         public Rotation2d yawPosition = new Rotation2d();
-        public Rotation2d[] odometryYawPositions = new Rotation2d[] {};
+        /* pre-allocated and refilled every cycle, only the first odometrySamplesCount samples are valid */
+        public int odometrySamplesCount = 0;
+        public double[] odometryYawPositionsRad = new double[ODOMETRY_MAX_SAMPLES_PER_PERIOD];
         public double yawVelocityRadPerSec = 0.0;
     }
 
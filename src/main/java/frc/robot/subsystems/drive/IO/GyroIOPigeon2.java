@@ -11,13 +11,12 @@ import com.ctre.phoenix6.hardware.Pigeon2;
 import com.ctre.phoenix6.mechanisms.swerve.SwerveDrivetrainConstants;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
-import java.util.Queue;
 
 /** IO implementation for Pigeon2 */
 public class GyroIOPigeon2 implements GyroIO {
     private final Pigeon2 pigeon;
     private final StatusSignal<Double> yaw;
-    private final Queue<Double> yawPositionInput;
+    private final OdometryThread.OdometryDoubleInput yawPositionInput;
     private final StatusSignal<Double> yawVelocity;
 
     public GyroIOPigeon2(SwerveDrivetrainConstants drivetrainConstants) {
@@ -45,8 +44,8 @@ public class GyroIOPigeon2 implements GyroIO {
         inputs.yawPosition = Rotation2d.fromDegrees(yaw.getValueAsDouble());
         inputs.yawVelocityRadPerSec = Units.degreesToRadians(yawVelocity.getValueAsDouble());
 
-        inputs.odometryYawPositions =
-                yawPositionInput.stream().map(Rotation2d::fromDegrees).toArray(Rotation2d[]::new);
-        yawPositionInput.clear();
+        inputs.odometrySamplesCount = yawPositionInput.size();
+        for (int i = 0; i < inputs.odometrySamplesCount; i++)
+            inputs.odometryYawPositionsRad[i] = Units.degreesToRadians(yawPositionInput.get(i));
     }
 }
@@ -1,5 +1,6 @@
 package frc.robot.subsystems.drive.IO;
 
+import edu.wpi.first.math.geometry.Rotation2d;
 import org.ironmaple.simulation.drivesims.GyroSimulation;
 
 public class GyroIOSim implements GyroIO {
@@ -12,7 +13,10 @@ public class GyroIOSim implements GyroIO {
     @Override
     public void updateInputs(GyroIOInputs inputs) {
         inputs.connected = true;
-        inputs.odometryYawPositions = gyroSimulation.getCachedGyroReadings();
+        final Rotation2d[] cachedGyroReadings = gyroSimulation.getCachedGyroReadings();
+        inputs.odometrySamplesCount = Math.min(cachedGyroReadings.length, inputs.odometryYawPositionsRad.length);
+        for (int i = 0; i < inputs.odometrySamplesCount; i++)
+            inputs.odometryYawPositionsRad[i] = cachedGyroReadings[i].getRadians();
         inputs.yawPosition = gyroSimulation.getGyroReading();
         inputs.yawVelocityRadPerSec = gyroSimulation.getMeasuredAngularVelocityRadPerSec();
     }
@@ -5,6 +5,8 @@
 
 package frc.robot.subsystems.drive.IO;
 
+import static frc.robot.constants.DriveTrainConstants.ODOMETRY_MAX_SAMPLES_PER_PERIOD;
+
 import edu.wpi.first.math.geometry.Rotation2d;
 import org.littletonrobotics.junction.AutoLog;
 
@@ -21,8 +23,10 @@ public interface ModuleIO {
         public double steerMotorAppliedVolts = 0.0;
         public double steerMotorCurrentAmps = 0.0;
 
-        public double[] odometryDriveWheelRevolutions = new double[] {};
-        public Rotation2d[] odometrySteerPositions = new Rotation2d[] {};
+        /* pre-allocated and refilled every cycle, only the first odometrySamplesCount samples are valid */
+        public int odometrySamplesCount = 0;
+        public double[] odometryDriveWheelRevolutions = new double[ODOMETRY_MAX_SAMPLES_PER_PERIOD];
+        public double[] odometrySteerPositionsRad = new double[ODOMETRY_MAX_SAMPLES_PER_PERIOD];
 
         public boolean hardwareConnected = false;
     }
@@ -30,6 +34,17 @@ public interface ModuleIO {
     /** Updates the inputs */
     void updateInputs(ModuleIOInputs inputs);
 
+    /**
+     * Reads the feedback of the high-rate drive control, see {@link frc.robot.subsystems.drive.DriveControlThread}.
+     *
+     * <p>Called from the control thread, so the implementations must not share any state with
+     * {@link #updateInputs(ModuleIOInputs)}.
+     *
+     * @param feedback written with the drive wheel velocity, in revolutions per second, and the steer facing, in
+     *     radians
+     */
+    void updateControlFeedback(double[] feedback);
+
     default void calibrate() {}
 
     /**
@@ -7,8 +7,8 @@ package frc.robot.subsystems.drive.IO;
 
 import static edu.wpi.first.units.Units.Volts;
 
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
-import java.util.Arrays;
 import org.ironmaple.simulation.drivesims.SwerveModuleSimulation;
 import org.ironmaple.simulation.motorsims.ControlRequest;
 
@@ -38,15 +38,25 @@ public class ModuleIOSim implements ModuleIO {
         inputs.steerMotorAppliedVolts = moduleSimulation.getSteerMotorAppliedVolts();
         inputs.steerMotorCurrentAmps = moduleSimulation.getSteerMotorSupplyCurrentAmps();
 
-        inputs.odometryDriveWheelRevolutions = Arrays.stream(moduleSimulation.getCachedDriveWheelFinalPositionsRad())
-                .map(Units::radiansToRotations)
-                .toArray();
-
-        inputs.odometrySteerPositions = moduleSimulation.getCachedSteerAbsolutePositions();
+        final double[] cachedDriveWheelPositionsRad = moduleSimulation.getCachedDriveWheelFinalPositionsRad();
+        final Rotation2d[] cachedSteerPositions = moduleSimulation.getCachedSteerAbsolutePositions();
+        inputs.odometrySamplesCount = Math.min(
+                inputs.odometryDriveWheelRevolutions.length,
+                Math.min(cachedDriveWheelPositionsRad.length, cachedSteerPositions.length));
+        for (int i = 0; i < inputs.odometrySamplesCount; i++) {
+            inputs.odometryDriveWheelRevolutions[i] = Units.radiansToRotations(cachedDriveWheelPositionsRad[i]);
+            inputs.odometrySteerPositionsRad[i] = cachedSteerPositions[i].getRadians();
+        }
 
         inputs.hardwareConnected = true;
     }
 
+    @Override
+    public void updateControlFeedback(double[] feedback) {
+        feedback[0] = Units.radiansToRotations(moduleSimulation.getDriveWheelFinalSpeedRadPerSec());
+        feedback[1] = moduleSimulation.getSteerAbsoluteFacing().getRadians();
+    }
+
     @Override
     public void setDriveVoltage(double volts) {
         moduleSimulation.requestDriveControl(new ControlRequest.VoltageOut(Volts.of(volts)));
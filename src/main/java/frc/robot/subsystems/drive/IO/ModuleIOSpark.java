@@ -12,11 +12,11 @@ import com.revrobotics.CANSparkLowLevel.MotorType;
 import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.RelativeEncoder;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.AnalogInput;
 import edu.wpi.first.wpilibj.RobotController;
-import java.util.Queue;
 
 /**
  * Module IO implementation for SparkMax drive motor controller, SparkMax turn motor controller (NEO or NEO 550), and
@@ -40,8 +40,8 @@ public class ModuleIOSpark implements ModuleIO {
     private final RelativeEncoder driveEncoder;
     private final RelativeEncoder steerRelativeEncoder;
     private final AnalogInput turnAbsoluteEncoder;
-    private final Queue<Double> drivePositionInput;
-    private final Queue<Double> steerRelativeEncoderPositionUngeared;
+    private final OdometryThread.OdometryDoubleInput drivePositionInput;
+    private final OdometryThread.OdometryDoubleInput steerRelativeEncoderPositionUngeared;
 
     private final boolean isTurnMotorInverted = true;
     private final Rotation2d absoluteEncoderOffset;
@@ -128,18 +128,30 @@ public class ModuleIOSpark implements ModuleIO {
         inputs.steerMotorAppliedVolts = steerSparkMax.getAppliedOutput() * steerSparkMax.getBusVoltage();
         inputs.steerMotorCurrentAmps = steerSparkMax.getOutputCurrent();
 
-        inputs.odometryDriveWheelRevolutions = drivePositionInput.stream()
-                .mapToDouble(value -> Units.rotationsToRadians(value) / DRIVE_GEAR_RATIO)
-                .toArray();
-        drivePositionInput.clear();
-        inputs.odometrySteerPositions = steerRelativeEncoderPositionUngeared.stream()
-                .map(value ->
-                        Rotation2d.fromRotations(value / STEER_GEAR_RATIO).minus(steerRelativePositionEncoderOffset))
-                .toArray(Rotation2d[]::new);
-        steerRelativeEncoderPositionUngeared.clear();
+        /* both inputs are drained from the same odometry frames, so they hold the same amount of samples */
+        inputs.odometrySamplesCount =
+                Math.min(drivePositionInput.size(), steerRelativeEncoderPositionUngeared.size());
+        final double steerOffsetRad = steerRelativePositionEncoderOffset.getRadians();
+        for (int i = 0; i < inputs.odometrySamplesCount; i++) {
+            inputs.odometryDriveWheelRevolutions[i] =
+                    Units.rotationsToRadians(drivePositionInput.get(i)) / DRIVE_GEAR_RATIO;
+            inputs.odometrySteerPositionsRad[i] = MathUtil.angleModulus(
+                    Units.rotationsToRadians(steerRelativeEncoderPositionUngeared.get(i) / STEER_GEAR_RATIO)
+                            - steerOffsetRad);
+        }
+    }
+
+    @Override
+    public void updateControlFeedback(double[] feedback) {
+        final double RPM_TO_REVOLUTIONS_PER_SECOND = 1.0 / 60.0;
+        feedback[0] = driveEncoder.getVelocity() / DRIVE_GEAR_RATIO * RPM_TO_REVOLUTIONS_PER_SECOND;
+        feedback[1] = Rotation2d.fromRotations(steerRelativeEncoder.getPosition() / STEER_GEAR_RATIO)
+                .minus(steerRelativePositionEncoderOffset)
+                .getRadians();
     }
 
-    private Rotation2d steerRelativePositionEncoderOffset = new Rotation2d();
+    /* volatile, since it is also read by the drive control thread */
+    private volatile Rotation2d steerRelativePositionEncoderOffset = new Rotation2d();
 
     @Override
     public void calibrate() {
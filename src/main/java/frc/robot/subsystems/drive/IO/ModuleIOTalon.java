@@ -19,7 +19,6 @@ import com.ctre.phoenix6.mechanisms.swerve.SwerveModuleConstants;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
-import java.util.Queue;
 
 public class ModuleIOTalon implements ModuleIO {
     private final String name;
@@ -27,18 +26,22 @@ public class ModuleIOTalon implements ModuleIO {
     private final TalonFX steerTalon;
     private final CANcoder cancoder;
 
-    private final Queue<Double> driveEncoderUngearedRevolutions;
+    private final OdometryThread.OdometryDoubleInput driveEncoderUngearedRevolutions;
     private final StatusSignal<Double> driveEncoderUngearedRevolutionsPerSecond,
             driveMotorAppliedVoltage,
             driveMotorCurrent;
 
-    private final Queue<Double> steerEncoderAbsolutePositionRevolutions;
+    private final OdometryThread.OdometryDoubleInput steerEncoderAbsolutePositionRevolutions;
     private final StatusSignal<Double> steerEncoderVelocityRevolutionsPerSecond,
             steerMotorAppliedVolts,
             steerMotorCurrent;
 
     private final BaseStatusSignal[] periodicallyRefreshedSignals;
 
+    /* copies of the signals, refreshed only by the drive control thread */
+    private final StatusSignal<Double> controlFeedbackDriveVelocity, controlFeedbackSteerPosition;
+    private final BaseStatusSignal[] controlFeedbackSignals;
+
     private final double DRIVE_GEAR_RATIO;
 
     public ModuleIOTalon(
@@ -86,6 +89,12 @@ public class ModuleIOTalon implements ModuleIO {
         };
 
         BaseStatusSignal.setUpdateFrequencyForAll(50.0, periodicallyRefreshedSignals);
+
+        controlFeedbackDriveVelocity = driveTalon.getVelocity().clone();
+        controlFeedbackSteerPosition = cancoder.getAbsolutePosition().clone();
+        controlFeedbackSignals = new BaseStatusSignal[] {controlFeedbackDriveVelocity, controlFeedbackSteerPosition};
+        if (DRIVE_CONTROL_THREAD_ENABLED)
+            BaseStatusSignal.setUpdateFrequencyForAll(DRIVE_CONTROL_FREQUENCY, controlFeedbackDriveVelocity);
         driveTalon.optimizeBusUtilization();
         steerTalon.optimizeBusUtilization();
 
@@ -97,20 +106,19 @@ public class ModuleIOTalon implements ModuleIO {
         inputs.hardwareConnected =
                 BaseStatusSignal.refreshAll(periodicallyRefreshedSignals).isOK();
 
-        inputs.odometryDriveWheelRevolutions = driveEncoderUngearedRevolutions.stream()
-                .mapToDouble(value -> value / DRIVE_GEAR_RATIO)
-                .toArray();
-        driveEncoderUngearedRevolutions.clear();
-        if (inputs.odometryDriveWheelRevolutions.length > 0)
-            inputs.driveWheelFinalRevolutions =
-                    inputs.odometryDriveWheelRevolutions[inputs.odometryDriveWheelRevolutions.length - 1];
-
-        inputs.odometrySteerPositions = steerEncoderAbsolutePositionRevolutions.stream()
-                .map(this::getSteerFacingFromCANCoderReading)
-                .toArray(Rotation2d[]::new);
-        steerEncoderAbsolutePositionRevolutions.clear();
-        if (inputs.odometrySteerPositions.length > 0)
-            inputs.steerFacing = inputs.odometrySteerPositions[inputs.odometrySteerPositions.length - 1];
+        /* both inputs are drained from the same odometry frames, so they hold the same amount of samples */
+        inputs.odometrySamplesCount =
+                Math.min(driveEncoderUngearedRevolutions.size(), steerEncoderAbsolutePositionRevolutions.size());
+        for (int i = 0; i < inputs.odometrySamplesCount; i++) {
+            inputs.odometryDriveWheelRevolutions[i] = driveEncoderUngearedRevolutions.get(i) / DRIVE_GEAR_RATIO;
+            inputs.odometrySteerPositionsRad[i] =
+                    Units.rotationsToRadians(steerEncoderAbsolutePositionRevolutions.get(i));
+        }
+        if (inputs.odometrySamplesCount > 0) {
+            inputs.driveWheelFinalRevolutions = inputs.odometryDriveWheelRevolutions[inputs.odometrySamplesCount - 1];
+            inputs.steerFacing =
+                    Rotation2d.fromRadians(inputs.odometrySteerPositionsRad[inputs.odometrySamplesCount - 1]);
+        }
 
         inputs.driveWheelFinalVelocityRevolutionsPerSec =
                 driveEncoderUngearedRevolutionsPerSecond.getValueAsDouble() / DRIVE_GEAR_RATIO;
@@ -123,8 +131,11 @@ public class ModuleIOTalon implements ModuleIO {
         inputs.steerMotorCurrentAmps = steerMotorCurrent.getValueAsDouble();
     }
 
-    private Rotation2d getSteerFacingFromCANCoderReading(double canCoderReadingRotations) {
-        return Rotation2d.fromRotations(canCoderReadingRotations);
+    @Override
+    public void updateControlFeedback(double[] feedback) {
+        BaseStatusSignal.refreshAll(controlFeedbackSignals);
+        feedback[0] = controlFeedbackDriveVelocity.getValueAsDouble() / DRIVE_GEAR_RATIO;
+        feedback[1] = Units.rotationsToRadians(controlFeedbackSteerPosition.getValueAsDouble());
     }
 
     @Override
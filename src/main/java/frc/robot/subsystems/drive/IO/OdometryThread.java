@@ -10,39 +10,64 @@ import frc.robot.subsystems.drive.SwerveDrive;
 import frc.robot.utils.MapleTimeUtils;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.function.Supplier;
+import java.util.function.DoubleSupplier;
 import org.littletonrobotics.junction.AutoLog;
 
 public interface OdometryThread {
+    /**
+     * A signal sampled by the odometry thread.
+     *
+     * <p>The samples are captured into the odometry frame buffer, together with all the other registered signals and
+     * the time stamp. Each cycle, {@link #updateInputs(OdometryThreadInputs)} drains the frames and scatters them back
+     * into the inputs, so the samples read through {@link #size()} and {@link #get(int)} always line up with
+     * {@link OdometryThreadInputs#measurementTimeStamps}.
+     */
     final class OdometryDoubleInput {
-        private final Supplier<Double> supplier;
-        private final Queue<Double> queue;
+        private final DoubleSupplier supplier;
+        private final double[] samples;
+        private int sampleCount;
 
-        public OdometryDoubleInput(Supplier<Double> signal) {
+        public OdometryDoubleInput(DoubleSupplier signal) {
             this.supplier = signal;
-            this.queue = new ArrayBlockingQueue<>(ODOMETRY_CACHE_CAPACITY);
+            this.samples = new double[ODOMETRY_CACHE_CAPACITY];
+            this.sampleCount = 0;
         }
 
-        public void cacheInputToQueue() {
-            this.queue.offer(supplier.get());
+        /** called from the odometry thread, reads the signal */
+        public double sample() {
+            return supplier.getAsDouble();
+        }
+
+        /** called from the main thread, replaces the samples of this cycle with a column of the drained frames */
+        public void updateSamples(double[][] frames, int frameCount, int column) {
+            for (int i = 0; i < frameCount; i++) samples[i] = frames[i][column];
+            this.sampleCount = frameCount;
+        }
+
+        /** @return the amount of samples received this cycle */
+        public int size() {
+            return sampleCount;
+        }
+
+        /** @return the i-th sample received this cycle, oldest first */
+        public double get(int i) {
+            return samples[i];
         }
     }
 
     List<OdometryDoubleInput> registeredInputs = new ArrayList<>();
     List<BaseStatusSignal> registeredStatusSignals = new ArrayList<>();
 
-    static Queue<Double> registerSignalInput(StatusSignal<Double> signal) {
+    static OdometryDoubleInput registerSignalInput(StatusSignal<Double> signal) {
         signal.setUpdateFrequency(ODOMETRY_FREQUENCY, ODOMETRY_WAIT_TIMEOUT_SECONDS);
         registeredStatusSignals.add(signal);
-        return registerInput(signal.asSupplier());
+        return registerInput(signal::getValueAsDouble);
     }
 
-    static Queue<Double> registerInput(Supplier<Double> supplier) {
+    static OdometryDoubleInput registerInput(DoubleSupplier supplier) {
         final OdometryDoubleInput odometryDoubleInput = new OdometryDoubleInput(supplier);
         registeredInputs.add(odometryDoubleInput);
-        return odometryDoubleInput.queue;
+        return odometryDoubleInput;
     }
 
     static OdometryThread createInstance(SwerveDrive.DriveType type) {
@@ -58,21 +83,19 @@ public interface OdometryThread {
 
     @AutoLog
     class OdometryThreadInputs {
-        public double[] measurementTimeStamps = new double[0];
+        /* pre-allocated and refilled every cycle, only the first measurementsCount time stamps are valid */
+        public int measurementsCount = 0;
+        public double[] measurementTimeStamps = new double[ODOMETRY_MAX_SAMPLES_PER_PERIOD];
     }
 
     void updateInputs(OdometryThreadInputs inputs);
 
     default void start() {}
 
-    default void lockOdometry() {}
-
-    default void unlockOdometry() {}
-
     final class OdometryThreadSim implements OdometryThread {
         @Override
         public void updateInputs(OdometryThreadInputs inputs) {
-            inputs.measurementTimeStamps = new double[SIMULATION_TICKS_IN_1_PERIOD];
+            inputs.measurementsCount = SIMULATION_TICKS_IN_1_PERIOD;
             final double robotStartingTimeStamps = MapleTimeUtils.getLogTimeSeconds(),
                     iterationPeriodSeconds = Robot.defaultPeriodSecs / SIMULATION_TICKS_IN_1_PERIOD;
             for (int i = 0; i < SIMULATION_TICKS_IN_1_PERIOD; i++)
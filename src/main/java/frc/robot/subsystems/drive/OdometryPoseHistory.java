@@ -0,0 +1,107 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.utils.CustomMaths.PrimitivePoseMath.*;
+
+import frc.robot.utils.CustomMaths.PrimitivePoseMath;
+
+/**
+ * A fixed-capacity history of timestamped odometry poses, stored in primitive arrays.
+ *
+ * <p>Samples must be added in increasing time order; once full, the oldest sample is overwritten. Lookups use binary
+ * search and interpolate between the two neighbouring samples, just like WPILib's
+ * {@link edu.wpi.first.math.interpolation.TimeInterpolatableBuffer}, but without any allocation.
+ */
+public final class OdometryPoseHistory {
+    private final double[] timeStamps, xs, ys, thetas;
+    private final int capacity;
+    private int oldest = 0, size = 0;
+
+    public OdometryPoseHistory(int capacity) {
+        this.capacity = capacity;
+        this.timeStamps = new double[capacity];
+        this.xs = new double[capacity];
+        this.ys = new double[capacity];
+        this.thetas = new double[capacity];
+    }
+
+    public void add(double timeStampSeconds, double x, double y, double theta) {
+        if (size > 0 && timeStampSeconds <= newestTimeStamp()) return;
+        final int index;
+        if (size < capacity) index = physicalIndex(size++);
+        else {
+            index = oldest;
+            oldest = (oldest + 1) % capacity;
+        }
+        timeStamps[index] = timeStampSeconds;
+        xs[index] = x;
+        ys[index] = y;
+        thetas[index] = theta;
+    }
+
+    public void clear() {
+        oldest = 0;
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double oldestTimeStamp() {
+        return timeStamps[physicalIndex(0)];
+    }
+
+    public double newestTimeStamp() {
+        return timeStamps[physicalIndex(size - 1)];
+    }
+
+    /**
+     * Samples the pose at a given time, clamped to the time range of the history.
+     *
+     * @param timeStampSeconds the time to sample at
+     * @param out the sampled pose, as (x, y, theta), see {@link PrimitivePoseMath}
+     * @return whether the sample is available, false only if the history is empty
+     */
+    public boolean sample(double timeStampSeconds, double[] out) {
+        if (size == 0) return false;
+
+        final int floor = floorIndex(timeStampSeconds);
+        if (floor < 0) {
+            copyTo(physicalIndex(0), out);
+            return true;
+        }
+        if (floor == size - 1) {
+            copyTo(physicalIndex(floor), out);
+            return true;
+        }
+
+        final int lower = physicalIndex(floor), upper = physicalIndex(floor + 1);
+        final double t = (timeStampSeconds - timeStamps[lower]) / (timeStamps[upper] - timeStamps[lower]);
+        PrimitivePoseMath.interpolate(
+                xs[lower], ys[lower], thetas[lower], xs[upper], ys[upper], thetas[upper], t, out);
+        return true;
+    }
+
+    /** @return the logical index of the newest sample that is not after the given time, -1 if there is none */
+    private int floorIndex(double timeStampSeconds) {
+        int low = 0, high = size - 1, result = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (timeStamps[physicalIndex(mid)] <= timeStampSeconds) {
+                result = mid;
+                low = mid + 1;
+            } else high = mid - 1;
+        }
+        return result;
+    }
+
+    private void copyTo(int index, double[] out) {
+        out[X] = xs[index];
+        out[Y] = ys[index];
+        out[THETA] = thetas[index];
+    }
+
+    private int physicalIndex(int logicalIndex) {
+        return (oldest + logicalIndex) % capacity;
+    }
+}
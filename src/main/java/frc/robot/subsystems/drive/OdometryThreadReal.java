@@ -4,29 +4,48 @@ package frc.robot.subsystems.drive;
 import static frc.robot.constants.DriveTrainConstants.*;
 
 import com.ctre.phoenix6.BaseStatusSignal;
+import frc.robot.constants.LogPaths;
 import frc.robot.subsystems.drive.IO.OdometryThread;
+import frc.robot.utils.DoubleFrameRingBuffer;
 import frc.robot.utils.MapleTimeUtils;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Samples all the registered odometry inputs at {@link frc.robot.constants.DriveTrainConstants#ODOMETRY_FREQUENCY}.
+ *
+ * <p>Each sample is captured as one frame of the {@link DoubleFrameRingBuffer}: the time stamp at column 0, the real
+ * time of capture at column 1, followed by the registered inputs in registration order. A tick is either captured as a
+ * whole or dropped as a whole, so the samples of all the signals always line up with the time stamps. This thread is
+ * the only producer and the main robot thread is the only consumer, so no lock is required.
+ *
+ * <p>Dropped frames, buffer high-water mark and producer jitter are logged every cycle under
+ * {@link LogPaths#SYSTEM_PERFORMANCE_PATH}, so that {@link
+ * frc.robot.constants.DriveTrainConstants#ODOMETRY_CACHE_CAPACITY} can be sized from data.
+ */
 public class OdometryThreadReal extends Thread implements OdometryThread {
+    private static final int TIME_STAMP_COLUMN = 0, CAPTURE_TIME_COLUMN = 1, FIRST_INPUT_COLUMN = 2;
+    private static final String ODOMETRY_PERFORMANCE_PATH = LogPaths.SYSTEM_PERFORMANCE_PATH + "OdometryThread/";
+
     private final SwerveDrive.DriveType driveType;
 
     private final OdometryDoubleInput[] odometryDoubleInputs;
     private final BaseStatusSignal[] statusSignals;
-    private final Queue<Double> timeStampsQueue;
-    private final Lock lock = new ReentrantLock();
+    private final DoubleFrameRingBuffer framesBuffer;
+    private final double[][] drainedFrames;
+
+    private long previousDroppedFrameCount = 0;
+    private double previousCaptureTimeSeconds = -1;
 
     public OdometryThreadReal(
             SwerveDrive.DriveType driveType,
             OdometryDoubleInput[] odometryDoubleInputs,
             BaseStatusSignal[] statusSignals) {
         this.driveType = driveType;
-        this.timeStampsQueue = new ArrayBlockingQueue<>(ODOMETRY_CACHE_CAPACITY);
         this.odometryDoubleInputs = odometryDoubleInputs;
         this.statusSignals = statusSignals;
+        this.framesBuffer =
+                new DoubleFrameRingBuffer(ODOMETRY_CACHE_CAPACITY, odometryDoubleInputs.length + FIRST_INPUT_COLUMN);
+        this.drainedFrames = new double[ODOMETRY_CACHE_CAPACITY][framesBuffer.getFrameLength()];
 
         setName("OdometryThread");
         setDaemon(true);
@@ -45,10 +64,13 @@ public class OdometryThreadReal extends Thread implements OdometryThread {
     private void odometryPeriodic() {
         refreshSignalsAndBlockThread();
 
-        lock.lock();
-        timeStampsQueue.offer(estimateAverageTimeStamps());
-        for (OdometryDoubleInput odometryDoubleInput : odometryDoubleInputs) odometryDoubleInput.cacheInputToQueue();
-        lock.unlock();
+        final double[] frame = framesBuffer.claim();
+        if (frame == null) return;
+        frame[TIME_STAMP_COLUMN] = estimateAverageTimeStamps();
+        frame[CAPTURE_TIME_COLUMN] = MapleTimeUtils.getRealTimeSeconds();
+        for (int i = 0; i < odometryDoubleInputs.length; i++)
+            frame[i + FIRST_INPUT_COLUMN] = odometryDoubleInputs[i].sample();
+        framesBuffer.publish();
     }
 
     private void refreshSignalsAndBlockThread() {
@@ -73,18 +95,38 @@ public class OdometryThreadReal extends Thread implements OdometryThread {
 
     @Override
     public void updateInputs(OdometryThreadInputs inputs) {
-        inputs.measurementTimeStamps = new double[timeStampsQueue.size()];
-        for (int i = 0; i < inputs.measurementTimeStamps.length && !timeStampsQueue.isEmpty(); i++)
-            inputs.measurementTimeStamps[i] = timeStampsQueue.poll();
-    }
+        /* the consumer is the only one that shrinks the buffer, so its occupancy peaks right before draining */
+        final int framesHighWaterMark = framesBuffer.size();
+        final int frameCount = framesBuffer.drainTo(drainedFrames);
 
-    @Override
-    public void lockOdometry() {
-        lock.lock();
+        inputs.measurementsCount = frameCount;
+        for (int i = 0; i < frameCount; i++) inputs.measurementTimeStamps[i] = drainedFrames[i][TIME_STAMP_COLUMN];
+
+        for (int i = 0; i < odometryDoubleInputs.length; i++)
+            odometryDoubleInputs[i].updateSamples(drainedFrames, frameCount, i + FIRST_INPUT_COLUMN);
+
+        logPerformance(frameCount, framesHighWaterMark);
     }
 
-    @Override
-    public void unlockOdometry() {
-        lock.unlock();
+    private void logPerformance(int frameCount, int framesHighWaterMark) {
+        final long droppedFrameCount = framesBuffer.getDroppedFrameCount();
+        final double expectedPeriodSeconds = 1.0 / ODOMETRY_FREQUENCY;
+        double maxJitterSeconds = 0;
+        for (int i = 0; i < frameCount; i++) {
+            final double captureTimeSeconds = drainedFrames[i][CAPTURE_TIME_COLUMN];
+            if (previousCaptureTimeSeconds >= 0)
+                maxJitterSeconds = Math.max(
+                        maxJitterSeconds,
+                        Math.abs(captureTimeSeconds - previousCaptureTimeSeconds - expectedPeriodSeconds));
+            previousCaptureTimeSeconds = captureTimeSeconds;
+        }
+
+        Logger.recordOutput(ODOMETRY_PERFORMANCE_PATH + "FramesReceived", frameCount);
+        Logger.recordOutput(ODOMETRY_PERFORMANCE_PATH + "FramesHighWaterMark", framesHighWaterMark);
+        Logger.recordOutput(
+                ODOMETRY_PERFORMANCE_PATH + "FramesDropped", (int) (droppedFrameCount - previousDroppedFrameCount));
+        Logger.recordOutput(ODOMETRY_PERFORMANCE_PATH + "FramesDroppedTotal", droppedFrameCount);
+        Logger.recordOutput(ODOMETRY_PERFORMANCE_PATH + "MaxProducerJitterMS", maxJitterSeconds * 1000);
+        previousDroppedFrameCount = droppedFrameCount;
     }
 }
@@ -9,17 +9,15 @@ import static edu.wpi.first.units.Units.*;
 import static frc.robot.constants.DriveTrainConstants.*;
 import static frc.robot.constants.VisionConstants.*;
 
-import edu.wpi.first.math.VecBuilder;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Robot;
 import frc.robot.constants.DriveControlLoops;
 import frc.robot.constants.FieldConstants;
 import frc.robot.subsystems.MapleSubsystem;
@@ -27,8 +25,9 @@ import frc.robot.subsystems.drive.IO.*;
 import frc.robot.subsystems.vision.apriltags.MapleMultiTagPoseEstimator;
 import frc.robot.utils.Alert;
 import frc.robot.utils.ChassisHeadingController;
+import frc.robot.utils.CustomMaths.FourModuleSwerveKinematics;
+import frc.robot.utils.LoopTimingProfiler;
 import frc.robot.utils.MapleTimeUtils;
-import java.util.OptionalDouble;
 import org.littletonrobotics.junction.AutoLogOutput;
 import org.littletonrobotics.junction.Logger;
 
@@ -44,19 +43,37 @@ public class SwerveDrive extends MapleSubsystem implements HolonomicDriveSubsyst
     private final OdometryThreadInputsAutoLogged odometryThreadInputs;
     private final SwerveModule[] swerveModules;
 
-    private Rotation2d rawGyroRotation;
-    private final SwerveModulePosition[] lastModulePositions;
-    private final SwerveDrivePoseEstimator poseEstimator;
+    private final FourModuleSwerveKinematics kinematics = new FourModuleSwerveKinematics(MODULE_TRANSLATIONS);
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+            kinematics,
+            CHASSIS_MAX_VELOCITY.in(MetersPerSecond),
+            CHASSIS_MAX_ACCELERATION.in(MetersPerSecondPerSecond),
+            MAX_FRICTION_ACCELERATION.in(MetersPerSecondPerSecond),
+            STEER_MAX_VELOCITY.in(RadiansPerSecond));
+    private final double[] setPointSpeeds = new double[4],
+            setPointAnglesRad = new double[4],
+            measuredSpeeds = new double[4],
+            measuredAnglesRad = new double[4],
+            chassisSpeedsBuffer = new double[3];
+
+    private final SwerveDriveOdometryEngine odometryEngine;
+    private final SwerveDriveOdometryEngine.OdometryBatch odometryBatch;
 
     private final OdometryThread odometryThread;
+    /* null if the modules are controlled in the robot period */
+    private final DriveControlThread driveControlThread;
+    /* set once the drive control thread has crashed and the robot period controls the modules again */
+    private boolean driveControlThreadReleased = false;
+    private final LoopTimingProfiler.Scope odometryFetchingScope = getProfilingScope().child("OdometryFetching");
     private final Alert gyroDisconnectedAlert = new Alert("Gyro Hardware Fault", Alert.AlertType.ERROR),
             visionNoResultAlert = new Alert("Vision No Result", Alert.AlertType.INFO);
-    public static final ChassisHeadingController swerveHeadingController = new ChassisHeadingController(
+    private final ChassisHeadingController swerveHeadingController = new ChassisHeadingController(
             new TrapezoidProfile.Constraints(
                     CHASSIS_MAX_ANGULAR_VELOCITY.in(RadiansPerSecond),
                     CHASSIS_MAX_ANGULAR_ACCELERATION.in(RadiansPerSecondPerSecond)),
             DriveControlLoops.CHASSIS_ROTATION_CLOSE_LOOP,
-            new Rotation2d());
+            new Rotation2d(),
+            DriveControlLoops.CHASSIS_HEADING_ACTUATION_DELAY_SECONDS);
 
     public SwerveDrive(
             DriveType type,
@@ -65,10 +82,9 @@ public class SwerveDrive extends MapleSubsystem implements HolonomicDriveSubsyst
             ModuleIO frontRightModuleIO,
             ModuleIO backLeftModuleIO,
             ModuleIO backRightModuleIO) {
-        super("Drive");
+        super("Drive", Priority.CRITICAL, DRIVE_PERIODIC_TIME_BUDGET_SECONDS);
         this.gyroIO = gyroIO;
         this.gyroInputs = new GyroIOInputsAutoLogged();
-        this.rawGyroRotation = new Rotation2d();
         this.swerveModules = new SwerveModule[] {
             new SwerveModule(frontLeftModuleIO, "FrontLeft"),
             new SwerveModule(frontRightModuleIO, "FrontRight"),
@@ -76,30 +92,25 @@ public class SwerveDrive extends MapleSubsystem implements HolonomicDriveSubsyst
             new SwerveModule(backRightModuleIO, "BackRight"),
         };
 
-        lastModulePositions = new SwerveModulePosition[] {
-            new SwerveModulePosition(),
-            new SwerveModulePosition(),
-            new SwerveModulePosition(),
-            new SwerveModulePosition()
-        };
-        this.poseEstimator = new SwerveDrivePoseEstimator(
-                DRIVE_KINEMATICS,
-                rawGyroRotation,
-                lastModulePositions,
-                new Pose2d(),
-                VecBuilder.fill(
-                        ODOMETRY_TRANSLATIONAL_STANDARD_ERROR_METERS,
-                        ODOMETRY_TRANSLATIONAL_STANDARD_ERROR_METERS,
-                        GYRO_ROTATIONAL_STANDARD_ERROR_RADIANS),
-                VecBuilder.fill(
-                        TRANSLATIONAL_STANDARD_ERROR_METERS_FOR_SINGLE_OBSERVATION,
-                        TRANSLATIONAL_STANDARD_ERROR_METERS_FOR_SINGLE_OBSERVATION,
-                        ROTATIONAL_STANDARD_ERROR_RADIANS_FOR_SINGLE_OBSERVATION));
+        this.odometryEngine = new SwerveDriveOdometryEngine(
+                new FourModuleSwerveKinematics(MODULE_TRANSLATIONS),
+                new double[] {
+                    ODOMETRY_TRANSLATIONAL_STANDARD_ERROR_METERS,
+                    ODOMETRY_TRANSLATIONAL_STANDARD_ERROR_METERS,
+                    GYRO_ROTATIONAL_STANDARD_ERROR_RADIANS
+                },
+                (int) Math.ceil(SwerveDriveOdometryEngine.POSE_HISTORY_DURATION_SECONDS * ODOMETRY_FREQUENCY)
+                        + ODOMETRY_MAX_SAMPLES_PER_PERIOD);
+        this.odometryBatch =
+                new SwerveDriveOdometryEngine.OdometryBatch(ODOMETRY_MAX_SAMPLES_PER_PERIOD, swerveModules.length);
 
         this.odometryThread = OdometryThread.createInstance(type);
         this.odometryThreadInputs = new OdometryThreadInputsAutoLogged();
         this.odometryThread.start();
 
+        this.driveControlThread = DriveControlThread.createInstance(swerveModules);
+        if (driveControlThread != null) driveControlThread.start();
+
         gyroDisconnectedAlert.setActivated(false);
         visionNoResultAlert.setActivated(false);
 
@@ -108,24 +119,31 @@ public class SwerveDrive extends MapleSubsystem implements HolonomicDriveSubsyst
 
     @Override
     public void periodic(double dt, boolean enabled) {
-        final double t0 = MapleTimeUtils.getRealTimeSeconds();
+        odometryFetchingScope.begin();
         fetchOdometryInputs();
-        Logger.recordOutput(
-                "SystemPerformance/OdometryFetchingTimeMS", (MapleTimeUtils.getRealTimeSeconds() - t0) * 1000);
+        Logger.recordOutput("SystemPerformance/OdometryFetchingTimeMS", odometryFetchingScope.end() / 1_000_000.0);
         modulesPeriodic(dt, enabled);
+        if (driveControlThread != null) driveControlThread.logTelemetry();
+        if (isControlledByDriveControlThread()) {
+            if (!enabled) driveControlThread.publishSetpoint(0, 0, 0, false);
+        } else if (!enabled) resetSetpointGenerator();
 
-        for (int timeStampIndex = 0;
-                timeStampIndex < odometryThreadInputs.measurementTimeStamps.length;
-                timeStampIndex++) feedSingleOdometryDataToPositionEstimator(timeStampIndex);
+        fillOdometryBatch();
+        odometryEngine.integrate(odometryBatch);
+        if (odometryBatch.size > 0)
+            swerveHeadingController.setOdometryLatencySeconds(MapleTimeUtils.getLogTimeSeconds()
+                    - odometryBatch.timeStampsSeconds[odometryBatch.size - 1]);
 
         final double timeNotVisionResultSeconds = MapleTimeUtils.getLogTimeSeconds() - previousMeasurementTimeStamp;
-        visionNoResultAlert.setText(
-                String.format("AprilTag Vision No Result For %.2f (s)", timeNotVisionResultSeconds));
-        visionNoResultAlert.setActivated(timeNotVisionResultSeconds > 4);
+        final boolean visionNoResult = timeNotVisionResultSeconds > 4;
+        /* the text is only formatted while it is displayed */
+        if (visionNoResult)
+            visionNoResultAlert.setText(
+                    String.format("AprilTag Vision No Result For %.2f (s)", timeNotVisionResultSeconds));
+        visionNoResultAlert.setActivated(visionNoResult);
     }
 
     private void fetchOdometryInputs() {
-        odometryThread.lockOdometry();
         odometryThread.updateInputs(odometryThreadInputs);
         Logger.processInputs("Drive/OdometryThread", odometryThreadInputs);
 
@@ -134,75 +152,97 @@ public class SwerveDrive extends MapleSubsystem implements HolonomicDriveSubsyst
         gyroIO.updateInputs(gyroInputs);
         Logger.processInputs("Drive/Gyro", gyroInputs);
         gyroDisconnectedAlert.setActivated(!gyroInputs.connected);
-
-        odometryThread.unlockOdometry();
     }
 
-    private void modulesPeriodic(double dt, boolean enabled) {
-        for (var module : swerveModules) module.periodic(dt, enabled);
+    /**
+     * Checks whether the modules are controlled by the drive control thread, and takes their control back into the
+     * robot period once it has crashed.
+     */
+    private boolean isControlledByDriveControlThread() {
+        if (driveControlThread == null || driveControlThreadReleased) return false;
+        if (!driveControlThread.isCrashed()) return true;
+        /* the crashed thread has stopped the modules, so the next setpoint starts from their measured state */
+        resetSetpointGenerator();
+        driveControlThreadReleased = true;
+        return false;
     }
 
-    private void feedSingleOdometryDataToPositionEstimator(int timeStampIndex) {
-        final SwerveModulePosition[] modulePositions = getModulesPosition(timeStampIndex),
-                moduleDeltas = getModulesDelta(modulePositions);
-
-        if (!updateRobotFacingWithGyroReading(timeStampIndex)) updateRobotFacingWithOdometry(moduleDeltas);
-
-        poseEstimator.updateWithTime(
-                odometryThreadInputs.measurementTimeStamps[timeStampIndex], rawGyroRotation, modulePositions);
+    /** the modules are not driven while disabled, so the next setpoint starts from their measured state */
+    private void resetSetpointGenerator() {
+        /* also fills measuredAnglesRad */
+        final ChassisSpeeds measuredSpeeds = getMeasuredChassisSpeedsRobotRelative();
+        setpointGenerator.reset(
+                measuredSpeeds.vxMetersPerSecond,
+                measuredSpeeds.vyMetersPerSecond,
+                measuredSpeeds.omegaRadiansPerSecond,
+                measuredAnglesRad);
     }
 
-    private SwerveModulePosition[] getModulesPosition(int timeStampIndex) {
-        SwerveModulePosition[] swerveModulePositions = new SwerveModulePosition[swerveModules.length];
-        for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++)
-            swerveModulePositions[moduleIndex] = swerveModules[moduleIndex].getOdometryPositions()[timeStampIndex];
-        return swerveModulePositions;
+    private void modulesPeriodic(double dt, boolean enabled) {
+        for (var module : swerveModules) module.periodic(dt, enabled);
     }
 
-    private SwerveModulePosition[] getModulesDelta(SwerveModulePosition[] freshModulesPosition) {
-        SwerveModulePosition[] deltas = new SwerveModulePosition[swerveModules.length];
-        for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
-            final double deltaDistanceMeters =
-                    freshModulesPosition[moduleIndex].distanceMeters - lastModulePositions[moduleIndex].distanceMeters;
-            deltas[moduleIndex] =
-                    new SwerveModulePosition(deltaDistanceMeters, freshModulesPosition[moduleIndex].angle);
-            lastModulePositions[moduleIndex] = freshModulesPosition[moduleIndex];
+    /** copies the odometry samples of this cycle into the pre-allocated batch, without allocating */
+    private void fillOdometryBatch() {
+        odometryBatch.size = Math.min(odometryThreadInputs.measurementsCount, odometryBatch.capacity());
+        for (int i = 0; i < odometryBatch.size; i++) {
+            odometryBatch.timeStampsSeconds[i] = odometryThreadInputs.measurementTimeStamps[i];
+            odometryBatch.gyroYawsRad[i] = gyroInputs.connected && i < gyroInputs.odometrySamplesCount
+                    ? gyroInputs.odometryYawPositionsRad[i]
+                    : Double.NaN;
+            for (int moduleIndex = 0; moduleIndex < swerveModules.length; moduleIndex++) {
+                odometryBatch.modulesDistancesMeters[i][moduleIndex] =
+                        swerveModules[moduleIndex].getOdometryDistanceMeters(i);
+                odometryBatch.modulesAnglesRad[i][moduleIndex] =
+                        swerveModules[moduleIndex].getOdometrySteerFacingRad(i);
+            }
         }
-        return deltas;
-    }
-
-    /**
-     * updates the robot facing using the reading from the gyro
-     *
-     * @param timeStampIndex the index of the time stamp
-     * @return whether the update is success
-     */
-    private boolean updateRobotFacingWithGyroReading(int timeStampIndex) {
-        if (!gyroInputs.connected) return false;
-        rawGyroRotation = gyroInputs.odometryYawPositions[timeStampIndex];
-        return true;
     }
 
-    /**
-     * updates the robot facing using the reading from the gyro
-     *
-     * @param modulesDelta the delta of the swerve modules calculated from the odometry
-     */
-    private void updateRobotFacingWithOdometry(SwerveModulePosition[] modulesDelta) {
-        Twist2d twist = DRIVE_KINEMATICS.toTwist2d(modulesDelta);
-        rawGyroRotation = rawGyroRotation.plus(new Rotation2d(twist.dtheta));
+    @Override
+    public ChassisHeadingController getHeadingController() {
+        return swerveHeadingController;
     }
 
     @Override
     public void runRawChassisSpeeds(ChassisSpeeds speeds) {
-        OptionalDouble angularVelocityOverride =
-                swerveHeadingController.calculate(getMeasuredChassisSpeedsFieldRelative(), getPose());
-        if (angularVelocityOverride.isPresent())
-            speeds = new ChassisSpeeds(
-                    speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, angularVelocityOverride.getAsDouble());
+        final ChassisSpeeds measuredSpeedsFieldRelative = getMeasuredChassisSpeedsFieldRelative();
+        final Pose2d pose = getPose();
+        final double angularVelocityOverride = swerveHeadingController.calculate(
+                measuredSpeedsFieldRelative.vxMetersPerSecond,
+                measuredSpeedsFieldRelative.vyMetersPerSecond,
+                measuredSpeedsFieldRelative.omegaRadiansPerSecond,
+                pose.getX(),
+                pose.getY(),
+                pose.getRotation().getRadians());
+        if (!Double.isNaN(angularVelocityOverride))
+            speeds = new ChassisSpeeds(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, angularVelocityOverride);
+
+        if (isControlledByDriveControlThread()) {
+            driveControlThread.publishSetpoint(
+                    speeds.vxMetersPerSecond,
+                    speeds.vyMetersPerSecond,
+                    speeds.omegaRadiansPerSecond,
+                    DriverStation.isEnabled());
+            return;
+        }
 
-        SwerveModuleState[] setPointStates = DRIVE_KINEMATICS.toSwerveModuleStates(speeds);
-        SwerveDriveKinematics.desaturateWheelSpeeds(setPointStates, CHASSIS_MAX_VELOCITY);
+        setpointGenerator.generate(
+                speeds.vxMetersPerSecond,
+                speeds.vyMetersPerSecond,
+                speeds.omegaRadiansPerSecond,
+                Robot.defaultPeriodSecs,
+                setPointSpeeds,
+                setPointAnglesRad);
+        Logger.recordOutput("SwerveStates/SetpointGeneratorLimitingFactor", setpointGenerator.getLimitingFactor());
+        runSetPoints();
+    }
+
+    /** sends {@link #setPointSpeeds} and {@link #setPointAnglesRad} to the modules */
+    private void runSetPoints() {
+        SwerveModuleState[] setPointStates = new SwerveModuleState[4];
+        for (int i = 0; i < 4; i++)
+            setPointStates[i] = new SwerveModuleState(setPointSpeeds[i], Rotation2d.fromRadians(setPointAnglesRad[i]));
 
         // Send setpoints to modules
         SwerveModuleState[] optimizedSetpointStates = new SwerveModuleState[4];
@@ -214,21 +254,39 @@ public class SwerveDrive extends MapleSubsystem implements HolonomicDriveSubsyst
 
     @Override
     public void stop() {
-        Rotation2d[] swerveHeadings = new Rotation2d[swerveModules.length];
-        for (int i = 0; i < swerveHeadings.length; i++) swerveHeadings[i] = new Rotation2d();
-        DRIVE_KINEMATICS.resetHeadings(swerveHeadings);
+        if (isControlledByDriveControlThread()) driveControlThread.holdHeadings(0, 0, 0, 0);
+        else setpointGenerator.holdHeadings(0, 0, 0, 0);
         HolonomicDriveSubsystem.super.stop();
     }
 
     /**
      * Locks the chassis and turns the modules to an X formation to resist movement. The lock will be cancelled the next
      * time a nonzero velocity is requested.
+     *
+     * <p>Unlike {@link #stop()}, the chassis is not slowed down within the limits of the setpoint generator: the
+     * generator is reset to a stopped chassis in the X formation, and the modules are commanded to it right away.
      */
     public void lockChassisWithXFormation() {
-        Rotation2d[] swerveHeadings = new Rotation2d[swerveModules.length];
-        for (int i = 0; i < swerveHeadings.length; i++) swerveHeadings[i] = MODULE_TRANSLATIONS[i].getAngle();
-        DRIVE_KINEMATICS.resetHeadings(swerveHeadings);
-        HolonomicDriveSubsystem.super.stop();
+        for (int i = 0; i < setPointAnglesRad.length; i++) {
+            setPointSpeeds[i] = 0;
+            setPointAnglesRad[i] = MODULE_TRANSLATIONS[i].getAngle().getRadians();
+        }
+        if (isControlledByDriveControlThread()) {
+            driveControlThread.lockHeadings(setPointAnglesRad);
+            driveControlThread.publishSetpoint(0, 0, 0, DriverStation.isEnabled());
+            return;
+        }
+
+        setpointGenerator.reset(0, 0, 0, setPointAnglesRad);
+        runSetPoints();
+    }
+
+    /**
+     * Runs the control of the modules, if it is done by a {@link DriveControlThread}, must be called in simulation on
+     * every physics sub-tick.
+     */
+    public void simulationSubTick(double dtSeconds) {
+        if (driveControlThread != null) driveControlThread.simulationSubTick(dtSeconds);
     }
 
     /** Returns the module states (turn angles and drive velocities) for all the modules. */
@@ -249,17 +307,22 @@ public class SwerveDrive extends MapleSubsystem implements HolonomicDriveSubsyst
     @AutoLogOutput(key = "Odometry/RobotPosition")
     @Override
     public Pose2d getPose() {
-        return poseEstimator.getEstimatedPosition();
+        return odometryEngine.getEstimatedPose();
     }
 
     @Override
     public void setPose(Pose2d pose) {
-        poseEstimator.resetPosition(rawGyroRotation, getModuleLatestPositions(), pose);
+        odometryEngine.resetPose(pose, getModuleLatestPositions());
     }
 
     @Override
     public ChassisSpeeds getMeasuredChassisSpeedsRobotRelative() {
-        return DRIVE_KINEMATICS.toChassisSpeeds(getModuleStates());
+        for (int i = 0; i < swerveModules.length; i++) {
+            measuredSpeeds[i] = swerveModules[i].getDriveVelocityMetersPerSec();
+            measuredAnglesRad[i] = swerveModules[i].getSteerFacing().getRadians();
+        }
+        kinematics.toChassisSpeeds(measuredSpeeds, measuredAnglesRad, chassisSpeedsBuffer);
+        return new ChassisSpeeds(chassisSpeedsBuffer[0], chassisSpeedsBuffer[1], chassisSpeedsBuffer[2]);
     }
 
     @Override
@@ -286,8 +349,12 @@ public class SwerveDrive extends MapleSubsystem implements HolonomicDriveSubsyst
     public void addVisionMeasurement(
             MapleMultiTagPoseEstimator.RobotPoseEstimationResult poseEstimationResult, double timestamp) {
         previousMeasurementTimeStamp = Math.max(timestamp, previousMeasurementTimeStamp);
-        poseEstimator.addVisionMeasurement(
-                poseEstimationResult.pointEstimation, timestamp, poseEstimationResult.getEstimationStandardError());
+        odometryEngine.addVisionMeasurement(
+                poseEstimationResult.pointEstimation,
+                timestamp,
+                poseEstimationResult.translationXStandardDeviationMeters,
+                poseEstimationResult.translationYStandardDeviationMeters,
+                poseEstimationResult.rotationalStandardDeviationRadians);
     }
 
     private double previousMeasurementTimeStamp = -1;
@@ -0,0 +1,318 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.utils.CustomMaths.PrimitivePoseMath.*;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.robot.utils.CustomMaths.FourModuleSwerveKinematics;
+import frc.robot.utils.CustomMaths.PrimitivePoseMath;
+
+/**
+ *
+ *
+ * <h1>Odometry Engine for the Swerve Drive</h1>
+ *
+ * <p>Integrates a whole batch of odometry samples, (timestamp, gyro yaw, module positions), in one pass and records
+ * every integrated pose into a compact {@link OdometryPoseHistory}. The estimated pose is only computed once per batch,
+ * from the final odometry pose.
+ *
+ * <p>Vision measurements are fused with the same latency-compensated algorithm as WPILib's
+ * {@link edu.wpi.first.math.estimator.PoseEstimator}: the estimate at the measurement time is sampled from the odometry
+ * history, corrected with a Kalman gain, and the correction is carried forward to the latest odometry pose.
+ *
+ * <p>Unlike WPILib's, measurements are queued and applied together, in timestamp order, once per robot period (or
+ * before the pose is read). Adding a measurement discards the corrections after it, so applying them out of order,
+ * e.g. when several cameras report with different latencies, would throw away the newer corrections. All lookups are
+ * binary searches over fixed-capacity primitive arrays, see {@link OdometryPoseHistory} and
+ * {@link VisionCorrectionHistory}.
+ */
+public class SwerveDriveOdometryEngine {
+    /** How long the odometry history is kept, vision measurements older than this are discarded. */
+    public static final double POSE_HISTORY_DURATION_SECONDS = 1.5;
+
+    private static final int VISION_CORRECTIONS_CAPACITY = 256, PENDING_VISION_MEASUREMENTS_CAPACITY = 32;
+
+    /**
+     * A batch of odometry samples, pre-allocated and refilled every robot period.
+     *
+     * <p>Only the first {@link #size} samples are valid.
+     */
+    public static final class OdometryBatch {
+        public final double[] timeStampsSeconds;
+        /** the gyro yaw of each sample, in radians, {@link Double#NaN} if the gyro reading is not available */
+        public final double[] gyroYawsRad;
+        /** the module drive distances and steer facings of each sample, indexed [sample][module] */
+        public final double[][] modulesDistancesMeters, modulesAnglesRad;
+
+        public int size = 0;
+
+        public OdometryBatch(int capacity, int modulesCount) {
+            this.timeStampsSeconds = new double[capacity];
+            this.gyroYawsRad = new double[capacity];
+            this.modulesDistancesMeters = new double[capacity][modulesCount];
+            this.modulesAnglesRad = new double[capacity][modulesCount];
+        }
+
+        public int capacity() {
+            return timeStampsSeconds.length;
+        }
+    }
+
+    private final FourModuleSwerveKinematics kinematics;
+    private final double[] odometryVariances;
+    private final double[] previousModulesDistances, modulesDistanceDeltas;
+    private final double[] twistBuffer = new double[3];
+    private final OdometryPoseHistory odometryHistory;
+    private final VisionCorrectionHistory visionCorrections;
+
+    /* vision measurements waiting to be applied, sorted by time */
+    private final double[] pendingTimeStamps,
+            pendingXs,
+            pendingYs,
+            pendingThetas,
+            pendingXStdDevs,
+            pendingYStdDevs,
+            pendingThetaStdDevs;
+    private int pendingCount = 0;
+
+    /* the gyro yaw, or the odometry-integrated yaw when the gyro is not available */
+    private double rawGyroYawRad = 0, gyroOffsetRad = 0;
+    private double odometryX = 0, odometryY = 0, odometryTheta = 0;
+    private final double[] estimate = new double[3];
+    /* the estimate as a Pose2d, null whenever the estimate has changed since it was last built */
+    private Pose2d estimatedPose = null;
+
+    private final double[] poseBuffer = new double[3], odometrySample = new double[3], estimateSample = new double[3];
+
+    /**
+     * @param kinematics the kinematics of the drivetrain
+     * @param odometryStandardDeviations the standard deviations of the odometry, as (x meters, y meters, theta radians)
+     * @param historyCapacity the amount of odometry samples kept, should cover
+     *     {@link #POSE_HISTORY_DURATION_SECONDS}
+     */
+    public SwerveDriveOdometryEngine(
+            FourModuleSwerveKinematics kinematics, double[] odometryStandardDeviations, int historyCapacity) {
+        this.kinematics = kinematics;
+        this.odometryVariances = new double[3];
+        for (int i = 0; i < 3; i++)
+            odometryVariances[i] = odometryStandardDeviations[i] * odometryStandardDeviations[i];
+
+        this.previousModulesDistances = new double[FourModuleSwerveKinematics.MODULES_COUNT];
+        this.modulesDistanceDeltas = new double[FourModuleSwerveKinematics.MODULES_COUNT];
+        this.odometryHistory = new OdometryPoseHistory(historyCapacity);
+        this.visionCorrections = new VisionCorrectionHistory(VISION_CORRECTIONS_CAPACITY);
+
+        this.pendingTimeStamps = new double[PENDING_VISION_MEASUREMENTS_CAPACITY];
+        this.pendingXs = new double[PENDING_VISION_MEASUREMENTS_CAPACITY];
+        this.pendingYs = new double[PENDING_VISION_MEASUREMENTS_CAPACITY];
+        this.pendingThetas = new double[PENDING_VISION_MEASUREMENTS_CAPACITY];
+        this.pendingXStdDevs = new double[PENDING_VISION_MEASUREMENTS_CAPACITY];
+        this.pendingYStdDevs = new double[PENDING_VISION_MEASUREMENTS_CAPACITY];
+        this.pendingThetaStdDevs = new double[PENDING_VISION_MEASUREMENTS_CAPACITY];
+    }
+
+    /**
+     * Integrates a batch of odometry samples, in time order, applies the pending vision measurements, then updates the
+     * estimated pose.
+     *
+     * @param batch the samples of this robot period
+     */
+    public void integrate(OdometryBatch batch) {
+        for (int i = 0; i < batch.size; i++)
+            integrateSingleSample(
+                    batch.timeStampsSeconds[i],
+                    batch.gyroYawsRad[i],
+                    batch.modulesDistancesMeters[i],
+                    batch.modulesAnglesRad[i]);
+        applyPendingVisionMeasurements();
+        updateEstimate();
+    }
+
+    private void integrateSingleSample(
+            double timeStampSeconds, double gyroYawRad, double[] modulesDistancesMeters, double[] modulesAnglesRad) {
+        for (int i = 0; i < modulesDistanceDeltas.length; i++) {
+            modulesDistanceDeltas[i] = modulesDistancesMeters[i] - previousModulesDistances[i];
+            previousModulesDistances[i] = modulesDistancesMeters[i];
+        }
+        kinematics.toTwist(modulesDistanceDeltas, modulesAnglesRad, twistBuffer);
+
+        rawGyroYawRad = Double.isNaN(gyroYawRad) ? rawGyroYawRad + twistBuffer[THETA] : gyroYawRad;
+        final double newTheta = MathUtil.angleModulus(rawGyroYawRad + gyroOffsetRad);
+
+        PrimitivePoseMath.exp(
+                odometryX,
+                odometryY,
+                odometryTheta,
+                twistBuffer[X],
+                twistBuffer[Y],
+                MathUtil.angleModulus(newTheta - odometryTheta),
+                poseBuffer);
+        odometryX = poseBuffer[X];
+        odometryY = poseBuffer[Y];
+        odometryTheta = newTheta;
+
+        odometryHistory.add(timeStampSeconds, odometryX, odometryY, odometryTheta);
+    }
+
+    /**
+     * Queues a vision measurement, it will be applied latency-compensated, together with the other measurements of this
+     * robot period.
+     *
+     * @param visionPose the robot pose measured by vision
+     * @param timeStampSeconds the time at which the measurement is captured
+     * @param xStdDevMeters the standard deviation of the measurement, x
+     * @param yStdDevMeters the standard deviation of the measurement, y
+     * @param thetaStdDevRad the standard deviation of the measurement, rotation, can be infinity
+     */
+    public void addVisionMeasurement(
+            Pose2d visionPose,
+            double timeStampSeconds,
+            double xStdDevMeters,
+            double yStdDevMeters,
+            double thetaStdDevRad) {
+        if (pendingCount == PENDING_VISION_MEASUREMENTS_CAPACITY) {
+            applyPendingVisionMeasurements();
+            updateEstimate();
+        }
+
+        /* insertion sort, there are only a few measurements per period */
+        int index = pendingCount++;
+        for (; index > 0 && pendingTimeStamps[index - 1] > timeStampSeconds; index--) {
+            pendingTimeStamps[index] = pendingTimeStamps[index - 1];
+            pendingXs[index] = pendingXs[index - 1];
+            pendingYs[index] = pendingYs[index - 1];
+            pendingThetas[index] = pendingThetas[index - 1];
+            pendingXStdDevs[index] = pendingXStdDevs[index - 1];
+            pendingYStdDevs[index] = pendingYStdDevs[index - 1];
+            pendingThetaStdDevs[index] = pendingThetaStdDevs[index - 1];
+        }
+        pendingTimeStamps[index] = timeStampSeconds;
+        pendingXs[index] = visionPose.getX();
+        pendingYs[index] = visionPose.getY();
+        pendingThetas[index] = visionPose.getRotation().getRadians();
+        pendingXStdDevs[index] = xStdDevMeters;
+        pendingYStdDevs[index] = yStdDevMeters;
+        pendingThetaStdDevs[index] = thetaStdDevRad;
+    }
+
+    /** applies all the pending vision measurements, oldest first, in one forward pass */
+    private void applyPendingVisionMeasurements() {
+        if (pendingCount == 0) return;
+        cleanUpVisionCorrections();
+        for (int i = 0; i < pendingCount; i++)
+            applyVisionMeasurement(
+                    pendingTimeStamps[i],
+                    pendingXs[i],
+                    pendingYs[i],
+                    pendingThetas[i],
+                    pendingXStdDevs[i],
+                    pendingYStdDevs[i],
+                    pendingThetaStdDevs[i]);
+        pendingCount = 0;
+    }
+
+    private void applyVisionMeasurement(
+            double timeStampSeconds,
+            double visionX,
+            double visionY,
+            double visionTheta,
+            double xStdDevMeters,
+            double yStdDevMeters,
+            double thetaStdDevRad) {
+        if (odometryHistory.isEmpty()
+                || odometryHistory.newestTimeStamp() - POSE_HISTORY_DURATION_SECONDS > timeStampSeconds) return;
+
+        odometryHistory.sample(timeStampSeconds, odometrySample);
+        sampleEstimateAt(timeStampSeconds, estimateSample);
+
+        PrimitivePoseMath.log(
+                estimateSample[X], estimateSample[Y], estimateSample[THETA], visionX, visionY, visionTheta, poseBuffer);
+        PrimitivePoseMath.exp(
+                estimateSample[X],
+                estimateSample[Y],
+                estimateSample[THETA],
+                poseBuffer[X] * kalmanGain(X, xStdDevMeters),
+                poseBuffer[Y] * kalmanGain(Y, yStdDevMeters),
+                poseBuffer[THETA] * kalmanGain(THETA, thetaStdDevRad),
+                poseBuffer);
+
+        visionCorrections.putAndTruncate(
+                timeStampSeconds,
+                poseBuffer[X],
+                poseBuffer[Y],
+                poseBuffer[THETA],
+                odometrySample[X],
+                odometrySample[Y],
+                odometrySample[THETA]);
+    }
+
+    /** the steady-state Kalman gain of one axis, with the same closed form as WPILib's pose estimators */
+    private double kalmanGain(int axis, double measurementStdDev) {
+        final double q = odometryVariances[axis], r = measurementStdDev * measurementStdDev;
+        return q == 0 ? 0 : q / (q + Math.sqrt(q * r));
+    }
+
+    /** removes the vision corrections that are no longer needed to sample the history */
+    private void cleanUpVisionCorrections() {
+        if (odometryHistory.isEmpty() || visionCorrections.isEmpty()) return;
+        final double oldestOdometryTimeStamp = odometryHistory.oldestTimeStamp();
+        if (oldestOdometryTimeStamp < visionCorrections.oldestTimeStamp()) return;
+        visionCorrections.removeBefore(visionCorrections.floorIndex(oldestOdometryTimeStamp));
+    }
+
+    /** samples the estimated pose at a past time, the odometry history must not be empty */
+    private void sampleEstimateAt(double timeStampSeconds, double[] out) {
+        timeStampSeconds =
+                MathUtil.clamp(timeStampSeconds, odometryHistory.oldestTimeStamp(), odometryHistory.newestTimeStamp());
+        odometryHistory.sample(timeStampSeconds, out);
+
+        final int correctionIndex = visionCorrections.floorIndex(timeStampSeconds);
+        if (correctionIndex >= 0) visionCorrections.compensate(correctionIndex, out[X], out[Y], out[THETA], out);
+    }
+
+    private void updateEstimate() {
+        if (visionCorrections.isEmpty()) {
+            estimate[X] = odometryX;
+            estimate[Y] = odometryY;
+            estimate[THETA] = odometryTheta;
+        } else {
+            final int newestCorrection = visionCorrections.newestIndex();
+            visionCorrections.compensate(newestCorrection, odometryX, odometryY, odometryTheta, estimate);
+        }
+        /* so that integrating a batch does not allocate, the pose object is only built when it is read */
+        estimatedPose = null;
+    }
+
+    /**
+     * Resets the odometry and the estimate to a given pose.
+     *
+     * @param pose the new pose
+     * @param modulesPositions the latest module positions
+     */
+    public void resetPose(Pose2d pose, SwerveModulePosition[] modulesPositions) {
+        for (int i = 0; i < previousModulesDistances.length; i++)
+            previousModulesDistances[i] = modulesPositions[i].distanceMeters;
+        odometryX = pose.getX();
+        odometryY = pose.getY();
+        odometryTheta = pose.getRotation().getRadians();
+        gyroOffsetRad = odometryTheta - rawGyroYawRad;
+
+        odometryHistory.clear();
+        visionCorrections.clear();
+        pendingCount = 0;
+        updateEstimate();
+    }
+
+    /** @return the estimated pose, this object is only replaced when the estimate changes */
+    public Pose2d getEstimatedPose() {
+        if (pendingCount > 0) {
+            applyPendingVisionMeasurements();
+            updateEstimate();
+        }
+        if (estimatedPose == null)
+            estimatedPose = new Pose2d(estimate[X], estimate[Y], new Rotation2d(estimate[THETA]));
+        return estimatedPose;
+    }
+}
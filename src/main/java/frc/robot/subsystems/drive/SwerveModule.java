@@ -16,6 +16,7 @@ import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import frc.robot.constants.DriveTrainConstants;
 import frc.robot.subsystems.MapleSubsystem;
+import frc.robot.subsystems.MapleSubsystemScheduler;
 import frc.robot.subsystems.drive.IO.ModuleIO;
 import frc.robot.subsystems.drive.IO.ModuleIOInputsAutoLogged;
 import frc.robot.utils.Alert;
@@ -30,9 +31,13 @@ public class SwerveModule extends MapleSubsystem {
 
     private final PIDController turnCloseLoop, driveCloseLoop;
     private SwerveModuleState setPoint;
-    private SwerveModulePosition[] odometryPositions = new SwerveModulePosition[] {};
+    /* pre-allocated and reused across cycles, only the first odometryPositionsCount are valid */
+    private final double[] odometryDistancesMeters, odometrySteerFacingsRad;
+    private int odometryPositionsCount = 0;
 
     private final Alert hardwareFaultAlert;
+    /* set when the control loops are run by the drive control thread, which then owns all the control calls */
+    private volatile boolean controlledByDriveControlThread = false;
 
     public SwerveModule(ModuleIO io, String name) {
         super("Module-" + name);
@@ -44,7 +49,12 @@ public class SwerveModule extends MapleSubsystem {
         turnCloseLoop = new MaplePIDController(STEER_CLOSE_LOOP);
         driveCloseLoop = new MaplePIDController(DRIVE_CLOSE_LOOP);
 
+        /* the modules are run by the drive */
         CommandScheduler.getInstance().unregisterSubsystem(this);
+        MapleSubsystemScheduler.unschedule(this);
+
+        odometryDistancesMeters = new double[DriveTrainConstants.ODOMETRY_MAX_SAMPLES_PER_PERIOD];
+        odometrySteerFacingsRad = new double[DriveTrainConstants.ODOMETRY_MAX_SAMPLES_PER_PERIOD];
 
         setPoint = new SwerveModuleState();
         turnCloseLoop.calculate(getSteerFacing().getRadians()); // activate close loop controller
@@ -64,11 +74,10 @@ public class SwerveModule extends MapleSubsystem {
     }
 
     private void updateOdometryPositions() {
-        odometryPositions = new SwerveModulePosition[inputs.odometryDriveWheelRevolutions.length];
-        for (int i = 0; i < odometryPositions.length; i++) {
-            double positionMeters = driveWheelRevolutionsToMeters(inputs.odometryDriveWheelRevolutions[i]);
-            Rotation2d angle = inputs.odometrySteerPositions[i];
-            odometryPositions[i] = new SwerveModulePosition(positionMeters, angle);
+        odometryPositionsCount = Math.min(odometryDistancesMeters.length, inputs.odometrySamplesCount);
+        for (int i = 0; i < odometryPositionsCount; i++) {
+            odometryDistancesMeters[i] = driveWheelRevolutionsToMeters(inputs.odometryDriveWheelRevolutions[i]);
+            odometrySteerFacingsRad[i] = inputs.odometrySteerPositionsRad[i];
         }
     }
 
@@ -98,8 +107,57 @@ public class SwerveModule extends MapleSubsystem {
         return this.setPoint;
     }
 
+    /**
+     * Reads the feedback of the control loops, from the drive control thread.
+     *
+     * @param feedback written with the drive velocity, in m/s, and the steer facing, in radians
+     */
+    void updateControlFeedback(double[] feedback) {
+        io.updateControlFeedback(feedback);
+        feedback[0] = driveWheelRevolutionsToMeters(feedback[0]);
+    }
+
+    /**
+     * Runs the control loops toward a setpoint that is already optimized, from the drive control thread.
+     *
+     * <p>Same control laws as {@link #runSetPoint(SwerveModuleState)}, on primitives and with the feedback read by
+     * {@link #updateControlFeedback(double[])}.
+     */
+    void runControlLoops(
+            double speedSetpointMetersPerSec,
+            double angleSetpointRad,
+            double driveVelocityMetersPerSec,
+            double steerFacingRad) {
+        if (Math.abs(speedSetpointMetersPerSec) < 0.01) {
+            io.setDriveVoltage(0);
+            io.setSteerPowerPercent(0);
+            return;
+        }
+
+        final double adjustSpeedSetpointMetersPerSec =
+                speedSetpointMetersPerSec * Math.cos(angleSetpointRad - steerFacingRad);
+        io.setDriveVoltage(DRIVE_OPEN_LOOP.calculate(adjustSpeedSetpointMetersPerSec)
+                + driveCloseLoop.calculate(driveVelocityMetersPerSec, adjustSpeedSetpointMetersPerSec));
+        turnCloseLoop.setSetpoint(angleSetpointRad);
+        io.setSteerPowerPercent(turnCloseLoop.calculate(steerFacingRad));
+    }
+
+    /** hands the control loops over to the drive control thread */
+    void setControlledByDriveControlThread() {
+        this.controlledByDriveControlThread = true;
+    }
+
+    /** stops the module and hands the control loops back to the main thread, from the crashed drive control thread */
+    void releaseFromDriveControlThread() {
+        this.controlledByDriveControlThread = false;
+        io.setDriveVoltage(0);
+        io.setSteerPowerPercent(0);
+    }
+
     @Override
     public void onDisable() {
+        /* the drive control thread stops the modules itself */
+        if (controlledByDriveControlThread) return;
         io.setSteerPowerPercent(0);
         io.setDriveVoltage(0);
     }
@@ -137,8 +195,18 @@ public class SwerveModule extends MapleSubsystem {
         return new SwerveModuleState(getDriveVelocityMetersPerSec(), getSteerFacing());
     }
 
-    /** Returns the module positions received this cycle. */
-    public SwerveModulePosition[] getOdometryPositions() {
-        return odometryPositions;
+    /** Returns the amount of module positions received this cycle. */
+    public int getOdometryPositionsCount() {
+        return odometryPositionsCount;
+    }
+
+    /** Returns the drive position, in meters, of the i-th module position received this cycle. */
+    public double getOdometryDistanceMeters(int i) {
+        return odometryDistancesMeters[i];
+    }
+
+    /** Returns the turn angle, in radians, of the i-th module position received this cycle. */
+    public double getOdometrySteerFacingRad(int i) {
+        return odometrySteerFacingsRad[i];
     }
 }
@@ -0,0 +1,213 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import frc.robot.utils.CustomMaths.FourModuleSwerveKinematics;
+
+/**
+ *
+ *
+ * <h1>Second-order setpoint generator for a four-module swerve drive.</h1>
+ *
+ * <p>Given the previous setpoint and the period, moves the chassis speeds toward the desired speeds only as far as the
+ * modules can follow within one period, under:
+ *
+ * <ul>
+ *   <li>the maximum drive speed of the modules (the desired speeds are desaturated first)
+ *   <li>the maximum drive acceleration of each module
+ *   <li>the friction circle: the change of each module velocity vector, over the period, is limited by the friction
+ *       acceleration
+ *   <li>the maximum steer velocity of each module
+ * </ul>
+ *
+ * <p>The chassis speeds are moved along a straight line, from the previous setpoint to the desired speeds, so that all
+ * the modules stay consistent with each other. A module may reverse its drive instead of steering by more than 90
+ * degrees. A module that is nearly stopped can not be limited by slowing the chassis down, so its steering is
+ * rate-limited directly, and its speed is scaled down until it faces the right way.
+ *
+ * <p>All the state is stored in primitive arrays, and {@link #generate} allocates nothing.
+ */
+public final class SwerveSetpointGenerator {
+    private static final int MODULES_COUNT = FourModuleSwerveKinematics.MODULES_COUNT;
+    private static final int BISECTION_ITERATIONS = 10;
+    private static final double STOPPED_MODULE_SPEED_MPS = 0.05;
+
+    private final FourModuleSwerveKinematics kinematics;
+    private final double maxDriveVelocityMPS, maxDriveAccelerationMPSSq, maxSteerVelocityRadPerSec;
+    private final double maxFrictionAccelerationMPSSq;
+
+    /* the previous setpoint */
+    private double previousVX = 0, previousVY = 0, previousOmega = 0;
+    private final double[] previousAnglesRad = new double[MODULES_COUNT];
+    /* the headings to take once the chassis has stopped, until non-zero speeds are desired */
+    private final double[] holdHeadingsRad = new double[MODULES_COUNT];
+    private boolean holdingHeadings = false;
+
+    private final double[] previousVectors = new double[2 * MODULES_COUNT],
+            desiredVectors = new double[2 * MODULES_COUNT],
+            outputVectors = new double[2 * MODULES_COUNT];
+
+    private double limitingFactor = 1;
+
+    /**
+     * @param kinematics the kinematics of the drivetrain, used only for its module vectors
+     * @param maxDriveVelocityMPS the maximum drive speed of the modules
+     * @param maxDriveAccelerationMPSSq the maximum drive acceleration of each module
+     * @param maxFrictionAccelerationMPSSq the maximum acceleration that the friction of the wheels can provide
+     * @param maxSteerVelocityRadPerSec the maximum steer velocity of the modules
+     */
+    public SwerveSetpointGenerator(
+            FourModuleSwerveKinematics kinematics,
+            double maxDriveVelocityMPS,
+            double maxDriveAccelerationMPSSq,
+            double maxFrictionAccelerationMPSSq,
+            double maxSteerVelocityRadPerSec) {
+        this.kinematics = kinematics;
+        this.maxDriveVelocityMPS = maxDriveVelocityMPS;
+        this.maxDriveAccelerationMPSSq = maxDriveAccelerationMPSSq;
+        this.maxFrictionAccelerationMPSSq = maxFrictionAccelerationMPSSq;
+        this.maxSteerVelocityRadPerSec = maxSteerVelocityRadPerSec;
+    }
+
+    /**
+     * Resets the previous setpoint, normally to the measured state of the drivetrain, and cancels the held headings.
+     *
+     * <p>Resetting to zero speeds at given angles makes the next setpoints, while zero speeds are desired, keep the
+     * modules at these angles right away.
+     *
+     * @param measuredAnglesRad the measured steer angles of the modules
+     */
+    public void reset(double vx, double vy, double omega, double[] measuredAnglesRad) {
+        previousVX = vx;
+        previousVY = vy;
+        previousOmega = omega;
+        System.arraycopy(measuredAnglesRad, 0, previousAnglesRad, 0, MODULES_COUNT);
+        holdingHeadings = false;
+    }
+
+    /**
+     * Generates the next setpoint.
+     *
+     * @param vx the desired robot-relative x speed, in m/s
+     * @param vy the desired robot-relative y speed, in m/s
+     * @param omega the desired angular velocity, in rad/s
+     * @param dtSeconds the time until the next setpoint
+     * @param outSpeeds the drive speeds of the modules, in m/s, negative if the module drives backwards
+     * @param outAnglesRad the steer angles of the modules, in radians
+     */
+    public void generate(
+            double vx, double vy, double omega, double dtSeconds, double[] outSpeeds, double[] outAnglesRad) {
+        if (vx != 0 || vy != 0 || omega != 0) holdingHeadings = false;
+
+        /* desaturate the desired speeds, keeping the direction of the chassis motion */
+        kinematics.toModuleVelocityVectors(vx, vy, omega, desiredVectors);
+        double maxModuleSpeed = 0;
+        for (int i = 0; i < MODULES_COUNT; i++)
+            maxModuleSpeed = Math.max(maxModuleSpeed, Math.hypot(desiredVectors[2 * i], desiredVectors[2 * i + 1]));
+        if (maxModuleSpeed > maxDriveVelocityMPS) {
+            final double scale = maxDriveVelocityMPS / maxModuleSpeed;
+            vx *= scale;
+            vy *= scale;
+            omega *= scale;
+            for (int i = 0; i < desiredVectors.length; i++) desiredVectors[i] *= scale;
+        }
+        kinematics.toModuleVelocityVectors(previousVX, previousVY, previousOmega, previousVectors);
+
+        /* the largest step along the line from the previous setpoint to the desired speeds that all modules follow */
+        double s = 1;
+        for (int i = 0; i < MODULES_COUNT; i++) s = Math.min(s, findModuleLimit(i, s, dtSeconds));
+        limitingFactor = s;
+
+        previousVX += (vx - previousVX) * s;
+        previousVY += (vy - previousVY) * s;
+        previousOmega += (omega - previousOmega) * s;
+        kinematics.toModuleVelocityVectors(previousVX, previousVY, previousOmega, outputVectors);
+
+        if (holdingHeadings && previousVX == 0 && previousVY == 0 && previousOmega == 0) {
+            System.arraycopy(holdHeadingsRad, 0, previousAnglesRad, 0, MODULES_COUNT);
+            for (int i = 0; i < MODULES_COUNT; i++) {
+                outSpeeds[i] = 0;
+                outAnglesRad[i] = previousAnglesRad[i];
+            }
+            return;
+        }
+        for (int i = 0; i < MODULES_COUNT; i++) generateModuleState(i, dtSeconds, outSpeeds, outAnglesRad);
+    }
+
+    /** @return the largest step, in [0, maxStep], for which a module satisfies all its constraints */
+    private double findModuleLimit(int module, double maxStep, double dtSeconds) {
+        final double px = previousVectors[2 * module],
+                py = previousVectors[2 * module + 1],
+                dx = desiredVectors[2 * module] - px,
+                dy = desiredVectors[2 * module + 1] - py;
+
+        /* the module velocity changes linearly with the step, so the friction circle limits it in closed form */
+        final double maxVelocityChange = maxFrictionAccelerationMPSSq * dtSeconds, change = Math.hypot(dx, dy);
+        final double limit = change * maxStep <= maxVelocityChange ? maxStep : maxVelocityChange / change;
+
+        if (isFeasible(px, py, dx, dy, limit, dtSeconds)) return limit;
+        double low = 0, high = limit;
+        for (int iteration = 0; iteration < BISECTION_ITERATIONS; iteration++) {
+            final double mid = (low + high) / 2;
+            if (isFeasible(px, py, dx, dy, mid, dtSeconds)) low = mid;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /** checks the drive acceleration and steer velocity of a module, at a given step */
+    private boolean isFeasible(double px, double py, double dx, double dy, double step, double dt) {
+        final double vx = px + dx * step, vy = py + dy * step;
+        final double previousSpeed = Math.hypot(px, py), speed = Math.hypot(vx, vy);
+        /* a module that is (or will be) stopped can steer freely, it is handled in generateModuleState() */
+        if (previousSpeed < STOPPED_MODULE_SPEED_MPS || speed < STOPPED_MODULE_SPEED_MPS)
+            return Math.abs(speed - previousSpeed) <= maxDriveAccelerationMPSSq * dt;
+
+        final double angleChange = Math.abs(MathUtil.angleModulus(Math.atan2(vy, vx) - Math.atan2(py, px)));
+        final boolean reversed = angleChange > Math.PI / 2;
+        final double steerChange = reversed ? Math.PI - angleChange : angleChange,
+                driveChange = reversed ? speed + previousSpeed : Math.abs(speed - previousSpeed);
+        return steerChange <= maxSteerVelocityRadPerSec * dt && driveChange <= maxDriveAccelerationMPSSq * dt;
+    }
+
+    private void generateModuleState(int module, double dtSeconds, double[] outSpeeds, double[] outAnglesRad) {
+        final double vx = outputVectors[2 * module], vy = outputVectors[2 * module + 1];
+        final double speed = Math.hypot(vx, vy), previousAngle = previousAnglesRad[module];
+        if (speed < 1e-6) {
+            outSpeeds[module] = 0;
+            outAnglesRad[module] = previousAngle;
+            return;
+        }
+
+        /* drive backwards rather than steering by more than 90 degrees */
+        double targetAngle = Math.atan2(vy, vx), signedSpeed = speed;
+        if (Math.abs(MathUtil.angleModulus(targetAngle - previousAngle)) > Math.PI / 2) {
+            targetAngle = MathUtil.angleModulus(targetAngle + Math.PI);
+            signedSpeed = -speed;
+        }
+
+        final double maxSteerChange = maxSteerVelocityRadPerSec * dtSeconds;
+        final double steerChange =
+                MathUtil.clamp(MathUtil.angleModulus(targetAngle - previousAngle), -maxSteerChange, maxSteerChange);
+        final double angle = MathUtil.angleModulus(previousAngle + steerChange);
+        /* only drive along the direction that the module actually faces */
+        outSpeeds[module] = signedSpeed * Math.max(0, Math.cos(targetAngle - angle));
+        outAnglesRad[module] = previousAnglesRad[module] = angle;
+    }
+
+    /**
+     * Sets the headings that the modules take once the chassis has stopped, see
+     * {@link FourModuleSwerveKinematics#resetHeadings}.
+     *
+     * <p>The previous setpoint is left as it is, so a moving chassis still slows down within the limits first. The
+     * headings are held until non-zero speeds are desired, or until the generator is {@link #reset}.
+     */
+    public void holdHeadings(double... headingsRad) {
+        System.arraycopy(headingsRad, 0, holdHeadingsRad, 0, MODULES_COUNT);
+        holdingHeadings = true;
+    }
+
+    /** @return the fraction of the way from the previous setpoint to the desired speeds reached in the last period */
+    public double getLimitingFactor() {
+        return limitingFactor;
+    }
+}
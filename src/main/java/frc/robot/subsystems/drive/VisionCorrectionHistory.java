@@ -0,0 +1,111 @@
+package frc.robot.subsystems.drive;
+
+import frc.robot.utils.CustomMaths.PrimitivePoseMath;
+
+/**
+ * The vision corrections applied to the pose estimate, sorted by time and stored in fixed-capacity primitive arrays.
+ *
+ * <p>Each correction is a pair of poses at the same time: the corrected estimate, and the odometry pose. The estimate
+ * at any later time is obtained by moving the odometry pose with the rigid transformation between the two, see
+ * {@link PrimitivePoseMath#transformByReference}.
+ */
+final class VisionCorrectionHistory {
+    private final double[] timeStamps, visionXs, visionYs, visionThetas, odometryXs, odometryYs, odometryThetas;
+    private final int capacity;
+    private int size = 0;
+
+    VisionCorrectionHistory(int capacity) {
+        this.capacity = capacity;
+        this.timeStamps = new double[capacity];
+        this.visionXs = new double[capacity];
+        this.visionYs = new double[capacity];
+        this.visionThetas = new double[capacity];
+        this.odometryXs = new double[capacity];
+        this.odometryYs = new double[capacity];
+        this.odometryThetas = new double[capacity];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    double oldestTimeStamp() {
+        return timeStamps[0];
+    }
+
+    int newestIndex() {
+        return size - 1;
+    }
+
+    /** @return the index of the newest correction that is not after the given time, -1 if there is none */
+    int floorIndex(double timeStampSeconds) {
+        int low = 0, high = size - 1, result = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (timeStamps[mid] <= timeStampSeconds) {
+                result = mid;
+                low = mid + 1;
+            } else high = mid - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Stores a correction, and discards all the corrections after it, since they were computed from an estimate that
+     * did not include this correction.
+     */
+    void putAndTruncate(
+            double timeStampSeconds,
+            double visionX,
+            double visionY,
+            double visionTheta,
+            double odometryX,
+            double odometryY,
+            double odometryTheta) {
+        final int floor = floorIndex(timeStampSeconds);
+        size = floor >= 0 && timeStamps[floor] == timeStampSeconds ? floor : floor + 1;
+        if (size == capacity) removeBefore(1);
+
+        timeStamps[size] = timeStampSeconds;
+        visionXs[size] = visionX;
+        visionYs[size] = visionY;
+        visionThetas[size] = visionTheta;
+        odometryXs[size] = odometryX;
+        odometryYs[size] = odometryY;
+        odometryThetas[size] = odometryTheta;
+        size++;
+    }
+
+    /** removes all the corrections before a given index */
+    void removeBefore(int index) {
+        if (index <= 0) return;
+        final int remaining = size - index;
+        System.arraycopy(timeStamps, index, timeStamps, 0, remaining);
+        System.arraycopy(visionXs, index, visionXs, 0, remaining);
+        System.arraycopy(visionYs, index, visionYs, 0, remaining);
+        System.arraycopy(visionThetas, index, visionThetas, 0, remaining);
+        System.arraycopy(odometryXs, index, odometryXs, 0, remaining);
+        System.arraycopy(odometryYs, index, odometryYs, 0, remaining);
+        System.arraycopy(odometryThetas, index, odometryThetas, 0, remaining);
+        size = remaining;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /** applies the correction at a given index to an odometry pose */
+    void compensate(int index, double odometryX, double odometryY, double odometryTheta, double[] out) {
+        PrimitivePoseMath.transformByReference(
+                odometryX,
+                odometryY,
+                odometryTheta,
+                odometryXs[index],
+                odometryYs[index],
+                odometryThetas[index],
+                visionXs[index],
+                visionYs[index],
+                visionThetas[index],
+                out);
+    }
+}
@@ -26,7 +26,7 @@ public class AprilTagVision extends MapleSubsystem {
             AprilTagVisionIO io,
             List<PhotonCameraProperties> camerasProperties,
             HolonomicDriveSubsystem driveSubsystem) {
-        super("Vision");
+        super("Vision", Priority.DEFERRABLE, VISION_PERIODIC_TIME_BUDGET_SECONDS);
         this.io = io;
         this.inputs = new AprilTagVisionIO.VisionInputs(camerasProperties.size());
         this.camerasDisconnectedAlerts = new Alert[camerasProperties.size()];
@@ -49,15 +49,20 @@ public class AprilTagVision extends MapleSubsystem {
         io.updateInputs(inputs);
         Logger.processInputs(APRIL_TAGS_VISION_PATH + "Inputs", inputs);
 
-        for (int i = 0; i < inputs.camerasInputs.length; i++)
-            this.camerasDisconnectedAlerts[i].setActivated(!inputs.camerasInputs[i].cameraConnected);
+        for (int i = 0; i < inputs.camerasAmount; i++)
+            this.camerasDisconnectedAlerts[i].setActivated(!inputs.camerasConnected[i]);
 
-        result = multiTagPoseEstimator.estimateRobotPose(inputs.camerasInputs, driveSubsystem.getPose());
-        result.ifPresent(robotPoseEstimationResult ->
-                driveSubsystem.addVisionMeasurement(robotPoseEstimationResult, getResultsTimeStamp()));
+        /* each result is fed with the capture time of its own frames, oldest first */
+        final List<RobotPoseEstimationResult> results =
+                multiTagPoseEstimator.estimateRobotPose(inputs, driveSubsystem.getPose());
+        for (RobotPoseEstimationResult robotPoseEstimationResult : results)
+            driveSubsystem.addVisionMeasurement(robotPoseEstimationResult, robotPoseEstimationResult.timeStampSeconds);
+        if (!results.isEmpty()) result = Optional.of(results.get(results.size() - 1));
+        else result = Optional.empty();
 
         Logger.recordOutput(
                 APRIL_TAGS_VISION_PATH + "Results/Estimated Pose", displayVisionPointEstimateResult(result));
+        Logger.recordOutput(APRIL_TAGS_VISION_PATH + "Results/Count", results.size());
         SmartDashboard.putBoolean("Vision Result Trustable", result.isPresent());
         Logger.recordOutput(APRIL_TAGS_VISION_PATH + "Results/Presented", result.isPresent());
     }
@@ -69,17 +74,4 @@ public class AprilTagVision extends MapleSubsystem {
             return new Pose2d(result.get().pointEstimation.getTranslation(), driveSubsystem.getFacing());
         return result.get().pointEstimation;
     }
-
-    private double getResultsTimeStamp() {
-        return inputs.inputsFetchedRealTimeStampSeconds - getResultsAverageLatencySeconds(inputs.camerasInputs);
-    }
-
-    private static double getResultsAverageLatencySeconds(AprilTagVisionIO.CameraInputs[] camerasInputs) {
-        if (camerasInputs.length == 0) return 0;
-        double totalLatencySeconds = 0;
-        for (AprilTagVisionIO.CameraInputs cameraInputs : camerasInputs)
-            totalLatencySeconds += cameraInputs.resultsDelaySeconds;
-
-        return totalLatencySeconds / camerasInputs.length;
-    }
 }
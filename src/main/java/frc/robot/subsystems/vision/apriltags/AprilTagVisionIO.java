@@ -1,7 +1,9 @@
 package frc.robot.subsystems.vision.apriltags;
 
+import edu.wpi.first.math.geometry.Quaternion;
 import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.wpilibj.DriverStation;
 import java.util.Arrays;
 import java.util.Optional;
@@ -10,95 +12,258 @@ import org.littletonrobotics.junction.inputs.LoggableInputs;
 import org.photonvision.targeting.PhotonPipelineResult;
 
 public interface AprilTagVisionIO {
+    /**
+     * The inputs of a single camera.
+     *
+     * <p>All the transforms are stored flat in primitive arrays, as (x, y, z, qw, qx, qy, qz), see
+     * {@link #TRANSFORM_STRIDE}, so that fetching and logging the inputs does not allocate. The whole inputs can also
+     * be packed into a single <code>double[]</code> frame of {@link #FRAME_LENGTH}, to be passed between threads.
+     */
     class CameraInputs {
         public static final int MAX_TARGET_PER_CAMERA = 5;
+        public static final int TRANSFORM_STRIDE = 7;
+
+        private static final int ARRIVAL_TIME_COLUMN = 0,
+                RESULTS_DELAY_COLUMN = 1,
+                CAPTURE_TIME_COLUMN = 2,
+                TARGETS_COUNT_COLUMN = 3,
+                FIELD_TO_CAMERA_PRESENT_COLUMN = 4,
+                FIDUCIAL_IDS_COLUMN = 5,
+                CAMERA_TO_TARGETS_COLUMN = FIDUCIAL_IDS_COLUMN + MAX_TARGET_PER_CAMERA,
+                FIELD_TO_CAMERA_COLUMN = CAMERA_TO_TARGETS_COLUMN + MAX_TARGET_PER_CAMERA * TRANSFORM_STRIDE;
+        public static final int FRAME_LENGTH = FIELD_TO_CAMERA_COLUMN + TRANSFORM_STRIDE;
+
         public boolean cameraConnected;
+        /** the real time at which the result arrived on the robot */
+        public double arrivalTimeStampSeconds;
+
         public double resultsDelaySeconds;
+        /**
+         * the time at which the frame was captured, as stamped by PhotonLib: the time the result was received over
+         * NetworkTables, minus the latency reported by the camera
+         */
+        public double captureTimeStampSeconds;
+
         public int currentTargetsCount;
         public final int[] fiducialMarksID;
-        public final Transform3d[] bestCameraToTargets;
-        public Optional<Transform3d> bestFieldToCamera = Optional.empty();
+        /** the best camera-to-target transform of each target, flattened */
+        public final double[] bestCameraToTargets;
+        /** the multi-tag field-to-camera transform, flattened, only valid if {@link #bestFieldToCameraPresent} */
+        public final double[] bestFieldToCamera;
+
+        public boolean bestFieldToCameraPresent;
 
         public CameraInputs() {
             this.fiducialMarksID = new int[MAX_TARGET_PER_CAMERA];
-            this.bestCameraToTargets = new Transform3d[MAX_TARGET_PER_CAMERA];
+            this.bestCameraToTargets = new double[MAX_TARGET_PER_CAMERA * TRANSFORM_STRIDE];
+            this.bestFieldToCamera = new double[TRANSFORM_STRIDE];
             clear();
         }
 
         public void clear() {
             this.cameraConnected = false;
+            this.arrivalTimeStampSeconds = 0;
             this.resultsDelaySeconds = 0;
+            this.captureTimeStampSeconds = 0;
             this.currentTargetsCount = 0;
             Arrays.fill(fiducialMarksID, -1);
-            Arrays.fill(bestCameraToTargets, new Transform3d());
+            for (int i = 0; i < MAX_TARGET_PER_CAMERA; i++) writeIdentity(bestCameraToTargets, i * TRANSFORM_STRIDE);
+            this.bestFieldToCameraPresent = false;
+            writeIdentity(bestFieldToCamera, 0);
         }
 
-        public void fromPhotonPipeLine(PhotonPipelineResult pipelineResult, boolean cameraConnected) {
+        public void fromPhotonPipeLine(
+                PhotonPipelineResult pipelineResult, boolean cameraConnected, double arrivalTimeStampSeconds) {
             this.cameraConnected = cameraConnected;
+            this.arrivalTimeStampSeconds = arrivalTimeStampSeconds;
             this.resultsDelaySeconds = pipelineResult.getLatencyMillis() / 1000.0;
+            this.captureTimeStampSeconds = pipelineResult.getTimestampSeconds();
             this.currentTargetsCount = Math.min(pipelineResult.getTargets().size(), MAX_TARGET_PER_CAMERA);
-            Arrays.fill(fiducialMarksID, -1);
-            Arrays.fill(bestCameraToTargets, new Transform3d());
-            for (int i = 0; i < currentTargetsCount && i < MAX_TARGET_PER_CAMERA; i++) {
+            for (int i = 0; i < MAX_TARGET_PER_CAMERA; i++) {
+                if (i >= currentTargetsCount) {
+                    this.fiducialMarksID[i] = -1;
+                    writeIdentity(bestCameraToTargets, i * TRANSFORM_STRIDE);
+                    continue;
+                }
                 this.fiducialMarksID[i] = pipelineResult.getTargets().get(i).getFiducialId();
-                this.bestCameraToTargets[i] = pipelineResult.getTargets().get(i).getBestCameraToTarget();
+                writeTransform(
+                        pipelineResult.getTargets().get(i).getBestCameraToTarget(),
+                        bestCameraToTargets,
+                        i * TRANSFORM_STRIDE);
             }
-            this.bestFieldToCamera = pipelineResult.getMultiTagResult().estimatedPose.isPresent
-                    ? Optional.of(pipelineResult.getMultiTagResult().estimatedPose.best)
-                    : Optional.empty();
+
+            this.bestFieldToCameraPresent = pipelineResult.getMultiTagResult().estimatedPose.isPresent;
+            if (bestFieldToCameraPresent)
+                writeTransform(pipelineResult.getMultiTagResult().estimatedPose.best, bestFieldToCamera, 0);
+            else writeIdentity(bestFieldToCamera, 0);
+        }
+
+        /** @return the best camera-to-target transform of a target, as a new {@link Transform3d} */
+        public Transform3d getBestCameraToTarget(int targetIndex) {
+            return readTransform(bestCameraToTargets, targetIndex * TRANSFORM_STRIDE);
         }
 
-        private static final Transform3d NULL_TRANSFORM = new Transform3d(-114514, -114514, -114514, new Rotation3d());
+        /** @return the multi-tag field-to-camera transform, as a new {@link Transform3d}, if present */
+        public Optional<Transform3d> getBestFieldToCamera() {
+            return bestFieldToCameraPresent ? Optional.of(readTransform(bestFieldToCamera, 0)) : Optional.empty();
+        }
+
+        /** packs these inputs into a frame of {@link #FRAME_LENGTH} */
+        public void writeToFrame(double[] frame) {
+            frame[ARRIVAL_TIME_COLUMN] = arrivalTimeStampSeconds;
+            frame[RESULTS_DELAY_COLUMN] = resultsDelaySeconds;
+            frame[CAPTURE_TIME_COLUMN] = captureTimeStampSeconds;
+            frame[TARGETS_COUNT_COLUMN] = currentTargetsCount;
+            frame[FIELD_TO_CAMERA_PRESENT_COLUMN] = bestFieldToCameraPresent ? 1 : 0;
+            for (int i = 0; i < MAX_TARGET_PER_CAMERA; i++) frame[FIDUCIAL_IDS_COLUMN + i] = fiducialMarksID[i];
+            System.arraycopy(
+                    bestCameraToTargets, 0, frame, CAMERA_TO_TARGETS_COLUMN, MAX_TARGET_PER_CAMERA * TRANSFORM_STRIDE);
+            System.arraycopy(bestFieldToCamera, 0, frame, FIELD_TO_CAMERA_COLUMN, TRANSFORM_STRIDE);
+        }
+
+        /** unpacks a frame written by {@link #writeToFrame(double[])}, frames only exist for connected cameras */
+        public void fromFrame(double[] frame) {
+            this.cameraConnected = true;
+            this.arrivalTimeStampSeconds = frame[ARRIVAL_TIME_COLUMN];
+            this.resultsDelaySeconds = frame[RESULTS_DELAY_COLUMN];
+            this.captureTimeStampSeconds = frame[CAPTURE_TIME_COLUMN];
+            this.currentTargetsCount = (int) frame[TARGETS_COUNT_COLUMN];
+            this.bestFieldToCameraPresent = frame[FIELD_TO_CAMERA_PRESENT_COLUMN] != 0;
+            for (int i = 0; i < MAX_TARGET_PER_CAMERA; i++) fiducialMarksID[i] = (int) frame[FIDUCIAL_IDS_COLUMN + i];
+            System.arraycopy(
+                    frame, CAMERA_TO_TARGETS_COLUMN, bestCameraToTargets, 0, MAX_TARGET_PER_CAMERA * TRANSFORM_STRIDE);
+            System.arraycopy(frame, FIELD_TO_CAMERA_COLUMN, bestFieldToCamera, 0, TRANSFORM_STRIDE);
+        }
 
-        public void fromLog(LogTable table, int cameraID) {
-            final String cameraKey = "camera" + cameraID;
+        public void fromLog(LogTable table, String cameraKey) {
             this.cameraConnected = table.get(cameraKey + "Connected", false);
+            this.arrivalTimeStampSeconds = table.get(cameraKey + "ArrivalTimeStampSeconds", 0.0);
             this.resultsDelaySeconds = table.get(cameraKey + "ResultsDelaySeconds", 0.0);
+            /* logs written before the capture time was recorded only have the arrival time */
+            this.captureTimeStampSeconds =
+                    table.get(cameraKey + "CaptureTimeStampSeconds", arrivalTimeStampSeconds - resultsDelaySeconds);
             this.currentTargetsCount = table.get(cameraKey + "CurrentTargetsCount", 0);
             final int[] fiducialMarkIDLogged = table.get(cameraKey + "FiducialMarksID", new int[MAX_TARGET_PER_CAMERA]);
-            final Transform3d[] bestCameraToTargetsLogged =
-                    table.get(cameraKey + "bestCameraToTargets", new Transform3d[MAX_TARGET_PER_CAMERA]);
-            if (fiducialMarkIDLogged.length != MAX_TARGET_PER_CAMERA
-                    || bestCameraToTargetsLogged.length != MAX_TARGET_PER_CAMERA)
+            if (fiducialMarkIDLogged.length != MAX_TARGET_PER_CAMERA)
                 DriverStation.reportError("vision log length not match", false);
-            for (int i = 0; i < MAX_TARGET_PER_CAMERA; i++) {
-                fiducialMarksID[i] = fiducialMarkIDLogged[i];
-                bestCameraToTargets[i] = bestCameraToTargetsLogged[i];
+            for (int i = 0; i < MAX_TARGET_PER_CAMERA; i++)
+                fiducialMarksID[i] = i < fiducialMarkIDLogged.length ? fiducialMarkIDLogged[i] : -1;
+
+            final double[] bestCameraToTargetsLogged =
+                    table.get(cameraKey + "BestCameraToTargetsFlat", (double[]) null);
+            if (bestCameraToTargetsLogged == null) {
+                fromLegacyLog(table, cameraKey);
+                return;
             }
+            if (bestCameraToTargetsLogged.length != bestCameraToTargets.length)
+                DriverStation.reportError("vision log length not match", false);
+            for (int i = 0; i < MAX_TARGET_PER_CAMERA; i++)
+                if ((i + 1) * TRANSFORM_STRIDE <= bestCameraToTargetsLogged.length)
+                    System.arraycopy(
+                            bestCameraToTargetsLogged,
+                            i * TRANSFORM_STRIDE,
+                            bestCameraToTargets,
+                            i * TRANSFORM_STRIDE,
+                            TRANSFORM_STRIDE);
+                else writeIdentity(bestCameraToTargets, i * TRANSFORM_STRIDE);
 
-            if (table.get(cameraKey + "bestCameraToFieldPresents", false))
-                this.bestFieldToCamera = Optional.of(table.get(cameraKey + "bestCameraToField", new Transform3d()));
-            else this.bestFieldToCamera = Optional.empty();
+            this.bestFieldToCameraPresent = table.get(cameraKey + "BestFieldToCameraPresent", false);
+            final double[] bestFieldToCameraLogged = table.get(cameraKey + "BestFieldToCameraFlat", new double[0]);
+            if (bestFieldToCameraLogged.length == TRANSFORM_STRIDE)
+                System.arraycopy(bestFieldToCameraLogged, 0, bestFieldToCamera, 0, TRANSFORM_STRIDE);
+            else writeIdentity(bestFieldToCamera, 0);
         }
 
-        public void writeToLog(LogTable table, int cameraID) {
-            final String cameraKey = "camera" + cameraID;
+        /* logs written before the flat layout, with the transforms as Transform3d structs */
+        private void fromLegacyLog(LogTable table, String cameraKey) {
+            final Transform3d[] bestCameraToTargetsLogged =
+                    table.get(cameraKey + "bestCameraToTargets", new Transform3d[MAX_TARGET_PER_CAMERA]);
+            for (int i = 0; i < MAX_TARGET_PER_CAMERA; i++)
+                if (i < bestCameraToTargetsLogged.length && bestCameraToTargetsLogged[i] != null)
+                    writeTransform(bestCameraToTargetsLogged[i], bestCameraToTargets, i * TRANSFORM_STRIDE);
+                else writeIdentity(bestCameraToTargets, i * TRANSFORM_STRIDE);
+
+            this.bestFieldToCameraPresent = table.get(cameraKey + "bestCameraToFieldPresents", false);
+            writeTransform(table.get(cameraKey + "bestCameraToField", new Transform3d()), bestFieldToCamera, 0);
+        }
+
+        public void writeToLog(LogTable table, String cameraKey) {
             table.put(cameraKey + "Connected", cameraConnected);
+            table.put(cameraKey + "ArrivalTimeStampSeconds", arrivalTimeStampSeconds);
             table.put(cameraKey + "ResultsDelaySeconds", resultsDelaySeconds);
+            table.put(cameraKey + "CaptureTimeStampSeconds", captureTimeStampSeconds);
             table.put(cameraKey + "CurrentTargetsCount", currentTargetsCount);
             table.put(cameraKey + "FiducialMarksID", fiducialMarksID);
-            table.put(cameraKey + "bestCameraToTargets", bestCameraToTargets);
-            table.put(cameraKey + "bestCameraToFieldPresents", bestFieldToCamera.isPresent());
-            table.put(cameraKey + "bestCameraToField", bestFieldToCamera.orElse(new Transform3d()));
+            table.put(cameraKey + "BestCameraToTargetsFlat", bestCameraToTargets);
+            table.put(cameraKey + "BestFieldToCameraPresent", bestFieldToCameraPresent);
+            table.put(cameraKey + "BestFieldToCameraFlat", bestFieldToCamera);
+        }
+
+        private static void writeTransform(Transform3d transform, double[] destination, int offset) {
+            final Quaternion rotation = transform.getRotation().getQuaternion();
+            destination[offset] = transform.getX();
+            destination[offset + 1] = transform.getY();
+            destination[offset + 2] = transform.getZ();
+            destination[offset + 3] = rotation.getW();
+            destination[offset + 4] = rotation.getX();
+            destination[offset + 5] = rotation.getY();
+            destination[offset + 6] = rotation.getZ();
+        }
+
+        private static void writeIdentity(double[] destination, int offset) {
+            Arrays.fill(destination, offset, offset + TRANSFORM_STRIDE, 0);
+            destination[offset + 3] = 1;
+        }
+
+        private static Transform3d readTransform(double[] source, int offset) {
+            return new Transform3d(
+                    new Translation3d(source[offset], source[offset + 1], source[offset + 2]),
+                    new Rotation3d(new Quaternion(
+                            source[offset + 3], source[offset + 4], source[offset + 5], source[offset + 6])));
         }
     }
 
+    /**
+     * The inputs of all the cameras, with all the frames each camera received since the previous robot period.
+     *
+     * <p>Frames are stored oldest first, in pre-allocated {@link CameraInputs}; only the first
+     * <code>camerasFramesCount[camera]</code> frames of each camera are valid.
+     */
     class VisionInputs implements LoggableInputs {
+        public static final int MAX_FRAMES_PER_CAMERA = 8;
+
         public final int camerasAmount;
-        public final CameraInputs[] camerasInputs;
+        public final boolean[] camerasConnected;
+        public final int[] camerasFramesCount;
+        /** indexed [camera][frame] */
+        public final CameraInputs[][] camerasFrames;
+
         public double inputsFetchedRealTimeStampSeconds = 0;
 
+        private final String[][] framesLogKeys;
+
         public VisionInputs(int camerasAmount) {
             this.camerasAmount = camerasAmount;
-            this.camerasInputs = new CameraInputs[camerasAmount];
-            for (int i = 0; i < camerasAmount; i++) camerasInputs[i] = new CameraInputs();
+            this.camerasConnected = new boolean[camerasAmount];
+            this.camerasFramesCount = new int[camerasAmount];
+            this.camerasFrames = new CameraInputs[camerasAmount][MAX_FRAMES_PER_CAMERA];
+            this.framesLogKeys = new String[camerasAmount][MAX_FRAMES_PER_CAMERA];
+            for (int i = 0; i < camerasAmount; i++)
+                for (int j = 0; j < MAX_FRAMES_PER_CAMERA; j++) {
+                    camerasFrames[i][j] = new CameraInputs();
+                    framesLogKeys[i][j] = "camera" + i + "Frame" + j;
+                }
         }
 
         @Override
         public void toLog(LogTable table) {
             table.put("camerasAmount", camerasAmount);
             table.put("inputsFetchedTimeStamp", inputsFetchedRealTimeStampSeconds);
-            for (int i = 0; i < camerasAmount; i++) camerasInputs[i].writeToLog(table, i);
+            table.put("camerasConnected", camerasConnected);
+            table.put("camerasFramesCount", camerasFramesCount);
+            for (int i = 0; i < camerasAmount; i++)
+                for (int j = 0; j < camerasFramesCount[i]; j++)
+                    camerasFrames[i][j].writeToLog(table, framesLogKeys[i][j]);
         }
 
         @Override
@@ -111,7 +276,31 @@ public interface AprilTagVisionIO {
                         + "\n check if the code have changed");
 
             inputsFetchedRealTimeStampSeconds = table.get("inputsFetchedTimeStamp", 0.0);
-            for (int i = 0; i < camerasAmount; i++) camerasInputs[i].fromLog(table, i);
+            final int[] framesCountLogged = table.get("camerasFramesCount", (int[]) null);
+            if (framesCountLogged == null) {
+                fromSingleFrameLog(table);
+                return;
+            }
+
+            final boolean[] connectedLogged = table.get("camerasConnected", new boolean[camerasAmount]);
+            for (int i = 0; i < camerasAmount; i++) {
+                camerasConnected[i] = i < connectedLogged.length && connectedLogged[i];
+                camerasFramesCount[i] =
+                        i < framesCountLogged.length ? Math.min(framesCountLogged[i], MAX_FRAMES_PER_CAMERA) : 0;
+                for (int j = 0; j < camerasFramesCount[i]; j++) camerasFrames[i][j].fromLog(table, framesLogKeys[i][j]);
+            }
+        }
+
+        /* logs written before multiple frames were supported, with only the latest result of each camera */
+        private void fromSingleFrameLog(LogTable table) {
+            for (int i = 0; i < camerasAmount; i++) {
+                camerasFrames[i][0].fromLog(table, "camera" + i);
+                camerasFrames[i][0].arrivalTimeStampSeconds = inputsFetchedRealTimeStampSeconds;
+                camerasFrames[i][0].captureTimeStampSeconds =
+                        inputsFetchedRealTimeStampSeconds - camerasFrames[i][0].resultsDelaySeconds;
+                camerasConnected[i] = camerasFrames[i][0].cameraConnected;
+                camerasFramesCount[i] = camerasConnected[i] ? 1 : 0;
+            }
         }
     }
 
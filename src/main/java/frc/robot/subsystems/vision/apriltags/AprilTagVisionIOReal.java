@@ -1,20 +1,33 @@
 package frc.robot.subsystems.vision.apriltags;
 
 import edu.wpi.first.net.PortForwarder;
-import frc.robot.utils.MapleTimeUtils;
 import java.util.List;
 import org.photonvision.PhotonCamera;
 
 public class AprilTagVisionIOReal implements AprilTagVisionIO {
     protected final PhotonCamera[] cameras;
+    private final PhotonResultsIngestionThread ingestionThread;
+    private final boolean asynchronousIngestion;
 
     public AprilTagVisionIOReal(List<PhotonCameraProperties> cameraProperties) {
+        this(cameraProperties, true);
+    }
+
+    /**
+     * @param asynchronousIngestion whether to poll the cameras on a background thread, if false, the cameras are polled
+     *     by the main robot thread in {@link #updateInputs(VisionInputs)}
+     */
+    protected AprilTagVisionIOReal(List<PhotonCameraProperties> cameraProperties, boolean asynchronousIngestion) {
         if (cameraProperties.size() > 16) throw new IllegalArgumentException("max supported camera count is 16");
         cameras = new PhotonCamera[cameraProperties.size()];
 
         for (int i = 0; i < cameraProperties.size(); i++) cameras[i] = new PhotonCamera(cameraProperties.get(i).name);
 
         PortForwarder.add(5800, "photonvision", 5800);
+
+        this.ingestionThread = new PhotonResultsIngestionThread(cameras);
+        this.asynchronousIngestion = asynchronousIngestion;
+        if (asynchronousIngestion) ingestionThread.start();
     }
 
     @Override
@@ -23,15 +36,13 @@ public class AprilTagVisionIOReal implements AprilTagVisionIO {
             throw new IllegalStateException(
                     "inputs camera amount (" + inputs.camerasAmount + ") does not match actual cameras amount");
 
-        for (int i = 0; i < cameras.length; i++)
-            if (cameras[i].isConnected())
-                inputs.camerasInputs[i].fromPhotonPipeLine(cameras[i].getLatestResult(), cameras[i].isConnected());
-            else inputs.camerasInputs[i].clear();
-        inputs.inputsFetchedRealTimeStampSeconds = MapleTimeUtils.getRealTimeSeconds();
+        if (!asynchronousIngestion) ingestionThread.pollCameras();
+        ingestionThread.updateInputs(inputs);
     }
 
     @Override
     public void close() {
+        ingestionThread.interrupt();
         for (PhotonCamera camera : cameras) camera.close();
     }
 }
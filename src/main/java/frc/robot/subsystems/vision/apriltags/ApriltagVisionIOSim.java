@@ -16,7 +16,8 @@ public class ApriltagVisionIOSim extends AprilTagVisionIOReal {
             List<PhotonCameraProperties> cameraProperties,
             AprilTagFieldLayout aprilTagFieldLayout,
             Supplier<Pose2d> robotActualPoseInSimulationSupplier) {
-        super(cameraProperties);
+        /* poll on the main thread, so that the simulated frames line up with the robot periods */
+        super(cameraProperties, false);
 
         this.robotActualPoseInSimulationSupplier = robotActualPoseInSimulationSupplier;
         this.visionSystemSim = new VisionSystemSim("main");
@@ -13,20 +13,41 @@ import frc.robot.utils.CustomMaths.Statistics;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.littletonrobotics.junction.Logger;
 
+/**
+ *
+ *
+ * <h1>Multi-Camera, Multi-Tag Robot Pose Estimator</h1>
+ *
+ * <p>The observations of each camera are solved independently, optionally in parallel on a small worker pool (see
+ * {@link frc.robot.constants.VisionConstants#PARALLEL_CAMERA_POSE_SOLVING}). The per-camera results are always merged
+ * on the calling thread, in a deterministic order, so the outputs are identical in both modes and in log replay.
+ *
+ * <p>Every frame keeps its own capture time. The frames are sorted by capture time and only fused together when they
+ * are captured within {@link frc.robot.constants.VisionConstants#VISION_FUSION_WINDOW_SECONDS}, so each estimation
+ * result carries the time at which its observations were actually captured.
+ */
 public class MapleMultiTagPoseEstimator {
     public static final class RobotPoseEstimationResult {
         public Pose2d pointEstimation;
         public double translationXStandardDeviationMeters,
                 translationYStandardDeviationMeters,
                 rotationalStandardDeviationRadians;
+        /** the capture time of the observations, in real time seconds */
+        public double timeStampSeconds;
 
         public RobotPoseEstimationResult(
                 Pose2d pointEstimation,
                 double translationXStandardDeviationMeters,
                 double translationYStandardDeviationMeters,
-                double rotationalStandardDeviationRadians) {
+                double rotationalStandardDeviationRadians,
+                double timeStampSeconds) {
+            this.timeStampSeconds = timeStampSeconds;
             this.pointEstimation = pointEstimation;
             this.translationXStandardDeviationMeters = translationXStandardDeviationMeters;
             this.translationYStandardDeviationMeters = translationYStandardDeviationMeters;
@@ -47,58 +68,189 @@ public class MapleMultiTagPoseEstimator {
     private final AprilTagFieldLayout fieldLayout;
     private final VisionResultsFilter filter;
     private final List<PhotonCameraProperties> camerasProperties;
+    /* indexed [camera][frame] */
+    private final FrameObservations[][] framesObservations;
+    private final long[] camerasSolveTimesNanos;
+    private final double[] camerasSolveTimesMS;
+    /* all the frames of this period, sorted by capture time, as (camera index, frame index) */
+    private final int[] sortedCameraIndices, sortedFrameIndices;
+    private int sortedFramesCount = 0;
+    /* null if the cameras are solved on the calling thread */
+    private final ExecutorService poseSolvingWorkers;
+    private final Future<?>[] pendingSolves;
 
     public MapleMultiTagPoseEstimator(
             AprilTagFieldLayout aprilTagFieldLayout,
             VisionResultsFilter filter,
             List<PhotonCameraProperties> camerasProperties) {
+        this(aprilTagFieldLayout, filter, camerasProperties, PARALLEL_CAMERA_POSE_SOLVING);
+    }
+
+    public MapleMultiTagPoseEstimator(
+            AprilTagFieldLayout aprilTagFieldLayout,
+            VisionResultsFilter filter,
+            List<PhotonCameraProperties> camerasProperties,
+            boolean parallelPoseSolving) {
         this.fieldLayout = aprilTagFieldLayout;
         this.filter = filter;
         this.camerasProperties = camerasProperties;
+        final int maxFramesPerCamera = AprilTagVisionIO.VisionInputs.MAX_FRAMES_PER_CAMERA;
+        this.framesObservations = new FrameObservations[camerasProperties.size()][maxFramesPerCamera];
+        for (FrameObservations[] cameraFramesObservations : framesObservations)
+            for (int i = 0; i < maxFramesPerCamera; i++) cameraFramesObservations[i] = new FrameObservations();
+        this.camerasSolveTimesNanos = new long[camerasProperties.size()];
+        this.camerasSolveTimesMS = new double[camerasProperties.size()];
+        this.sortedCameraIndices = new int[camerasProperties.size() * maxFramesPerCamera];
+        this.sortedFrameIndices = new int[camerasProperties.size() * maxFramesPerCamera];
+        this.pendingSolves = new Future<?>[camerasProperties.size()];
+        this.poseSolvingWorkers = parallelPoseSolving
+                ? Executors.newFixedThreadPool(POSE_SOLVING_WORKER_THREADS, runnable -> {
+                    final Thread worker = new Thread(runnable, "VisionPoseSolver");
+                    worker.setDaemon(true);
+                    return worker;
+                })
+                : null;
+    }
+
+    /** the raw observations of a single camera frame, solved independently of the other frames */
+    private static final class FrameObservations {
+        final List<Pose3d> robotPose3dObservationsMultiTag = new ArrayList<>(),
+                robotPose3dObservationsSingleTag = new ArrayList<>(),
+                observedAprilTagsPoses = new ArrayList<>(),
+                observedVisionTargetPoseInFieldLayout = new ArrayList<>();
+        double captureTimeSeconds;
+
+        void clear() {
+            robotPose3dObservationsMultiTag.clear();
+            robotPose3dObservationsSingleTag.clear();
+            observedAprilTagsPoses.clear();
+            observedVisionTargetPoseInFieldLayout.clear();
+        }
     }
 
+    /* the observations of the current fusion window */
     final List<Pose3d> robotPose3dObservationsMultiTag = new ArrayList<>(),
-            robotPose3dObservationsSingleTag = new ArrayList<>(),
-            observedAprilTagsPoses = new ArrayList<>(),
+            robotPose3dObservationsSingleTag = new ArrayList<>();
+    /* the observations of all the frames of this period, for logging */
+    final List<Pose3d> observedAprilTagsPoses = new ArrayList<>(),
             observedVisionTargetPoseInFieldLayout = new ArrayList<>();
 
     private void fetchRobotPose3dEstimationsFromCameraInputs(
-            AprilTagVisionIO.CameraInputs[] cameraInputs, Pose2d currentOdometryPose) {
-        robotPose3dObservationsMultiTag.clear();
-        robotPose3dObservationsSingleTag.clear();
-        observedAprilTagsPoses.clear();
-        observedVisionTargetPoseInFieldLayout.clear();
-
-        if (cameraInputs.length != camerasProperties.size())
+            AprilTagVisionIO.VisionInputs inputs, Pose2d currentOdometryPose) {
+        if (inputs.camerasAmount != camerasProperties.size())
             throw new IllegalArgumentException("camera inputs length "
-                    + cameraInputs.length
+                    + inputs.camerasAmount
                     + " does not match camera properties size "
                     + camerasProperties.size());
 
-        for (int i = 0; i < cameraInputs.length; i++)
-            fetchSingleCameraInputs(cameraInputs[i], camerasProperties.get(i), currentOdometryPose);
+        final long startTimeNanos = System.nanoTime();
+        boolean framesSolved = true;
+        if (poseSolvingWorkers == null)
+            for (int i = 0; i < inputs.camerasAmount; i++)
+                fetchSingleCameraFrames(
+                        inputs.camerasFrames[i],
+                        inputs.camerasFramesCount[i],
+                        camerasProperties.get(i),
+                        currentOdometryPose,
+                        framesObservations[i],
+                        i);
+        else framesSolved = solveCamerasInParallel(inputs, currentOdometryPose);
+
+        if (framesSolved) sortFramesByCaptureTime(inputs);
+        else clearSortedFrames();
+        for (int i = 0; i < inputs.camerasAmount; i++)
+            camerasSolveTimesMS[i] = camerasSolveTimesNanos[i] / 1_000_000.0;
+
+        Logger.recordOutput(APRIL_TAGS_VISION_PATH + "Performance/Parallel", poseSolvingWorkers != null);
+        Logger.recordOutput(APRIL_TAGS_VISION_PATH + "Performance/CamerasSolveTimesMS", camerasSolveTimesMS);
+        Logger.recordOutput(
+                APRIL_TAGS_VISION_PATH + "Performance/TotalSolveTimeMS",
+                (System.nanoTime() - startTimeNanos) / 1_000_000.0);
     }
 
-    private void fetchSingleCameraInputs(
+    /** @return false if the main thread was interrupted, in which case all the frames of this period are dropped */
+    private boolean solveCamerasInParallel(AprilTagVisionIO.VisionInputs inputs, Pose2d currentOdometryPose) {
+        for (int i = 0; i < inputs.camerasAmount; i++) {
+            final AprilTagVisionIO.CameraInputs[] cameraFrames = inputs.camerasFrames[i];
+            final int framesCount = inputs.camerasFramesCount[i];
+            final PhotonCameraProperties cameraProperty = camerasProperties.get(i);
+            final FrameObservations[] cameraFramesObservations = framesObservations[i];
+            final int cameraIndex = i;
+            pendingSolves[i] = poseSolvingWorkers.submit(() -> fetchSingleCameraFrames(
+                    cameraFrames,
+                    framesCount,
+                    cameraProperty,
+                    currentOdometryPose,
+                    cameraFramesObservations,
+                    cameraIndex));
+        }
+
+        for (int i = 0; i < inputs.camerasAmount; i++) {
+            try {
+                pendingSolves[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandonPendingSolves(i, inputs.camerasAmount);
+                return false;
+            } catch (ExecutionException e) {
+                throw new RuntimeException("failed to solve the poses of camera " + i, e.getCause());
+            }
+            pendingSolves[i] = null;
+        }
+        return true;
+    }
+
+    /**
+     * cancels the solves of the cameras from the given index on, a solve that has already started may still be writing
+     * to its observations, so these cameras get new ones rather than reusing them in the next period
+     */
+    private void abandonPendingSolves(int firstCameraIndex, int camerasAmount) {
+        for (int i = firstCameraIndex; i < camerasAmount; i++) {
+            pendingSolves[i].cancel(true);
+            pendingSolves[i] = null;
+            for (int frameIndex = 0; frameIndex < framesObservations[i].length; frameIndex++)
+                framesObservations[i][frameIndex] = new FrameObservations();
+        }
+    }
+
+    /**
+     * solves all the frames of a single camera, may run on a worker thread, so it only writes to the given observations
+     * and the solve time of that camera
+     */
+    private void fetchSingleCameraFrames(
+            AprilTagVisionIO.CameraInputs[] cameraFrames,
+            int framesCount,
+            PhotonCameraProperties cameraProperty,
+            Pose2d currentOdometryPose,
+            FrameObservations[] cameraFramesObservations,
+            int cameraIndex) {
+        final long startTimeNanos = System.nanoTime();
+        for (int i = 0; i < framesCount; i++)
+            fetchSingleFrame(cameraFrames[i], cameraProperty, currentOdometryPose, cameraFramesObservations[i]);
+        camerasSolveTimesNanos[cameraIndex] = System.nanoTime() - startTimeNanos;
+    }
+
+    private void fetchSingleFrame(
             AprilTagVisionIO.CameraInputs cameraInput,
             PhotonCameraProperties cameraProperty,
-            Pose2d currentOdometryPose) {
-        calculateVisibleTagsPosesForLog(cameraInput, cameraProperty, currentOdometryPose);
+            Pose2d currentOdometryPose,
+            FrameObservations observations) {
+        observations.clear();
+        observations.captureTimeSeconds = cameraInput.captureTimeStampSeconds;
+        calculateVisibleTagsPosesForLog(cameraInput, cameraProperty, currentOdometryPose, observations);
 
         /* if there is multi-solvepnp result, we only trust that */
         Optional<Pose3d> multiSolvePNPPoseEstimation = calculateRobotPose3dFromMultiSolvePNPResult(
-                cameraProperty.robotToCamera, cameraInput.bestFieldToCamera);
-        if (multiSolvePNPPoseEstimation.isPresent()) {
-            robotPose3dObservationsMultiTag.add(multiSolvePNPPoseEstimation.get());
-            return;
-        }
-
-        for (int i = 0; i < cameraInput.currentTargetsCount; i++)
-            calculateRobotPose3dFromSingleObservation(
-                            cameraProperty.robotToCamera,
-                            cameraInput.bestCameraToTargets[i],
-                            cameraInput.fiducialMarksID[i])
-                    .ifPresent(robotPose3dObservationsSingleTag::add);
+                cameraProperty.robotToCamera, cameraInput.getBestFieldToCamera());
+        if (multiSolvePNPPoseEstimation.isPresent())
+            observations.robotPose3dObservationsMultiTag.add(multiSolvePNPPoseEstimation.get());
+        else
+            for (int i = 0; i < cameraInput.currentTargetsCount; i++)
+                calculateRobotPose3dFromSingleObservation(
+                                cameraProperty.robotToCamera,
+                                cameraInput.getBestCameraToTarget(i),
+                                cameraInput.fiducialMarksID[i])
+                        .ifPresent(observations.robotPose3dObservationsSingleTag::add);
     }
 
     private Pose3d calculateObservedAprilTagTargetPose(
@@ -121,27 +273,61 @@ public class MapleMultiTagPoseEstimator {
     private void calculateVisibleTagsPosesForLog(
             AprilTagVisionIO.CameraInputs cameraInput,
             PhotonCameraProperties cameraProperty,
-            Pose2d currentOdometryPose) {
+            Pose2d currentOdometryPose,
+            FrameObservations observations) {
         if (!LOG_DETAILED_FILTERING_DATA) return;
         for (int i = 0; i < cameraInput.fiducialMarksID.length; i++) {
             if (cameraInput.fiducialMarksID[i] == -1) continue;
 
             fieldLayout
                     .getTagPose(cameraInput.fiducialMarksID[i])
-                    .ifPresent(observedVisionTargetPoseInFieldLayout::add);
-            observedAprilTagsPoses.add(calculateObservedAprilTagTargetPose(
-                    cameraInput.bestCameraToTargets[i], cameraProperty.robotToCamera, currentOdometryPose));
+                    .ifPresent(observations.observedVisionTargetPoseInFieldLayout::add);
+            observations.observedAprilTagsPoses.add(calculateObservedAprilTagTargetPose(
+                    cameraInput.getBestCameraToTarget(i), cameraProperty.robotToCamera, currentOdometryPose));
         }
     }
 
+    /* sorts the frames by capture time, frames captured at the same time stay in camera index order */
+    private void sortFramesByCaptureTime(AprilTagVisionIO.VisionInputs inputs) {
+        clearSortedFrames();
+        for (int cameraIndex = 0; cameraIndex < inputs.camerasAmount; cameraIndex++)
+            for (int frameIndex = 0; frameIndex < inputs.camerasFramesCount[cameraIndex]; frameIndex++) {
+                final FrameObservations frameObservations = framesObservations[cameraIndex][frameIndex];
+                observedAprilTagsPoses.addAll(frameObservations.observedAprilTagsPoses);
+                observedVisionTargetPoseInFieldLayout.addAll(frameObservations.observedVisionTargetPoseInFieldLayout);
+
+                final double captureTimeSeconds = frameObservations.captureTimeSeconds;
+                int index = sortedFramesCount++;
+                for (; index > 0 && getSortedFrame(index - 1).captureTimeSeconds > captureTimeSeconds; index--) {
+                    sortedCameraIndices[index] = sortedCameraIndices[index - 1];
+                    sortedFrameIndices[index] = sortedFrameIndices[index - 1];
+                }
+                sortedCameraIndices[index] = cameraIndex;
+                sortedFrameIndices[index] = frameIndex;
+            }
+    }
+
+    private void clearSortedFrames() {
+        observedAprilTagsPoses.clear();
+        observedVisionTargetPoseInFieldLayout.clear();
+        sortedFramesCount = 0;
+    }
+
+    private FrameObservations getSortedFrame(int sortedIndex) {
+        return framesObservations[sortedCameraIndices[sortedIndex]][sortedFrameIndices[sortedIndex]];
+    }
+
+    /* the valid observations of the current fusion window */
     private final List<Pose3d> validRobotPoseEstimationsMultiTag = new ArrayList<>(),
-            validRobotPoseEstimationsSingleTag = new ArrayList<>(),
+            validRobotPoseEstimationsSingleTag = new ArrayList<>();
+    /* the filtered observations of all the fusion windows, for logging */
+    private final List<Pose3d> loggedValidRobotPoseEstimationsMultiTag = new ArrayList<>(),
+            loggedValidRobotPoseEstimationsSingleTag = new ArrayList<>(),
             invalidRobotPoseEstimations = new ArrayList<>();
 
     private void applyFilteringToRawRobotPose3dEstimations() {
         validRobotPoseEstimationsMultiTag.clear();
         validRobotPoseEstimationsSingleTag.clear();
-        invalidRobotPoseEstimations.clear();
         for (final Pose3d estimation : robotPose3dObservationsMultiTag)
             if (filter.isResultValid(estimation)) validRobotPoseEstimationsMultiTag.add(estimation);
             else invalidRobotPoseEstimations.add(estimation);
@@ -149,32 +335,71 @@ public class MapleMultiTagPoseEstimator {
         for (final Pose3d estimation : robotPose3dObservationsSingleTag)
             if (filter.isResultValid(estimation)) validRobotPoseEstimationsSingleTag.add(estimation);
             else invalidRobotPoseEstimations.add(estimation);
+
+        loggedValidRobotPoseEstimationsMultiTag.addAll(validRobotPoseEstimationsMultiTag);
+        loggedValidRobotPoseEstimationsSingleTag.addAll(validRobotPoseEstimationsSingleTag);
     }
 
+    private final List<RobotPoseEstimationResult> estimationResults = new ArrayList<>();
+
     /**
-     * using the filtering mechanism, find out the best guess of the robot pose and the standard error
+     * using the filtering mechanism, find out the best guesses of the robot pose and the standard errors
      *
-     * @param cameraInputs the inputs of the cameras
-     * @return (optionally) the best guess of the robot pose and the standard error, if there are valid targets
+     * <p>The frames are fused in windows of {@link frc.robot.constants.VisionConstants#VISION_FUSION_WINDOW_SECONDS},
+     * each window gives at most one result.
+     *
+     * @param inputs the inputs of the cameras, with all the frames received this period
+     * @return the best guesses of the robot pose and the standard errors, sorted by capture time, empty if there are no
+     *     valid targets; the list is reused by the next call
      */
-    public Optional<RobotPoseEstimationResult> estimateRobotPose(
-            AprilTagVisionIO.CameraInputs[] cameraInputs, Pose2d currentOdometryPose) {
-        if (cameraInputs.length != camerasProperties.size())
+    public List<RobotPoseEstimationResult> estimateRobotPose(
+            AprilTagVisionIO.VisionInputs inputs, Pose2d currentOdometryPose) {
+        if (inputs.camerasAmount != camerasProperties.size())
             throw new IllegalStateException("camera inputs length"
-                    + cameraInputs.length
+                    + inputs.camerasAmount
                     + " does not match cameras properties length: "
                     + camerasProperties.size());
 
-        fetchRobotPose3dEstimationsFromCameraInputs(cameraInputs, currentOdometryPose);
+        fetchRobotPose3dEstimationsFromCameraInputs(inputs, currentOdometryPose);
 
-        applyFilteringToRawRobotPose3dEstimations();
+        estimationResults.clear();
+        loggedValidRobotPoseEstimationsMultiTag.clear();
+        loggedValidRobotPoseEstimationsSingleTag.clear();
+        invalidRobotPoseEstimations.clear();
+        int windowStart = 0;
+        while (windowStart < sortedFramesCount) {
+            final double windowStartTimeSeconds = getSortedFrame(windowStart).captureTimeSeconds;
+            int windowEnd = windowStart + 1;
+            while (windowEnd < sortedFramesCount
+                    && getSortedFrame(windowEnd).captureTimeSeconds - windowStartTimeSeconds
+                            <= VISION_FUSION_WINDOW_SECONDS) windowEnd++;
+
+            fuseFramesInWindow(windowStart, windowEnd).ifPresent(estimationResults::add);
+            windowStart = windowEnd;
+        }
 
         if (LOG_DETAILED_FILTERING_DATA) logFilteringData();
+        Logger.recordOutput(APRIL_TAGS_VISION_PATH + "Filtering/FusionWindowsCount", estimationResults.size());
 
-        return getEstimationResultFromValidObservations();
+        return estimationResults;
+    }
+
+    private Optional<RobotPoseEstimationResult> fuseFramesInWindow(int windowStart, int windowEnd) {
+        robotPose3dObservationsMultiTag.clear();
+        robotPose3dObservationsSingleTag.clear();
+        double totalCaptureTimeSeconds = 0;
+        for (int i = windowStart; i < windowEnd; i++) {
+            final FrameObservations frameObservations = getSortedFrame(i);
+            robotPose3dObservationsMultiTag.addAll(frameObservations.robotPose3dObservationsMultiTag);
+            robotPose3dObservationsSingleTag.addAll(frameObservations.robotPose3dObservationsSingleTag);
+            totalCaptureTimeSeconds += frameObservations.captureTimeSeconds;
+        }
+
+        applyFilteringToRawRobotPose3dEstimations();
+        return getEstimationResultFromValidObservations(totalCaptureTimeSeconds / (windowEnd - windowStart));
     }
 
-    private Optional<RobotPoseEstimationResult> getEstimationResultFromValidObservations() {
+    private Optional<RobotPoseEstimationResult> getEstimationResultFromValidObservations(double timeStampSeconds) {
         final boolean resultsCountSufficient =
                 validRobotPoseEstimationsSingleTag.size() >= 2 || (!validRobotPoseEstimationsMultiTag.isEmpty());
 
@@ -235,7 +460,8 @@ public class MapleMultiTagPoseEstimator {
                 new Pose2d(translationPointEstimate, rotationPointEstimate),
                 estimationStandardErrorX,
                 estimationStandardErrorY,
-                estimationStandardErrorTheta));
+                estimationStandardErrorTheta,
+                timeStampSeconds));
     }
 
     /** Log the filtering data */
@@ -247,10 +473,10 @@ public class MapleMultiTagPoseEstimator {
         /* these are the detailed filtering data, logging them on RobotRIO1.0 is a bad idea, if you want them, replay the log */
         Logger.recordOutput(
                 APRIL_TAGS_VISION_PATH + "Filtering/ValidPoseEstimationsSingleTags",
-                validRobotPoseEstimationsSingleTag.toArray(Pose3d[]::new));
+                loggedValidRobotPoseEstimationsSingleTag.toArray(Pose3d[]::new));
         Logger.recordOutput(
                 APRIL_TAGS_VISION_PATH + "Filtering/ValidPoseEstimationsMultiTags",
-                validRobotPoseEstimationsMultiTag.toArray(Pose3d[]::new));
+                loggedValidRobotPoseEstimationsMultiTag.toArray(Pose3d[]::new));
         Logger.recordOutput(
                 APRIL_TAGS_VISION_PATH + "Filtering/InvalidPoseEstimations",
                 invalidRobotPoseEstimations.toArray(Pose3d[]::new));
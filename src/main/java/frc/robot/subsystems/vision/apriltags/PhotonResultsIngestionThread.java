@@ -0,0 +1,116 @@
+package frc.robot.subsystems.vision.apriltags;
+
+import static frc.robot.constants.VisionConstants.*;
+
+import frc.robot.constants.LogPaths;
+import frc.robot.utils.DoubleFrameRingBuffer;
+import frc.robot.utils.MapleTimeUtils;
+import org.littletonrobotics.junction.Logger;
+import org.photonvision.PhotonCamera;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ *
+ *
+ * <h1>Background ingestion of PhotonVision results.</h1>
+ *
+ * <p>Polls the cameras at {@link frc.robot.constants.VisionConstants#VISION_INGESTION_FREQUENCY}, away from the main
+ * robot thread, so that decoding the results no longer blocks the main loop. Every new result is queued, as a
+ * {@link AprilTagVisionIO.CameraInputs} frame, into a bounded {@link DoubleFrameRingBuffer} per camera. The frame keeps
+ * the capture time stamped by PhotonLib, which does not depend on when the result is polled. The main robot thread
+ * then drains all the frames received since the previous robot period, instead of only the latest one.
+ *
+ * <p>The thread may also be left unstarted, in which case {@link #pollCameras()} is called by the main robot thread
+ * (this is what the simulation does, so that the simulated frames line up with the robot periods).
+ */
+public class PhotonResultsIngestionThread extends Thread {
+    private static final String INGESTION_PERFORMANCE_PATH = LogPaths.SYSTEM_PERFORMANCE_PATH + "VisionIngestion/";
+
+    private final PhotonCamera[] cameras;
+    private final DoubleFrameRingBuffer[] framesBuffers;
+    private final double[][] drainedFrames;
+    private final long[] previousDroppedFramesCount;
+    private final int[] framesReceived;
+
+    /* only accessed by the thread that polls the cameras */
+    private final AprilTagVisionIO.CameraInputs scratchInputs = new AprilTagVisionIO.CameraInputs();
+    private final double[] previousResultsTimeStamps;
+
+    /* bit i is set if camera i is connected, written by the polling thread */
+    private volatile long camerasConnectedMask = 0;
+
+    public PhotonResultsIngestionThread(PhotonCamera[] cameras) {
+        if (cameras.length > Long.SIZE) throw new IllegalArgumentException("too many cameras: " + cameras.length);
+        this.cameras = cameras;
+        this.framesBuffers = new DoubleFrameRingBuffer[cameras.length];
+        for (int i = 0; i < cameras.length; i++)
+            framesBuffers[i] = new DoubleFrameRingBuffer(
+                    VISION_INGESTION_BUFFER_CAPACITY, AprilTagVisionIO.CameraInputs.FRAME_LENGTH);
+        final int maxFramesPerCamera = AprilTagVisionIO.VisionInputs.MAX_FRAMES_PER_CAMERA;
+        this.drainedFrames = new double[maxFramesPerCamera][AprilTagVisionIO.CameraInputs.FRAME_LENGTH];
+        this.previousDroppedFramesCount = new long[cameras.length];
+        this.framesReceived = new int[cameras.length];
+        this.previousResultsTimeStamps = new double[cameras.length];
+
+        setName("PhotonResultsIngestionThread");
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (!isInterrupted()) {
+            pollCameras();
+            MapleTimeUtils.delay(1.0 / VISION_INGESTION_FREQUENCY);
+        }
+    }
+
+    /** Queues the new result of each camera, if any; must always be called from the same thread. */
+    public void pollCameras() {
+        long connectedMask = 0;
+        for (int i = 0; i < cameras.length; i++) {
+            if (!cameras[i].isConnected()) continue;
+            connectedMask |= 1L << i;
+            pollCamera(i);
+        }
+        camerasConnectedMask = connectedMask;
+    }
+
+    private void pollCamera(int cameraIndex) {
+        final PhotonPipelineResult result = cameras[cameraIndex].getLatestResult();
+        /* the same result is returned until a new one arrives */
+        if (result.getTimestampSeconds() == previousResultsTimeStamps[cameraIndex]) return;
+        previousResultsTimeStamps[cameraIndex] = result.getTimestampSeconds();
+
+        final double[] frame = framesBuffers[cameraIndex].claim();
+        if (frame == null) return;
+        scratchInputs.fromPhotonPipeLine(result, true, MapleTimeUtils.getRealTimeSeconds());
+        scratchInputs.writeToFrame(frame);
+        framesBuffers[cameraIndex].publish();
+    }
+
+    /** Drains all the frames received since the previous call into the inputs; main robot thread only. */
+    public void updateInputs(AprilTagVisionIO.VisionInputs inputs) {
+        final long connectedMask = camerasConnectedMask;
+        for (int i = 0; i < cameras.length; i++) {
+            inputs.camerasConnected[i] = (connectedMask & (1L << i)) != 0;
+            final int framesCount = framesBuffers[i].drainTo(drainedFrames);
+            for (int j = 0; j < framesCount; j++) inputs.camerasFrames[i][j].fromFrame(drainedFrames[j]);
+            inputs.camerasFramesCount[i] = framesCount;
+            framesReceived[i] = framesCount;
+        }
+        inputs.inputsFetchedRealTimeStampSeconds = MapleTimeUtils.getRealTimeSeconds();
+
+        logPerformance();
+    }
+
+    private void logPerformance() {
+        int framesDropped = 0;
+        for (int i = 0; i < cameras.length; i++) {
+            final long droppedFramesCount = framesBuffers[i].getDroppedFrameCount();
+            framesDropped += (int) (droppedFramesCount - previousDroppedFramesCount[i]);
+            previousDroppedFramesCount[i] = droppedFramesCount;
+        }
+        Logger.recordOutput(INGESTION_PERFORMANCE_PATH + "FramesReceived", framesReceived);
+        Logger.recordOutput(INGESTION_PERFORMANCE_PATH + "FramesDropped", framesDropped);
+    }
+}
@@ -24,6 +24,7 @@ import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import edu.wpi.first.wpilibj2.command.Subsystem;
 import edu.wpi.first.wpilibj2.command.button.RobotModeTriggers;
 import java.util.Arrays;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import org.ironmaple.simulation.SimulatedArena;
 import org.ironmaple.simulation.drivesims.SimplifiedSwerveDriveSimulation;
@@ -48,7 +49,6 @@ public class AIRobotInSimulation implements Subsystem {
         new Pose2d(1.6, 6, new Rotation2d()),
         new Pose2d(1.6, 4, new Rotation2d())
     };
-    public static final AIRobotInSimulation[] instances = new AIRobotInSimulation[5];
 
     private static final DriveTrainSimulationConfig AI_ROBOT_CONFIG =
             DriveTrainSimulationConfig.Default().withRobotMass(Kilograms.of(45));
@@ -63,117 +63,113 @@ public class AIRobotInSimulation implements Subsystem {
     private static final PPHolonomicDriveController driveController =
             new PPHolonomicDriveController(new PIDConstants(5.0, 0.02), new PIDConstants(7.0, 0.05));
 
-    public static void startOpponentRobotSimulations() {
+    /**
+     * Creates the opponent and alliance-partner robots, and adds them to the field.
+     *
+     * @return the robots, the first three are the opponents and the last two are the alliance partners
+     */
+    public static AIRobotInSimulation[] startOpponentRobotSimulations(SimulatedArena arena) {
+        final AIRobotInSimulation[] robots = new AIRobotInSimulation[5];
         try {
-            instances[0] = new AIRobotInSimulation(
+            robots[0] = new AIRobotInSimulation(
+                    arena,
                     PathPlannerPath.fromPathFile("opponent robot cycle path 0"),
-                    Commands.none(),
+                    robot -> Commands.none(),
                     PathPlannerPath.fromPathFile("opponent robot cycle path 0 backwards"),
-                    Commands.none(),
+                    robot -> Commands.none(),
                     ROBOT_QUEENING_POSITIONS[0],
                     1);
-            instances[1] = new AIRobotInSimulation(
+            robots[1] = new AIRobotInSimulation(
+                    arena,
                     PathPlannerPath.fromPathFile("opponent robot cycle path 1"),
-                    shootAtSpeaker(1),
+                    AIRobotInSimulation::shootAtSpeaker,
                     PathPlannerPath.fromPathFile("opponent robot cycle path 1 backwards"),
-                    Commands.none(),
+                    robot -> Commands.none(),
                     ROBOT_QUEENING_POSITIONS[1],
                     2);
-            instances[2] = new AIRobotInSimulation(
+            robots[2] = new AIRobotInSimulation(
+                    arena,
                     PathPlannerPath.fromPathFile("opponent robot cycle path 2"),
-                    shootAtSpeaker(2),
+                    AIRobotInSimulation::shootAtSpeaker,
                     PathPlannerPath.fromPathFile("opponent robot cycle path 2 backwards"),
-                    Commands.none(),
+                    robot -> Commands.none(),
                     ROBOT_QUEENING_POSITIONS[2],
                     3);
-            instances[3] = new AIRobotInSimulation(
+            robots[3] = new AIRobotInSimulation(
+                    arena,
                     PathPlannerPath.fromPathFile("opponent robot cycle path 3"),
-                    feedShotLow(),
+                    AIRobotInSimulation::feedShotLow,
                     PathPlannerPath.fromPathFile("opponent robot cycle path 3 backwards"),
-                    Commands.none(),
+                    robot -> Commands.none(),
                     ROBOT_QUEENING_POSITIONS[3],
                     4);
-            instances[4] = new AIRobotInSimulation(
+            robots[4] = new AIRobotInSimulation(
+                    arena,
                     PathPlannerPath.fromPathFile("opponent robot cycle path 4"),
-                    feedShotHigh(),
+                    AIRobotInSimulation::feedShotHigh,
                     PathPlannerPath.fromPathFile("opponent robot cycle path 4 backwards"),
-                    Commands.none(),
+                    robot -> Commands.none(),
                     ROBOT_QUEENING_POSITIONS[4],
                     5);
         } catch (Exception e) {
             DriverStation.reportError("failed to load opponent robot simulation path, error:" + e.getMessage(), false);
         }
+        return robots;
     }
 
-    private static Command shootAtSpeaker(int index) {
-        return Commands.runOnce(() -> SimulatedArena.getInstance()
-                .addGamePieceProjectile(new NoteOnFly(
-                                instances[index]
-                                        .driveSimulation
-                                        .getActualPoseInSimulationWorld()
-                                        .getTranslation(),
-                                new Translation2d(0.3, 0),
-                                instances[index].driveSimulation.getActualSpeedsFieldRelative(),
-                                instances[index]
-                                        .driveSimulation
-                                        .getActualPoseInSimulationWorld()
-                                        .getRotation(),
-                                0.5,
-                                10,
-                                Math.toRadians(60))
-                        .asSpeakerShotNote(() -> {})));
+    private Command shootAtSpeaker() {
+        return Commands.runOnce(() -> arena.addGamePieceProjectile(new NoteOnFly(
+                        driveSimulation.getActualPoseInSimulationWorld().getTranslation(),
+                        new Translation2d(0.3, 0),
+                        driveSimulation.getActualSpeedsFieldRelative(),
+                        driveSimulation.getActualPoseInSimulationWorld().getRotation(),
+                        0.5,
+                        10,
+                        Math.toRadians(60))
+                .asSpeakerShotNote(() -> {})));
     }
 
-    private static Command feedShotLow() {
-        final int index = 3;
-        return Commands.runOnce(() -> SimulatedArena.getInstance()
-                .addGamePieceProjectile(new NoteOnFly(
-                                instances[index]
-                                        .driveSimulation
-                                        .getActualPoseInSimulationWorld()
-                                        .getTranslation(),
-                                new Translation2d(0.3, 0),
-                                instances[index].driveSimulation.getActualSpeedsFieldRelative(),
-                                instances[index]
-                                        .driveSimulation
-                                        .getActualPoseInSimulationWorld()
-                                        .getRotation(),
-                                0.5,
-                                10,
-                                Math.toRadians(20))
-                        .enableBecomeNoteOnFieldAfterTouchGround()));
+    private Command feedShotLow() {
+        return Commands.runOnce(() -> arena.addGamePieceProjectile(new NoteOnFly(
+                        driveSimulation.getActualPoseInSimulationWorld().getTranslation(),
+                        new Translation2d(0.3, 0),
+                        driveSimulation.getActualSpeedsFieldRelative(),
+                        driveSimulation.getActualPoseInSimulationWorld().getRotation(),
+                        0.5,
+                        10,
+                        Math.toRadians(20))
+                .enableBecomeNoteOnFieldAfterTouchGround()));
     }
 
-    private static Command feedShotHigh() {
-        final int index = 4;
-        return Commands.runOnce(() -> SimulatedArena.getInstance()
-                .addGamePieceProjectile(new NoteOnFly(
-                                instances[index]
-                                        .driveSimulation
-                                        .getActualPoseInSimulationWorld()
-                                        .getTranslation(),
-                                new Translation2d(0.3, 0),
-                                instances[index].driveSimulation.getActualSpeedsFieldRelative(),
-                                instances[index]
-                                        .driveSimulation
-                                        .getActualPoseInSimulationWorld()
-                                        .getRotation(),
-                                0.5,
-                                10,
-                                Math.toRadians(55))
-                        .enableBecomeNoteOnFieldAfterTouchGround()));
+    private Command feedShotHigh() {
+        return Commands.runOnce(() -> arena.addGamePieceProjectile(new NoteOnFly(
+                        driveSimulation.getActualPoseInSimulationWorld().getTranslation(),
+                        new Translation2d(0.3, 0),
+                        driveSimulation.getActualSpeedsFieldRelative(),
+                        driveSimulation.getActualPoseInSimulationWorld().getRotation(),
+                        0.5,
+                        10,
+                        Math.toRadians(55))
+                .enableBecomeNoteOnFieldAfterTouchGround()));
     }
 
+    private final SimulatedArena arena;
     private final SimplifiedSwerveDriveSimulation driveSimulation;
     private final int id;
 
+    /**
+     * @param toRunAtEndOfSegment0 creates the command to run at the end of the first segment, for this robot
+     * @param toRunAtEndOfSegment1 creates the command to run at the end of the second segment, for this robot
+     */
     public AIRobotInSimulation(
+            SimulatedArena arena,
             PathPlannerPath segment0,
-            Command toRunAtEndOfSegment0,
+            Function<AIRobotInSimulation, Command> toRunAtEndOfSegment0,
             PathPlannerPath segment1,
-            Command toRunAtEndOfSegment1,
+            Function<AIRobotInSimulation, Command> toRunAtEndOfSegment1,
             Pose2d queeningPose,
             int id) {
+        this.arena = arena;
         this.id = id;
         this.driveSimulation =
                 new SimplifiedSwerveDriveSimulation(new SwerveDriveSimulation(AI_ROBOT_CONFIG, queeningPose));
@@ -181,7 +177,9 @@ public class AIRobotInSimulation implements Subsystem {
         behaviorChooser.setDefaultOption(
                 "None", Commands.run(() -> driveSimulation.setSimulationWorldPose(queeningPose), this));
         behaviorChooser.addOption(
-                "Auto Cycle", getAutoCycleCommand(segment0, toRunAtEndOfSegment0, segment1, toRunAtEndOfSegment1));
+                "Auto Cycle",
+                getAutoCycleCommand(
+                        segment0, toRunAtEndOfSegment0.apply(this), segment1, toRunAtEndOfSegment1.apply(this)));
         behaviorChooser.addOption("Joystick Drive", getJoystickDriveCommand());
         behaviorChooser.onChange((Command::schedule));
         RobotModeTriggers.teleop()
@@ -197,7 +195,7 @@ public class AIRobotInSimulation implements Subsystem {
                         .ignoringDisable(true));
 
         SmartDashboard.putData("AIRobotBehaviors/Opponent Robot " + id + " Behavior", behaviorChooser);
-        SimulatedArena.getInstance().addDriveTrainSimulation(driveSimulation.getDriveTrainSimulation());
+        arena.addDriveTrainSimulation(driveSimulation.getDriveTrainSimulation());
     }
 
     private Command getAutoCycleCommand(
@@ -252,17 +250,17 @@ public class AIRobotInSimulation implements Subsystem {
                         FieldMirroringUtils.toCurrentAlliancePose(ROBOTS_STARTING_POSITIONS[id - 1])));
     }
 
-    public static Pose2d[] getOpponentRobotPoses() {
-        return getRobotPoses(new AIRobotInSimulation[] {instances[0], instances[1], instances[2]});
+    public static Pose2d[] getOpponentRobotPoses(AIRobotInSimulation[] robots) {
+        return getRobotPoses(Arrays.copyOfRange(robots, 0, 3));
     }
 
-    public static Pose2d[] getAlliancePartnerRobotPoses() {
-        return getRobotPoses(new AIRobotInSimulation[] {instances[3], instances[4]});
+    public static Pose2d[] getAlliancePartnerRobotPoses(AIRobotInSimulation[] robots) {
+        return getRobotPoses(Arrays.copyOfRange(robots, 3, 5));
     }
 
-    private static Pose2d[] getRobotPoses(AIRobotInSimulation[] instances) {
-        return Arrays.stream(instances)
-                .map(instance -> instance.driveSimulation.getActualPoseInSimulationWorld())
+    private static Pose2d[] getRobotPoses(AIRobotInSimulation[] robots) {
+        return Arrays.stream(robots)
+                .map(robot -> robot.driveSimulation.getActualPoseInSimulationWorld())
                 .toArray(Pose2d[]::new);
     }
 }
@@ -1,11 +1,13 @@
 package frc.robot.utils;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import frc.robot.Robot;
+import frc.robot.utils.CustomMaths.PrimitiveTrapezoidProfile;
 import frc.robot.utils.CustomPIDs.MaplePIDController;
 import java.util.OptionalDouble;
 import java.util.function.Supplier;
@@ -16,6 +18,22 @@ import org.littletonrobotics.junction.Logger;
  *
  *
  * <h1>Custom Controller for Chassis Heading</h1>
+ *
+ * <p>The calculations are done on primitive doubles and the logged values are written to reused arrays, so that
+ * {@link #calculate(double, double, double, double, double, double)} allocates nothing.
+ *
+ * <p>The heading correction computed now is only applied by the modules after the actuation delay, and the pose
+ * estimate it is computed from is already older than the current time by the odometry latency. So the controller
+ * forward-predicts the robot pose over both delays, with the measured chassis speeds, and aims from the predicted
+ * pose: the feedback and the feed-forward work on the predicted heading. The logged error and {@link #atSetPoint()}
+ * still compare the request to the measured heading, so that they tell whether the robot is aimed now. The
+ * difference between each prediction and the pose estimate once it catches up is logged under
+ * <code>ChassisHeadingController/PredictionError</code>.
+ *
+ * <p>Since {@link Pose2d} is immutable, logging it would allocate on every call. So
+ * <code>ChassisHeadingController/Requested</code> and <code>ChassisHeadingController/CurrentState</code> are logged as
+ * <code>double[]</code> poses in the <code>[x, y, theta]</code> format, with the translation in meters and the
+ * rotation in radians, instead of <code>Pose2d</code> structs. AdvantageScope reads them as legacy Pose2d arrays.
  */
 public class ChassisHeadingController {
 
@@ -71,15 +89,32 @@ public class ChassisHeadingController {
      *
      * <h2>Represents an empty request.</h2>
      *
-     * <p>This request will cause {@link #calculate(ChassisSpeeds, Pose2d)} to return zero correction speeds.
+     * <p>This request will cause {@link #calculate(ChassisSpeeds, Pose2d)} to return no correction speed.
      */
     public static class NullRequest extends ChassisHeadingRequest {}
 
-    private final TrapezoidProfile chassisRotationProfile;
+    private static final double FEED_FORWARD_ERROR_THRESHOLD_RAD = Math.toRadians(15);
+
+    private final PrimitiveTrapezoidProfile chassisRotationProfile;
     private final MaplePIDController chassisRotationCloseLoop;
     private final double maxAngularVelocityRadPerSec;
     private ChassisHeadingRequest headingRequest;
-    private TrapezoidProfile.State chassisRotationState;
+    private double chassisRotationStatePosition, chassisRotationStateVelocity;
+
+    private final double actuationDelaySeconds;
+    private double odometryLatencySeconds = 0;
+
+    /* the pending predictions, oldest first, stamped with the time of the pose estimate they predict */
+    private static final int PREDICTIONS_CAPACITY = 16;
+    private final double[] predictionsTimeStamps = new double[PREDICTIONS_CAPACITY],
+            predictedXs = new double[PREDICTIONS_CAPACITY],
+            predictedYs = new double[PREDICTIONS_CAPACITY],
+            predictedThetas = new double[PREDICTIONS_CAPACITY];
+    private int predictionsHead = 0, predictionsCount = 0;
+    private double predictedX, predictedY, predictedTheta;
+
+    /* reused by the logs, as poses in the [x, y, theta] array format */
+    private final double[] requestedPoseLog = new double[3], currentStatePoseLog = new double[3];
 
     /**
      *
@@ -94,11 +129,34 @@ public class ChassisHeadingController {
             TrapezoidProfile.Constraints chassisRotationConstraints,
             MaplePIDController.MaplePIDConfig chassisRotationCloseLoopConfig,
             Rotation2d chassisInitialFacing) {
-        this.chassisRotationProfile = new TrapezoidProfile(chassisRotationConstraints);
+        this(chassisRotationConstraints, chassisRotationCloseLoopConfig, chassisInitialFacing, 0);
+    }
+
+    /**
+     *
+     *
+     * <h2>Constructs a heading controller that compensates for the actuation delay.</h2>
+     *
+     * @param chassisRotationConstraints defines the maximum angular velocity and acceleration for the drivetrain
+     * @param chassisRotationCloseLoopConfig PID configuration for chassis rotation
+     * @param chassisInitialFacing the initial orientation of the robot
+     * @param actuationDelaySeconds the time between a correction being calculated and the modules applying it
+     */
+    public ChassisHeadingController(
+            TrapezoidProfile.Constraints chassisRotationConstraints,
+            MaplePIDController.MaplePIDConfig chassisRotationCloseLoopConfig,
+            Rotation2d chassisInitialFacing,
+            double actuationDelaySeconds) {
+        if (actuationDelaySeconds < 0)
+            throw new IllegalArgumentException("invalid actuation delay: " + actuationDelaySeconds);
+        this.actuationDelaySeconds = actuationDelaySeconds;
+        this.chassisRotationProfile = new PrimitiveTrapezoidProfile(
+                chassisRotationConstraints.maxVelocity, chassisRotationConstraints.maxAcceleration);
         this.chassisRotationCloseLoop = new MaplePIDController(chassisRotationCloseLoopConfig);
         this.headingRequest = new NullRequest();
         this.maxAngularVelocityRadPerSec = chassisRotationConstraints.maxVelocity;
-        this.chassisRotationState = new TrapezoidProfile.State(chassisInitialFacing.getRadians(), 0);
+        this.chassisRotationStatePosition = chassisInitialFacing.getRadians();
+        this.chassisRotationStateVelocity = 0;
     }
 
     /**
@@ -110,6 +168,16 @@ public class ChassisHeadingController {
         this.headingRequest = newRequest;
     }
 
+    /**
+     * Sets the measured odometry latency, which is how old the pose estimate is when it is passed to the controller.
+     *
+     * @param odometryLatencySeconds the time between the newest odometry measurement and now; negative values are
+     *     treated as zero
+     */
+    public void setOdometryLatencySeconds(double odometryLatencySeconds) {
+        this.odometryLatencySeconds = Math.max(0, odometryLatencySeconds);
+    }
+
     /**
      *
      *
@@ -120,23 +188,61 @@ public class ChassisHeadingController {
      * @return (optionally) the calculated correction speed for rotation control, if the request type is not null
      */
     public OptionalDouble calculate(ChassisSpeeds measuredSpeedsFieldRelative, Pose2d robotPose) {
-        if (headingRequest instanceof FaceToRotationRequest faceToRotationRequest) {
-            return OptionalDouble.of(calculateFaceToRotation(robotPose, faceToRotationRequest.rotationTarget, 0));
-        }
+        final double correctionSpeed = calculate(
+                measuredSpeedsFieldRelative.vxMetersPerSecond,
+                measuredSpeedsFieldRelative.vyMetersPerSecond,
+                measuredSpeedsFieldRelative.omegaRadiansPerSecond,
+                robotPose.getX(),
+                robotPose.getY(),
+                robotPose.getRotation().getRadians());
+        return Double.isNaN(correctionSpeed) ? OptionalDouble.empty() : OptionalDouble.of(correctionSpeed);
+    }
 
-        if (headingRequest instanceof FaceToTargetRequest faceToTargetRequest)
-            return OptionalDouble.of(calculateFaceToTarget(
-                    measuredSpeedsFieldRelative,
-                    robotPose,
-                    faceToTargetRequest.target.get(),
-                    faceToTargetRequest.shooterOptimization));
+    /**
+     *
+     *
+     * <h2>Calculates rotational correction speeds based on the current heading request, without allocating.</h2>
+     *
+     * @param measuredVXFieldRelative the measured chassis x velocity, field-relative, in m/s
+     * @param measuredVYFieldRelative the measured chassis y velocity, field-relative, in m/s
+     * @param measuredOmega the measured chassis angular velocity, in rad/s
+     * @param robotX the x position of the robot as measured by odometry, in meters
+     * @param robotY the y position of the robot as measured by odometry, in meters
+     * @param robotTheta the facing of the robot as measured by odometry, in radians
+     * @return the calculated correction speed for rotation control, or {@link Double#NaN} if the request type is null
+     */
+    public double calculate(
+            double measuredVXFieldRelative,
+            double measuredVYFieldRelative,
+            double measuredOmega,
+            double robotX,
+            double robotY,
+            double robotTheta) {
+        predictPose(measuredVXFieldRelative, measuredVYFieldRelative, measuredOmega, robotX, robotY, robotTheta);
 
-        chassisRotationState = new TrapezoidProfile.State(
-                robotPose.getRotation().getRadians(), measuredSpeedsFieldRelative.omegaRadiansPerSecond);
+        if (headingRequest instanceof FaceToRotationRequest faceToRotationRequest)
+            return calculateFaceToRotation(
+                    robotX, robotY, robotTheta, faceToRotationRequest.rotationTarget.getRadians(), 0);
 
-        log(robotPose, robotPose.getRotation());
+        if (headingRequest instanceof FaceToTargetRequest faceToTargetRequest) {
+            final Translation2d targetPosition = faceToTargetRequest.target.get();
+            return calculateFaceToTarget(
+                    measuredVXFieldRelative,
+                    measuredVYFieldRelative,
+                    robotX,
+                    robotY,
+                    robotTheta,
+                    targetPosition.getX(),
+                    targetPosition.getY(),
+                    faceToTargetRequest.shooterOptimization);
+        }
+
+        chassisRotationStatePosition = predictedTheta;
+        chassisRotationStateVelocity = measuredOmega;
+
+        log(robotX, robotY, robotTheta, robotTheta);
         atSetPoint = false;
-        return OptionalDouble.empty();
+        return Double.NaN;
     }
 
     /**
@@ -147,73 +253,64 @@ public class ChassisHeadingController {
      * <p>For a continuously changing target, feed-forward velocity is added to help the chassis stay aligned. This
      * feed-forward is based on the target's angular velocity relative to the robot, improving tracking accuracy.
      *
-     * @param measuredSpeedsFieldRelative the measured chassis speeds, field-relative
-     * @param robotPose the current pose of the robot as measured by odometry
-     * @param targetPosition the target position to aim at
      * @param shooterOptimization optional {@link MapleShooterOptimization} for shooting-on-the-move functions
      */
     private double calculateFaceToTarget(
-            ChassisSpeeds measuredSpeedsFieldRelative,
-            Pose2d robotPose,
-            Translation2d targetPosition,
+            double measuredVXFieldRelative,
+            double measuredVYFieldRelative,
+            double robotX,
+            double robotY,
+            double robotTheta,
+            double targetX,
+            double targetY,
             MapleShooterOptimization shooterOptimization) {
-        // Target velocity relative to the robot, in the field-origin frame
-        final Translation2d targetMovingSpeed = new Translation2d(
-                -measuredSpeedsFieldRelative.vxMetersPerSecond, -measuredSpeedsFieldRelative.vyMetersPerSecond);
-
-        final Rotation2d
-                targetedRotation =
-                        shooterOptimization == null
-                                ? targetPosition
-                                        .minus(robotPose.getTranslation())
-                                        .getAngle()
-                                : shooterOptimization.getShooterFacing(
-                                        targetPosition, robotPose.getTranslation(), measuredSpeedsFieldRelative),
-                targetMovingDirection =
-                        new Translation2d(
-                                        -measuredSpeedsFieldRelative.vxMetersPerSecond,
-                                        -measuredSpeedsFieldRelative.vyMetersPerSecond)
-                                .getAngle(),
-                positiveRotationTangentDirection =
-                        targetPosition
-                                .minus(robotPose.getTranslation())
-                                .getAngle()
-                                .rotateBy(Rotation2d.fromDegrees(90));
-
-        final double
-                tangentVelocity =
-                        targetMovingDirection
-                                        .minus(positiveRotationTangentDirection)
-                                        .getCos()
-                                * targetMovingSpeed.getNorm(),
-                angularVelocity =
-                        tangentVelocity
-                                / targetPosition
-                                        .minus(robotPose.getTranslation())
-                                        .getNorm();
-
-        return calculateFaceToRotation(robotPose, targetedRotation, angularVelocity);
+        final double dx = targetX - predictedX, dy = targetY - predictedY, distance = Math.hypot(dx, dy);
+
+        final double targetedRotation = shooterOptimization == null
+                ? Math.atan2(dy, dx)
+                : shooterOptimization.getShooterFacingRadians(
+                        targetX, targetY, predictedX, predictedY, measuredVXFieldRelative, measuredVYFieldRelative);
+
+        /*
+         * the target moves at -v relative to the robot, its tangent velocity is the component of -v along the
+         * direction of positive rotation, which is the direction to the target rotated by 90 degrees: (-dy, dx)
+         */
+        final double angularVelocity = distance == 0
+                ? 0
+                : (measuredVXFieldRelative * dy - measuredVYFieldRelative * dx) / (distance * distance);
+
+        return calculateFaceToRotation(robotX, robotY, robotTheta, targetedRotation, angularVelocity);
     }
 
     /**
      *
      *
      * <h2>Calculates rotational correction speeds for a face-to-rotation request.</h2>
+     *
+     * <p>The feedback and the feed-forward use the predicted heading; the measured pose is only logged.
      */
     private double calculateFaceToRotation(
-            Pose2d robotPose, Rotation2d targetedRotation, double desiredAngularVelocityRadPerSec) {
-        TrapezoidProfile.State goalState = getGoalState(targetedRotation);
-        chassisRotationState =
-                chassisRotationProfile.calculate(Robot.defaultPeriodSecs, chassisRotationState, goalState);
+            double robotX,
+            double robotY,
+            double robotTheta,
+            double targetedRotation,
+            double desiredAngularVelocityRadPerSec) {
+        chassisRotationProfile.calculate(
+                Robot.defaultPeriodSecs,
+                chassisRotationStatePosition,
+                chassisRotationStateVelocity,
+                getGoalPosition(targetedRotation),
+                0);
+        chassisRotationStatePosition = chassisRotationProfile.getPosition();
+        chassisRotationStateVelocity = chassisRotationProfile.getVelocity();
 
-        final double feedBackSpeed =
-                chassisRotationCloseLoop.calculate(robotPose.getRotation().getRadians(), chassisRotationState.position);
+        final double feedBackSpeed = chassisRotationCloseLoop.calculate(predictedTheta, chassisRotationStatePosition);
         final double feedForwardSpeedRadPerSec =
-                Math.abs(targetedRotation.minus(robotPose.getRotation()).getDegrees()) < 15
+                Math.abs(MathUtil.angleModulus(targetedRotation - predictedTheta)) < FEED_FORWARD_ERROR_THRESHOLD_RAD
                         ? desiredAngularVelocityRadPerSec
-                        : chassisRotationState.velocity;
+                        : chassisRotationStateVelocity;
 
-        log(robotPose, targetedRotation);
+        log(robotX, robotY, robotTheta, targetedRotation);
 
         return MapleCommonMath.constrainMagnitude(
                 feedBackSpeed + feedForwardSpeedRadPerSec, maxAngularVelocityRadPerSec);
@@ -227,26 +324,78 @@ public class ChassisHeadingController {
      * <p>Finds the closest rotational position on the profile that aligns with the target rotation. This ensures
      * continuity in the rotational profile.
      *
-     * @param targetedRotation the desired orientation
-     * @return a {@link edu.wpi.first.math.trajectory.TrapezoidProfile.State} representing the target goal state
+     * @param targetedRotation the desired orientation, in radians
+     * @return the goal position of the profile, in radians
      */
-    private TrapezoidProfile.State getGoalState(Rotation2d targetedRotation) {
-        final Rotation2d difference = targetedRotation.minus(Rotation2d.fromRadians(chassisRotationState.position));
-        final double goal = chassisRotationState.position + difference.getRadians();
-        return new TrapezoidProfile.State(goal, 0);
+    private double getGoalPosition(double targetedRotation) {
+        return chassisRotationStatePosition
+                + MathUtil.angleModulus(targetedRotation - chassisRotationStatePosition);
     }
 
-    private boolean atSetPoint = false;
+    /**
+     *
+     *
+     * <h2>Forward-predicts the robot pose over the odometry latency and the actuation delay.</h2>
+     *
+     * <p>The chassis is assumed to keep its measured speeds; the prediction is stored in {@link #predictedX},
+     * {@link #predictedY} and {@link #predictedTheta}, and queued so it can be compared to the pose estimate later.
+     */
+    private void predictPose(
+            double measuredVXFieldRelative,
+            double measuredVYFieldRelative,
+            double measuredOmega,
+            double robotX,
+            double robotY,
+            double robotTheta) {
+        final double poseTimeStamp = MapleTimeUtils.getLogTimeSeconds() - odometryLatencySeconds;
+        logPredictionError(poseTimeStamp, robotX, robotY, robotTheta);
+
+        final double predictionHorizonSeconds = odometryLatencySeconds + actuationDelaySeconds;
+        predictedX = robotX + measuredVXFieldRelative * predictionHorizonSeconds;
+        predictedY = robotY + measuredVYFieldRelative * predictionHorizonSeconds;
+        predictedTheta = robotTheta + measuredOmega * predictionHorizonSeconds;
+        Logger.recordOutput("ChassisHeadingController/PredictionHorizonMS", predictionHorizonSeconds * 1000);
+
+        /* the oldest prediction is overwritten when full */
+        final int tail = (predictionsHead + predictionsCount) % PREDICTIONS_CAPACITY;
+        predictionsTimeStamps[tail] = poseTimeStamp + predictionHorizonSeconds;
+        predictedXs[tail] = predictedX;
+        predictedYs[tail] = predictedY;
+        predictedThetas[tail] = predictedTheta;
+        if (predictionsCount < PREDICTIONS_CAPACITY) predictionsCount++;
+        else predictionsHead = (predictionsHead + 1) % PREDICTIONS_CAPACITY;
+    }
+
+    /** compares the newest prediction that the pose estimate has caught up with to the pose estimate */
+    private void logPredictionError(double poseTimeStamp, double robotX, double robotY, double robotTheta) {
+        int matured = -1;
+        while (predictionsCount > 0 && predictionsTimeStamps[predictionsHead] <= poseTimeStamp) {
+            matured = predictionsHead;
+            predictionsHead = (predictionsHead + 1) % PREDICTIONS_CAPACITY;
+            predictionsCount--;
+        }
+        if (matured == -1) return;
 
-    private void log(Pose2d robotPose, Rotation2d requestedRotation) {
         Logger.recordOutput(
-                "ChassisHeadingController/Requested", new Pose2d(robotPose.getTranslation(), requestedRotation));
+                "ChassisHeadingController/PredictionError/TranslationMeters",
+                Math.hypot(predictedXs[matured] - robotX, predictedYs[matured] - robotY));
         Logger.recordOutput(
-                "ChassisHeadingController/CurrentState",
-                new Pose2d(robotPose.getTranslation(), Rotation2d.fromRadians(chassisRotationState.position)));
-        final Rotation2d error = requestedRotation.minus(robotPose.getRotation());
-        Logger.recordOutput("ChassisHeadingController/Error", error.getDegrees());
-        atSetPoint = Math.abs(error.getRadians()) < chassisRotationCloseLoop.getErrorTolerance();
+                "ChassisHeadingController/PredictionError/HeadingDegrees",
+                Math.toDegrees(MathUtil.angleModulus(predictedThetas[matured] - robotTheta)));
+    }
+
+    private boolean atSetPoint = false;
+
+    private void log(double robotX, double robotY, double robotTheta, double requestedRotation) {
+        requestedPoseLog[0] = currentStatePoseLog[0] = robotX;
+        requestedPoseLog[1] = currentStatePoseLog[1] = robotY;
+        requestedPoseLog[2] = requestedRotation;
+        currentStatePoseLog[2] = chassisRotationStatePosition;
+        Logger.recordOutput("ChassisHeadingController/Requested", requestedPoseLog);
+        Logger.recordOutput("ChassisHeadingController/CurrentState", currentStatePoseLog);
+        final double error = MathUtil.angleModulus(requestedRotation - robotTheta);
+        Logger.recordOutput("ChassisHeadingController/Error", Math.toDegrees(error));
+        atSetPoint = Math.abs(error) < chassisRotationCloseLoop.getErrorTolerance();
     }
 
     public boolean atSetPoint() {
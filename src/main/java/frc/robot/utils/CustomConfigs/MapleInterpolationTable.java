@@ -3,23 +3,66 @@
 package frc.robot.utils.CustomConfigs;
 
 import edu.wpi.first.math.MathUtil;
-import edu.wpi.first.math.interpolation.InterpolatingDoubleTreeMap;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
+/**
+ *
+ *
+ * <h1>Interpolation Table, Tunable from the Dashboard</h1>
+ *
+ * <p>The table is compiled once into sorted primitive arrays and per-segment cubic coefficients; lookups are a binary
+ * search, or a direct index if the independent variable is evenly spaced, followed by a cubic evaluation. The table is
+ * only recompiled after a dashboard change listener fires, so lookups neither allocate nor read NetworkTables.
+ *
+ * <p>Two {@link InterpolationMode}s are available: piecewise-linear, whose derivative steps at every point, and
+ * monotone cubic (Fritsch-Carlson), whose derivative is continuous and which never overshoots the tabulated values.
+ * Derivatives are exact in both modes.
+ */
 public class MapleInterpolationTable {
+    private static final double UNIFORM_SPACING_TOLERANCE = 1e-9;
+    private static final int COEFFICIENTS_PER_SEGMENT = 4;
+
+    public enum InterpolationMode {
+        LINEAR,
+        /** Fritsch-Carlson monotone cubic hermite spline, with a continuous first derivative */
+        MONOTONE_CUBIC
+    }
+
     public final String tableName;
     private final Variable independentVariable;
     private final Map<String, Variable> interpolatedVariables;
     public final double minX, maxX;
+    public final InterpolationMode interpolationMode;
+
+    /* the compiled table, the interpolated values are indexed [variable index][point index] */
+    private final Variable[] variablesByIndex;
+    private final double[] compiledXs;
+    private final double[][] compiledYs;
+    /*
+     * the cubic of each segment, y = a + b*s + c*s^2 + d*s^3 with s = x - x_i,
+     * indexed [variable index][segment * COEFFICIENTS_PER_SEGMENT + (0, 1, 2, 3) for (a, b, c, d)]
+     */
+    private final double[][] compiledCoefficients;
+    private final double[] tangentsBuffer;
+    private int compiledPointsCount = 0;
+    /* the spacing of the independent variable, NaN if it is not evenly spaced */
+    private double uniformSpacing = Double.NaN;
+    /* set by the dashboard listeners, which run on the NetworkTables thread */
+    private volatile boolean dashboardValuesChanged = true;
+    private int compiledVersion = 0;
 
     public static final class Variable {
         private String tableName;
         public final String variableName;
         public final double[] values;
+        private int index = -1;
 
         public Variable(String name, double... values) {
             this.tableName = "Unknown";
@@ -27,26 +70,40 @@ public class MapleInterpolationTable {
             this.values = values;
         }
 
+        private String getDashboardKey() {
+            return "InterpolationTables/" + tableName + "/" + variableName;
+        }
+
         public void initializeTuningPanelOnDashboard() {
             if (Objects.equals(tableName, "Unknown")) return;
-            SmartDashboard.putNumberArray("InterpolationTables/" + tableName + "/" + variableName, values);
+            SmartDashboard.putNumberArray(getDashboardKey(), values);
         }
 
         public void updateValuesFromDashboard() {
             if (Objects.equals(tableName, "Unknown")) return;
 
-            final double[] updatedValues = SmartDashboard.getNumberArray(
-                    "InterpolationTables/" + tableName + "/" + variableName, new double[] {});
+            final double[] updatedValues = SmartDashboard.getNumberArray(getDashboardKey(), new double[] {});
             if (updatedValues.length != values.length) return;
             System.arraycopy(updatedValues, 0, values, 0, values.length);
         }
     }
 
     public MapleInterpolationTable(String name, Variable independentVariable, Variable... interpolatedVariables) {
+        this(name, InterpolationMode.LINEAR, independentVariable, interpolatedVariables);
+    }
+
+    public MapleInterpolationTable(
+            String name,
+            InterpolationMode interpolationMode,
+            Variable independentVariable,
+            Variable... interpolatedVariables) {
         this.tableName = name;
+        this.interpolationMode = interpolationMode;
         this.independentVariable = independentVariable;
         this.interpolatedVariables = new HashMap<>();
-        for (Variable variable : interpolatedVariables) {
+        this.variablesByIndex = new Variable[interpolatedVariables.length];
+        for (int i = 0; i < interpolatedVariables.length; i++) {
+            final Variable variable = interpolatedVariables[i];
             this.interpolatedVariables.put(variable.variableName, variable);
             if (variable.values.length != independentVariable.values.length)
                 throw new RuntimeException("interpolated variable "
@@ -54,59 +111,205 @@ public class MapleInterpolationTable {
                         + " has length "
                         + variable.values.length
                         + " which does not match the independent variable");
+            variable.index = i;
+            variablesByIndex[i] = variable;
         }
 
         this.minX = Arrays.stream(independentVariable.values).min().orElse(0);
         this.maxX = Arrays.stream(independentVariable.values).max().orElse(0);
 
+        this.compiledXs = new double[independentVariable.values.length];
+        this.compiledYs = new double[interpolatedVariables.length][independentVariable.values.length];
+        final int maxSegmentsCount = Math.max(independentVariable.values.length - 1, 0);
+        this.compiledCoefficients =
+                new double[interpolatedVariables.length][maxSegmentsCount * COEFFICIENTS_PER_SEGMENT];
+        this.tangentsBuffer = new double[independentVariable.values.length];
+
         initDashboardTunings();
     }
 
     private void initDashboardTunings() {
         independentVariable.tableName = this.tableName;
         independentVariable.initializeTuningPanelOnDashboard();
+        addDashboardChangeListener(independentVariable);
         for (Variable interpolatedVariable : interpolatedVariables.values()) {
             interpolatedVariable.tableName = this.tableName;
             interpolatedVariable.initializeTuningPanelOnDashboard();
+            addDashboardChangeListener(interpolatedVariable);
         }
     }
 
-    private static InterpolatingDoubleTreeMap getInterpolatingDoubleTreeMap(
-            Variable independentVariable, Variable interpolatedVariable) {
-        return getInterpolatingDoubleTreeMap(
-                independentVariable, interpolatedVariable, new InterpolatingDoubleTreeMap());
+    private void addDashboardChangeListener(Variable variable) {
+        NetworkTableInstance.getDefault()
+                .addListener(
+                        SmartDashboard.getEntry(variable.getDashboardKey()),
+                        EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+                        event -> dashboardValuesChanged = true);
     }
 
-    private static InterpolatingDoubleTreeMap getInterpolatingDoubleTreeMap(
-            Variable independentVariable, Variable interpolatedVariable, InterpolatingDoubleTreeMap targetMap) {
-        targetMap.clear();
-        for (int i = 0; i < independentVariable.values.length; i++)
-            targetMap.put(independentVariable.values[i], interpolatedVariable.values[i]);
-        return targetMap;
+    /** recompiles the table if the values are changed on the dashboard */
+    private void compileIfChanged() {
+        if (!dashboardValuesChanged) return;
+        dashboardValuesChanged = false;
+
+        independentVariable.updateValuesFromDashboard();
+        for (Variable variable : variablesByIndex) variable.updateValuesFromDashboard();
+        compile();
     }
 
-    public double interpolateVariableWithLimit(String interpolatedVariableName, double independentVariableValue) {
-        return interpolateVariable(interpolatedVariableName, MathUtil.clamp(independentVariableValue, minX, maxX));
+    /* sorts the points by the independent variable, for duplicated x values the last point wins */
+    private void compile() {
+        final double[] xs = independentVariable.values;
+        final Integer[] order = new Integer[xs.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        /* the sort is stable, so duplicated x values stay in their original order */
+        Arrays.sort(order, (a, b) -> Double.compare(xs[a], xs[b]));
+
+        compiledPointsCount = 0;
+        for (int pointIndex : order) {
+            final int compiledIndex = compiledPointsCount > 0 && compiledXs[compiledPointsCount - 1] == xs[pointIndex]
+                    ? compiledPointsCount - 1
+                    : compiledPointsCount++;
+            compiledXs[compiledIndex] = xs[pointIndex];
+            for (int variable = 0; variable < variablesByIndex.length; variable++)
+                compiledYs[variable][compiledIndex] = variablesByIndex[variable].values[pointIndex];
+        }
+
+        uniformSpacing = compiledPointsCount >= 2 ? compiledXs[1] - compiledXs[0] : Double.NaN;
+        for (int i = 2; i < compiledPointsCount; i++)
+            if (Math.abs(compiledXs[i] - compiledXs[i - 1] - uniformSpacing) > UNIFORM_SPACING_TOLERANCE) {
+                uniformSpacing = Double.NaN;
+                break;
+            }
+
+        for (int variable = 0; variable < variablesByIndex.length; variable++)
+            compileCoefficients(compiledYs[variable], compiledCoefficients[variable]);
+        compiledVersion++;
     }
 
-    public double interpolateVariable(String interpolatedVariableName, double independentVariableValue) {
-        if (!interpolatedVariables.containsKey(interpolatedVariableName))
-            throw new NullPointerException("interpolated variable does not exit: " + interpolatedVariableName);
+    /** @return a number that changes every time the table is recompiled, e.g. after tuning from the dashboard */
+    public int getCompiledVersion() {
+        compileIfChanged();
+        return compiledVersion;
+    }
+
+    private void compileCoefficients(double[] ys, double[] coefficients) {
+        if (compiledPointsCount < 2) return;
+        if (interpolationMode == InterpolationMode.MONOTONE_CUBIC) computeMonotoneTangents(ys);
+
+        for (int i = 0; i < compiledPointsCount - 1; i++) {
+            final int offset = i * COEFFICIENTS_PER_SEGMENT;
+            final double h = compiledXs[i + 1] - compiledXs[i], secant = (ys[i + 1] - ys[i]) / h;
+            coefficients[offset] = ys[i];
+            if (interpolationMode == InterpolationMode.LINEAR) {
+                coefficients[offset + 1] = secant;
+                coefficients[offset + 2] = 0;
+                coefficients[offset + 3] = 0;
+                continue;
+            }
+            final double m0 = tangentsBuffer[i], m1 = tangentsBuffer[i + 1];
+            coefficients[offset + 1] = m0;
+            coefficients[offset + 2] = (3 * secant - 2 * m0 - m1) / h;
+            coefficients[offset + 3] = (m0 + m1 - 2 * secant) / (h * h);
+        }
+    }
+
+    /* Fritsch-Carlson, the tangents at the points are limited so that each segment stays monotone */
+    private void computeMonotoneTangents(double[] ys) {
+        final int n = compiledPointsCount;
+        double previousSecant = (ys[1] - ys[0]) / (compiledXs[1] - compiledXs[0]);
+        tangentsBuffer[0] = previousSecant;
+        for (int i = 1; i < n - 1; i++) {
+            final double secant = (ys[i + 1] - ys[i]) / (compiledXs[i + 1] - compiledXs[i]);
+            tangentsBuffer[i] = previousSecant * secant <= 0 ? 0 : (previousSecant + secant) / 2;
+            previousSecant = secant;
+        }
+        tangentsBuffer[n - 1] = previousSecant;
+
+        for (int i = 0; i < n - 1; i++) {
+            final double secant = (ys[i + 1] - ys[i]) / (compiledXs[i + 1] - compiledXs[i]);
+            if (secant == 0) {
+                tangentsBuffer[i] = 0;
+                tangentsBuffer[i + 1] = 0;
+                continue;
+            }
+            final double alpha = tangentsBuffer[i] / secant, beta = tangentsBuffer[i + 1] / secant;
+            final double magnitudeSquared = alpha * alpha + beta * beta;
+            if (magnitudeSquared <= 9) continue;
+            final double tau = 3 / Math.sqrt(magnitudeSquared);
+            tangentsBuffer[i] = tau * alpha * secant;
+            tangentsBuffer[i + 1] = tau * beta * secant;
+        }
+    }
+
+    /** @return the index of the segment [x_i, x_i+1] that contains x, the table must have at least two points */
+    private int findSegment(double x) {
+        if (x <= compiledXs[0]) return 0;
+        if (x >= compiledXs[compiledPointsCount - 1]) return compiledPointsCount - 2;
+        if (!Double.isNaN(uniformSpacing))
+            return Math.min((int) ((x - compiledXs[0]) / uniformSpacing), compiledPointsCount - 2);
+
+        int low = 0, high = compiledPointsCount - 1;
+        while (high - low > 1) {
+            final int mid = (low + high) >>> 1;
+            if (compiledXs[mid] <= x) low = mid;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private Variable getVariable(String interpolatedVariableName) {
         final Variable interpolatedVariable = interpolatedVariables.get(interpolatedVariableName);
+        if (interpolatedVariable == null)
+            throw new NullPointerException("interpolated variable does not exit: " + interpolatedVariableName);
+        return interpolatedVariable;
+    }
 
-        independentVariable.updateValuesFromDashboard();
-        interpolatedVariable.updateValuesFromDashboard();
+    public double interpolateVariableWithLimit(String interpolatedVariableName, double independentVariableValue) {
+        return interpolateVariable(interpolatedVariableName, MathUtil.clamp(independentVariableValue, minX, maxX));
+    }
 
-        final InterpolatingDoubleTreeMap interpolatingDoubleTreeMap =
-                getInterpolatingDoubleTreeMap(independentVariable, interpolatedVariable);
+    /**
+     * Interpolates a variable, clamped to the values at both ends of the table.
+     *
+     * @param interpolatedVariableName the name of the variable
+     * @param independentVariableValue the value of the independent variable
+     * @return the interpolated value
+     */
+    public double interpolateVariable(String interpolatedVariableName, double independentVariableValue) {
+        final int variableIndex = getVariable(interpolatedVariableName).index;
+        compileIfChanged();
+        if (compiledPointsCount == 0) return 0;
+        if (compiledPointsCount == 1) return compiledYs[variableIndex][0];
 
-        return interpolatingDoubleTreeMap.get(independentVariableValue);
+        final double x = MathUtil.clamp(independentVariableValue, compiledXs[0], compiledXs[compiledPointsCount - 1]);
+        final int segment = findSegment(x), offset = segment * COEFFICIENTS_PER_SEGMENT;
+        final double[] coefficients = compiledCoefficients[variableIndex];
+        final double s = x - compiledXs[segment];
+        return coefficients[offset]
+                + s * (coefficients[offset + 1] + s * (coefficients[offset + 2] + s * coefficients[offset + 3]));
     }
 
-    public double findDerivative(String interpolatedVariableName, double independentVariableValue, double dx) {
-        final double dy = interpolateVariable(interpolatedVariableName, independentVariableValue + dx / 2)
-                - interpolateVariable(interpolatedVariableName, independentVariableValue - dx / 2);
+    /**
+     * Finds the exact derivative of a variable, in {@link InterpolationMode#LINEAR}, this is the slope of the segment
+     * that contains the given value.
+     *
+     * <p>Outside the table, the interpolated value is clamped and the derivative is zero.
+     *
+     * @param interpolatedVariableName the name of the variable
+     * @param independentVariableValue the value of the independent variable
+     * @return dy/dx
+     */
+    public double findDerivative(String interpolatedVariableName, double independentVariableValue) {
+        final int variableIndex = getVariable(interpolatedVariableName).index;
+        compileIfChanged();
+        if (compiledPointsCount < 2
+                || independentVariableValue < compiledXs[0]
+                || independentVariableValue > compiledXs[compiledPointsCount - 1]) return 0;
 
-        return dy / dx;
+        final int segment = findSegment(independentVariableValue), offset = segment * COEFFICIENTS_PER_SEGMENT;
+        final double[] coefficients = compiledCoefficients[variableIndex];
+        final double s = independentVariableValue - compiledXs[segment];
+        return coefficients[offset + 1] + s * (2 * coefficients[offset + 2] + 3 * s * coefficients[offset + 3]);
     }
 }
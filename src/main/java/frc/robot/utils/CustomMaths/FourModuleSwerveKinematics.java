@@ -0,0 +1,174 @@
+package frc.robot.utils.CustomMaths;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ *
+ *
+ * <h1>Closed-form kinematics of a four-module swerve drive.</h1>
+ *
+ * <p>Equivalent to {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics} for four modules rotating around the
+ * center of the robot, but works on primitive arrays provided by the caller and allocates nothing. The inverse
+ * kinematics are written out per module, and the least-squares forward kinematics use a pseudo-inverse that is computed
+ * once, in the constructor.
+ *
+ * <p>The module states are stored as two arrays: the drive speeds and the steer angles, in radians.
+ */
+public final class FourModuleSwerveKinematics {
+    public static final int MODULES_COUNT = 4;
+
+    private final double x0, y0, x1, y1, x2, y2, x3, y3;
+    /* the pseudo-inverse of the inverse kinematics matrix, 3 rows (vx, vy, omega) by 8 columns (vx0, vy0, vx1 ...) */
+    private final double[] forward = new double[3 * 2 * MODULES_COUNT];
+    /* the headings kept when the chassis is not moving, like SwerveDriveKinematics does */
+    private final double[] moduleHeadings = new double[MODULES_COUNT];
+    /* scratch buffer for the module velocity vectors */
+    private final double[] moduleVectors = new double[2 * MODULES_COUNT];
+
+    public FourModuleSwerveKinematics(Translation2d... moduleTranslations) {
+        if (moduleTranslations.length != MODULES_COUNT)
+            throw new IllegalArgumentException("expected 4 modules, got " + moduleTranslations.length);
+        x0 = moduleTranslations[0].getX();
+        y0 = moduleTranslations[0].getY();
+        x1 = moduleTranslations[1].getX();
+        y1 = moduleTranslations[1].getY();
+        x2 = moduleTranslations[2].getX();
+        y2 = moduleTranslations[2].getY();
+        x3 = moduleTranslations[3].getX();
+        y3 = moduleTranslations[3].getY();
+
+        /*
+         * the inverse kinematics matrix A has two rows per module, [1, 0, -y] and [0, 1, x]
+         * the forward kinematics are (A^T A)^-1 A^T, where A^T A is symmetric:
+         * [[n, 0, -sy], [0, n, sx], [-sy, sx, sr]]
+         */
+        final double n = MODULES_COUNT,
+                sx = x0 + x1 + x2 + x3,
+                sy = y0 + y1 + y2 + y3,
+                sr = x0 * x0 + y0 * y0 + x1 * x1 + y1 * y1 + x2 * x2 + y2 * y2 + x3 * x3 + y3 * y3;
+        final double determinant = n * (n * sr - sx * sx) - sy * sy * n;
+        if (Math.abs(determinant) < 1e-12) throw new IllegalArgumentException("degenerate module layout");
+        /* the inverse of A^T A, by cofactors */
+        final double i00 = (n * sr - sx * sx) / determinant,
+                i01 = (-sy * sx) / determinant,
+                i02 = (n * sy) / determinant,
+                i11 = (n * sr - sy * sy) / determinant,
+                i12 = (-n * sx) / determinant,
+                i22 = (n * n) / determinant;
+        final double[] xs = {x0, x1, x2, x3}, ys = {y0, y1, y2, y3};
+        for (int i = 0; i < MODULES_COUNT; i++) {
+            /* column 2i is A^T's column [1, 0, -y], column 2i + 1 is [0, 1, x] */
+            forward[2 * i] = i00 - i02 * ys[i];
+            forward[2 * i + 1] = i01 + i02 * xs[i];
+            forward[8 + 2 * i] = i01 - i12 * ys[i];
+            forward[8 + 2 * i + 1] = i11 + i12 * xs[i];
+            forward[16 + 2 * i] = i02 - i22 * ys[i];
+            forward[16 + 2 * i + 1] = i12 + i22 * xs[i];
+        }
+    }
+
+    /**
+     * Calculates the module states from robot-relative chassis speeds.
+     *
+     * <p>If the chassis is not moving, the modules keep their previous headings.
+     *
+     * @param outSpeeds the drive speeds of the modules, in m/s
+     * @param outAnglesRad the steer angles of the modules, in radians
+     */
+    public void toModuleStates(double vx, double vy, double omega, double[] outSpeeds, double[] outAnglesRad) {
+        if (vx == 0 && vy == 0 && omega == 0) {
+            for (int i = 0; i < MODULES_COUNT; i++) {
+                outSpeeds[i] = 0;
+                outAnglesRad[i] = moduleHeadings[i];
+            }
+            return;
+        }
+
+        setModuleState(0, vx - omega * y0, vy + omega * x0, outSpeeds, outAnglesRad);
+        setModuleState(1, vx - omega * y1, vy + omega * x1, outSpeeds, outAnglesRad);
+        setModuleState(2, vx - omega * y2, vy + omega * x2, outSpeeds, outAnglesRad);
+        setModuleState(3, vx - omega * y3, vy + omega * x3, outSpeeds, outAnglesRad);
+    }
+
+    /**
+     * Calculates the velocity vectors of the modules from robot-relative chassis speeds.
+     *
+     * @param out the velocity vectors, as (vx0, vy0, vx1, vy1 ...), in m/s
+     */
+    public void toModuleVelocityVectors(double vx, double vy, double omega, double[] out) {
+        out[0] = vx - omega * y0;
+        out[1] = vy + omega * x0;
+        out[2] = vx - omega * y1;
+        out[3] = vy + omega * x1;
+        out[4] = vx - omega * y2;
+        out[5] = vy + omega * x2;
+        out[6] = vx - omega * y3;
+        out[7] = vy + omega * x3;
+    }
+
+    private void setModuleState(int index, double moduleVX, double moduleVY, double[] outSpeeds, double[] outAngles) {
+        outSpeeds[index] = Math.hypot(moduleVX, moduleVY);
+        /* a module with zero speed points forward, like Rotation2d does for a zero vector */
+        outAngles[index] = moduleHeadings[index] = Math.atan2(moduleVY, moduleVX);
+    }
+
+    /**
+     * Calculates the robot-relative chassis speeds from the module states, as a least-squares fit.
+     *
+     * @param out the chassis speeds, as (vx m/s, vy m/s, omega rad/s)
+     */
+    public void toChassisSpeeds(double[] speeds, double[] anglesRad, double[] out) {
+        fillModuleVectors(speeds, anglesRad);
+        multiplyForward(out);
+    }
+
+    /**
+     * Calculates the robot-relative twist from the distances traveled by the modules, as a least-squares fit.
+     *
+     * @param distanceDeltas the distance traveled by the drive wheel of each module, in meters
+     * @param anglesRad the steer angles of the modules, in radians
+     * @param out the twist, as (dx meters, dy meters, dtheta radians)
+     */
+    public void toTwist(double[] distanceDeltas, double[] anglesRad, double[] out) {
+        toChassisSpeeds(distanceDeltas, anglesRad, out);
+    }
+
+    private void fillModuleVectors(double[] magnitudes, double[] anglesRad) {
+        for (int i = 0; i < MODULES_COUNT; i++) {
+            moduleVectors[2 * i] = magnitudes[i] * Math.cos(anglesRad[i]);
+            moduleVectors[2 * i + 1] = magnitudes[i] * Math.sin(anglesRad[i]);
+        }
+    }
+
+    private void multiplyForward(double[] out) {
+        final double[] v = moduleVectors, f = forward;
+        out[0] = f[0] * v[0] + f[1] * v[1] + f[2] * v[2] + f[3] * v[3] + f[4] * v[4] + f[5] * v[5] + f[6] * v[6]
+                + f[7] * v[7];
+        out[1] = f[8] * v[0] + f[9] * v[1] + f[10] * v[2] + f[11] * v[3] + f[12] * v[4] + f[13] * v[5]
+                + f[14] * v[6] + f[15] * v[7];
+        out[2] = f[16] * v[0] + f[17] * v[1] + f[18] * v[2] + f[19] * v[3] + f[20] * v[4] + f[21] * v[5]
+                + f[22] * v[6] + f[23] * v[7];
+    }
+
+    /**
+     * Sets the headings that the modules keep when the chassis is not moving, see
+     * {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics#resetHeadings}.
+     */
+    public void resetHeadings(double... headingsRad) {
+        if (headingsRad.length != MODULES_COUNT)
+            throw new IllegalArgumentException("expected 4 headings, got " + headingsRad.length);
+        System.arraycopy(headingsRad, 0, moduleHeadings, 0, MODULES_COUNT);
+    }
+
+    /**
+     * Scales down the drive speeds so that none of them exceeds the maximum, keeping their ratios, see
+     * {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics#desaturateWheelSpeeds}.
+     */
+    public static void desaturateWheelSpeeds(double[] speeds, double maxSpeed) {
+        double realMaxSpeed = 0;
+        for (int i = 0; i < MODULES_COUNT; i++) realMaxSpeed = Math.max(realMaxSpeed, Math.abs(speeds[i]));
+        if (realMaxSpeed <= maxSpeed) return;
+        final double scale = maxSpeed / realMaxSpeed;
+        for (int i = 0; i < MODULES_COUNT; i++) speeds[i] *= scale;
+    }
+}
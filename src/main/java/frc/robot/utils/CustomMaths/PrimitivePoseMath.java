@@ -0,0 +1,114 @@
+package frc.robot.utils.CustomMaths;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Allocation-free versions of the {@link edu.wpi.first.math.geometry.Pose2d} operations used on the odometry hot path.
+ *
+ * <p>Poses and twists are passed as (x, y, theta) primitives, results are written into a caller-provided
+ * <code>double[3]</code> at {@link #X}, {@link #Y} and {@link #THETA}. The math is identical to WPILib's, all the
+ * angles written out are wrapped to [-pi, pi).
+ */
+public final class PrimitivePoseMath {
+    public static final int X = 0, Y = 1, THETA = 2;
+
+    private PrimitivePoseMath() {}
+
+    /** Equivalent to <code>pose.exp(twist)</code>. */
+    public static void exp(
+            double x, double y, double theta, double dx, double dy, double dtheta, double[] out) {
+        final double sinTheta = Math.sin(dtheta), cosTheta = Math.cos(dtheta);
+        final double s, c;
+        if (Math.abs(dtheta) < 1E-9) {
+            s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+            c = 0.5 * dtheta;
+        } else {
+            s = sinTheta / dtheta;
+            c = (1 - cosTheta) / dtheta;
+        }
+        final double translationX = dx * s - dy * c, translationY = dx * c + dy * s;
+        final double cos = Math.cos(theta), sin = Math.sin(theta);
+
+        out[X] = x + translationX * cos - translationY * sin;
+        out[Y] = y + translationX * sin + translationY * cos;
+        out[THETA] = MathUtil.angleModulus(theta + dtheta);
+    }
+
+    /** Equivalent to <code>start.log(end)</code>, the twist is written to out as (dx, dy, dtheta). */
+    public static void log(
+            double startX,
+            double startY,
+            double startTheta,
+            double endX,
+            double endY,
+            double endTheta,
+            double[] out) {
+        final double cos = Math.cos(startTheta), sin = Math.sin(startTheta);
+        final double relativeX = (endX - startX) * cos + (endY - startY) * sin,
+                relativeY = -(endX - startX) * sin + (endY - startY) * cos;
+        final double dtheta = MathUtil.angleModulus(endTheta - startTheta);
+
+        final double halfDtheta = dtheta / 2.0, cosMinusOne = Math.cos(dtheta) - 1;
+        final double halfThetaByTanOfHalfDtheta = Math.abs(cosMinusOne) < 1E-9
+                ? 1.0 - 1.0 / 12.0 * dtheta * dtheta
+                : -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+
+        out[X] = relativeX * halfThetaByTanOfHalfDtheta + relativeY * halfDtheta;
+        out[Y] = -relativeX * halfDtheta + relativeY * halfThetaByTanOfHalfDtheta;
+        out[THETA] = dtheta;
+    }
+
+    /** Equivalent to <code>start.interpolate(end, t)</code>. */
+    public static void interpolate(
+            double startX,
+            double startY,
+            double startTheta,
+            double endX,
+            double endY,
+            double endTheta,
+            double t,
+            double[] out) {
+        if (t <= 0) {
+            out[X] = startX;
+            out[Y] = startY;
+            out[THETA] = startTheta;
+            return;
+        }
+        if (t >= 1) {
+            out[X] = endX;
+            out[Y] = endY;
+            out[THETA] = endTheta;
+            return;
+        }
+        log(startX, startY, startTheta, endX, endY, endTheta, out);
+        exp(startX, startY, startTheta, out[X] * t, out[Y] * t, out[THETA] * t, out);
+    }
+
+    /**
+     * Equivalent to <code>referenceNew.plus(pose.minus(referenceOld))</code>.
+     *
+     * <p>Applies to a pose the same rigid transformation that moves referenceOld onto referenceNew; this is how the
+     * pose estimators compensate an odometry pose with a vision correction.
+     */
+    public static void transformByReference(
+            double poseX,
+            double poseY,
+            double poseTheta,
+            double referenceOldX,
+            double referenceOldY,
+            double referenceOldTheta,
+            double referenceNewX,
+            double referenceNewY,
+            double referenceNewTheta,
+            double[] out) {
+        final double cosOld = Math.cos(referenceOldTheta), sinOld = Math.sin(referenceOldTheta);
+        final double deltaX = (poseX - referenceOldX) * cosOld + (poseY - referenceOldY) * sinOld,
+                deltaY = -(poseX - referenceOldX) * sinOld + (poseY - referenceOldY) * cosOld,
+                deltaTheta = poseTheta - referenceOldTheta;
+        final double cosNew = Math.cos(referenceNewTheta), sinNew = Math.sin(referenceNewTheta);
+
+        out[X] = referenceNewX + deltaX * cosNew - deltaY * sinNew;
+        out[Y] = referenceNewY + deltaX * sinNew + deltaY * cosNew;
+        out[THETA] = MathUtil.angleModulus(referenceNewTheta + deltaTheta);
+    }
+}
@@ -0,0 +1,86 @@
+package frc.robot.utils.CustomMaths;
+
+/**
+ * A trapezoid motion profile, equivalent to {@link edu.wpi.first.math.trajectory.TrapezoidProfile}, that works on
+ * primitive doubles and allocates nothing.
+ *
+ * <p>The result of {@link #calculate} is stored in {@link #getPosition()} and {@link #getVelocity()}.
+ */
+public final class PrimitiveTrapezoidProfile {
+    private final double maxVelocity, maxAcceleration;
+    private double position, velocity;
+
+    public PrimitiveTrapezoidProfile(double maxVelocity, double maxAcceleration) {
+        if (maxVelocity <= 0 || maxAcceleration <= 0)
+            throw new IllegalArgumentException("constraints must be positive");
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+    }
+
+    /**
+     * Calculates the state of the profile after a given time, starting from a given state.
+     *
+     * @param t the time since the beginning of the profile, in seconds
+     */
+    public void calculate(
+            double t, double currentPosition, double currentVelocity, double goalPosition, double goalVelocity) {
+        /* flip the profile so that it always goes forward */
+        final double direction = currentPosition > goalPosition ? -1 : 1;
+        currentPosition *= direction;
+        currentVelocity *= direction;
+        goalPosition *= direction;
+        goalVelocity *= direction;
+
+        if (Math.abs(currentVelocity) > maxVelocity) currentVelocity = Math.copySign(maxVelocity, currentVelocity);
+
+        /* the profile is a truncated trapezoid: pretend it started and ended at zero velocity */
+        final double cutoffBegin = currentVelocity / maxAcceleration,
+                cutoffDistBegin = cutoffBegin * cutoffBegin * maxAcceleration / 2.0,
+                cutoffEnd = goalVelocity / maxAcceleration,
+                cutoffDistEnd = cutoffEnd * cutoffEnd * maxAcceleration / 2.0;
+        final double fullTrapezoidDist = cutoffDistBegin + (goalPosition - currentPosition) + cutoffDistEnd;
+        double accelerationTime = maxVelocity / maxAcceleration;
+        double fullSpeedDist = fullTrapezoidDist - accelerationTime * accelerationTime * maxAcceleration;
+        /* the maximum velocity is never reached: the profile is a triangle */
+        if (fullSpeedDist < 0) {
+            accelerationTime = Math.sqrt(fullTrapezoidDist / maxAcceleration);
+            fullSpeedDist = 0;
+        }
+
+        final double endAccel = accelerationTime - cutoffBegin,
+                endFullSpeed = endAccel + fullSpeedDist / maxVelocity,
+                endDecel = endFullSpeed + accelerationTime - cutoffEnd;
+
+        if (t < endAccel) {
+            velocity = currentVelocity + t * maxAcceleration;
+            position = currentPosition + (currentVelocity + t * maxAcceleration / 2.0) * t;
+        } else if (t < endFullSpeed) {
+            velocity = maxVelocity;
+            position = currentPosition
+                    + (currentVelocity + endAccel * maxAcceleration / 2.0) * endAccel
+                    + maxVelocity * (t - endAccel);
+        } else if (t <= endDecel) {
+            final double timeLeft = endDecel - t;
+            velocity = goalVelocity + timeLeft * maxAcceleration;
+            position = goalPosition - (goalVelocity + timeLeft * maxAcceleration / 2.0) * timeLeft;
+        } else {
+            velocity = goalVelocity;
+            position = goalPosition;
+        }
+
+        position *= direction;
+        velocity *= direction;
+    }
+
+    public double getPosition() {
+        return position;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+
+    public double getMaxVelocity() {
+        return maxVelocity;
+    }
+}
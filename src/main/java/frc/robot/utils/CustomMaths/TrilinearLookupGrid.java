@@ -0,0 +1,102 @@
+package frc.robot.utils.CustomMaths;
+
+/**
+ * A precomputed, evenly-spaced 3D grid of vector values, stored in one flat <code>float[]</code> and sampled with
+ * trilinear interpolation.
+ *
+ * <p>Sampling clamps to the bounds of the grid and allocates nothing; all the channels of a node are adjacent in
+ * memory.
+ */
+public final class TrilinearLookupGrid {
+    /** Computes the values at one node of the grid. */
+    @FunctionalInterface
+    public interface NodeFunction {
+        void compute(double x, double y, double z, double[] out);
+    }
+
+    private final double minX, minY, minZ, stepX, stepY, stepZ;
+    private final int countX, countY, countZ, channels;
+    private final float[] values;
+
+    public TrilinearLookupGrid(
+            double minX,
+            double maxX,
+            int countX,
+            double minY,
+            double maxY,
+            int countY,
+            double minZ,
+            double maxZ,
+            int countZ,
+            int channels) {
+        if (countX < 2 || countY < 2 || countZ < 2)
+            throw new IllegalArgumentException("grid must have at least 2 nodes along each axis");
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.stepX = (maxX - minX) / (countX - 1);
+        this.stepY = (maxY - minY) / (countY - 1);
+        this.stepZ = (maxZ - minZ) / (countZ - 1);
+        this.countX = countX;
+        this.countY = countY;
+        this.countZ = countZ;
+        this.channels = channels;
+        this.values = new float[countX * countY * countZ * channels];
+    }
+
+    /** Computes the values at every node of the grid. */
+    public void build(NodeFunction function) {
+        final double[] nodeValues = new double[channels];
+        for (int i = 0; i < countX; i++)
+            for (int j = 0; j < countY; j++)
+                for (int k = 0; k < countZ; k++) {
+                    function.compute(minX + i * stepX, minY + j * stepY, minZ + k * stepZ, nodeValues);
+                    final int offset = nodeOffset(i, j, k);
+                    for (int channel = 0; channel < channels; channel++)
+                        values[offset + channel] = (float) nodeValues[channel];
+                }
+    }
+
+    /**
+     * Samples all the channels at a point, clamped to the bounds of the grid.
+     *
+     * @param out the sampled values, at least as long as the amount of channels
+     */
+    public void sample(double x, double y, double z, double[] out) {
+        final double gridX = clampToGrid((x - minX) / stepX, countX),
+                gridY = clampToGrid((y - minY) / stepY, countY),
+                gridZ = clampToGrid((z - minZ) / stepZ, countZ);
+        final int i = Math.min((int) gridX, countX - 2),
+                j = Math.min((int) gridY, countY - 2),
+                k = Math.min((int) gridZ, countZ - 2);
+        final double tx = gridX - i, ty = gridY - j, tz = gridZ - k;
+
+        final int o000 = nodeOffset(i, j, k),
+                o001 = nodeOffset(i, j, k + 1),
+                o010 = nodeOffset(i, j + 1, k),
+                o011 = nodeOffset(i, j + 1, k + 1),
+                o100 = nodeOffset(i + 1, j, k),
+                o101 = nodeOffset(i + 1, j, k + 1),
+                o110 = nodeOffset(i + 1, j + 1, k),
+                o111 = nodeOffset(i + 1, j + 1, k + 1);
+        for (int channel = 0; channel < channels; channel++) {
+            final double c00 = lerp(values[o000 + channel], values[o001 + channel], tz),
+                    c01 = lerp(values[o010 + channel], values[o011 + channel], tz),
+                    c10 = lerp(values[o100 + channel], values[o101 + channel], tz),
+                    c11 = lerp(values[o110 + channel], values[o111 + channel], tz);
+            out[channel] = lerp(lerp(c00, c01, ty), lerp(c10, c11, ty), tx);
+        }
+    }
+
+    private int nodeOffset(int i, int j, int k) {
+        return ((i * countY + j) * countZ + k) * channels;
+    }
+
+    private static double clampToGrid(double gridCoordinate, int count) {
+        return Math.max(0, Math.min(gridCoordinate, count - 1));
+    }
+
+    private static double lerp(double a, double b, double t) {
+        return a + (b - a) * t;
+    }
+}
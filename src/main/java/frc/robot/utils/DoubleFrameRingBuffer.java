@@ -0,0 +1,85 @@
+package frc.robot.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ *
+ * <h1>Single-producer, single-consumer ring buffer of primitive <code>double[]</code> frames.</h1>
+ *
+ * <p>Every slot is a pre-allocated frame of fixed length; the producer fills a whole frame and publishes it at once,
+ * the consumer copies published frames out. No locks and no boxing are involved, and nothing is allocated after
+ * construction.
+ *
+ * <p>Only ONE thread may write and only ONE thread may read.
+ */
+public final class DoubleFrameRingBuffer {
+    private final double[][] frames;
+    private final int capacity, frameLength;
+    /* the producer only writes writeIndex and the consumer only writes readIndex */
+    private final AtomicLong writeIndex = new AtomicLong(0), readIndex = new AtomicLong(0);
+    /* written only by the producer */
+    private final AtomicLong droppedFrames = new AtomicLong(0);
+
+    public DoubleFrameRingBuffer(int capacity, int frameLength) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.frameLength = frameLength;
+        this.frames = new double[capacity][frameLength];
+    }
+
+    /**
+     * Producer side: obtains the next free frame to fill.
+     *
+     * <p>The returned frame is invisible to the consumer until {@link #publish()} is called. If the buffer is full, the
+     * frame is counted as dropped and must be skipped entirely by the producer.
+     *
+     * @return the frame to write to, or <code>null</code> if the buffer is full
+     */
+    public double[] claim() {
+        final long write = writeIndex.get();
+        if (write - readIndex.get() >= capacity) {
+            droppedFrames.lazySet(droppedFrames.get() + 1);
+            return null;
+        }
+        return frames[(int) (write % capacity)];
+    }
+
+    /** Producer side: makes the frame obtained from {@link #claim()} visible to the consumer. */
+    public void publish() {
+        writeIndex.lazySet(writeIndex.get() + 1);
+    }
+
+    /**
+     * Consumer side: copies all the published frames, oldest first, into the destination.
+     *
+     * @param destination pre-allocated frames, each at least {@link #getFrameLength()} long
+     * @return the number of frames copied, at most <code>destination.length</code>
+     */
+    public int drainTo(double[][] destination) {
+        final long read = readIndex.get();
+        final int count = (int) Math.min(writeIndex.get() - read, destination.length);
+        for (int i = 0; i < count; i++)
+            System.arraycopy(frames[(int) ((read + i) % capacity)], 0, destination[i], 0, frameLength);
+        readIndex.lazySet(read + count);
+        return count;
+    }
+
+    /** @return the amount of frames published but not yet drained */
+    public int size() {
+        return (int) (writeIndex.get() - readIndex.get());
+    }
+
+    /** @return the total amount of frames dropped because the buffer was full, since construction */
+    public long getDroppedFrameCount() {
+        return droppedFrames.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getFrameLength() {
+        return frameLength;
+    }
+}
@@ -0,0 +1,61 @@
+package frc.robot.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ *
+ * <h1>Single-writer, single-reader slot holding the latest primitive <code>double[]</code> frame.</h1>
+ *
+ * <p>Unlike {@link DoubleFrameRingBuffer}, which queues every frame, the slot only keeps the newest one: the reader
+ * always gets the latest frame, and the frames it missed are overwritten. It is a triple buffer: the writer fills its
+ * own frame, and publishing swaps it with the shared frame, while the reader swaps its own frame with the shared frame
+ * when a newer one is available. No locks are involved, neither side ever waits, and nothing is allocated after
+ * construction.
+ *
+ * <p>Only ONE thread may write and only ONE thread may read. The frame returned by {@link #writeFrame()} holds stale
+ * data from earlier frames, so the writer must fill all of it before publishing.
+ */
+public final class DoubleFrameSlot {
+    private static final int INDEX_MASK = 0b11, FRESH_BIT = 0b100;
+
+    private final double[][] frames;
+    /* the index of the shared frame, with FRESH_BIT set if it was published and not read yet */
+    private final AtomicInteger shared = new AtomicInteger(0);
+    /* confined to the writer and to the reader, respectively */
+    private int writeIndex = 1, readIndex = 2;
+
+    public DoubleFrameSlot(int frameLength) {
+        this.frames = new double[3][frameLength];
+    }
+
+    /** Writer side: @return the frame to fill, invisible to the reader until {@link #publish()} is called */
+    public double[] writeFrame() {
+        return frames[writeIndex];
+    }
+
+    /** Writer side: makes the frame obtained from {@link #writeFrame()} the latest one. */
+    public void publish() {
+        writeIndex = shared.getAndSet(writeIndex | FRESH_BIT) & INDEX_MASK;
+    }
+
+    /**
+     * Reader side: takes the latest published frame, if a new one was published since the last call.
+     *
+     * @return whether {@link #readFrame()} changed
+     */
+    public boolean update() {
+        if ((shared.get() & FRESH_BIT) == 0) return false;
+        readIndex = shared.getAndSet(readIndex) & INDEX_MASK;
+        return true;
+    }
+
+    /** Reader side: @return the latest frame taken by {@link #update()}, all zeros if nothing was published yet */
+    public double[] readFrame() {
+        return frames[readIndex];
+    }
+
+    public int getFrameLength() {
+        return frames[0].length;
+    }
+}
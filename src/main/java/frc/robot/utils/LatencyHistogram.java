@@ -0,0 +1,86 @@
+package frc.robot.utils;
+
+import java.util.Arrays;
+
+/**
+ *
+ *
+ * <h1>Fixed-size log-linear histogram of durations.</h1>
+ *
+ * <p>Works like an HDR histogram: the values are grouped into powers of two, and each power of two is split into 64
+ * linear buckets, so that every bucket is narrower than 1/64 of the values it holds. Durations up to about 34 seconds
+ * are tracked, larger values fall into the last bucket. The maximum is also tracked exactly.
+ *
+ * <p>The buckets are allocated once, and {@link #record(long)} allocates nothing.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    /* the values below this are recorded exactly, one bucket each */
+    private static final int LINEAR_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKETS_PER_MAGNITUDE = LINEAR_BUCKETS / 2;
+    private static final int HIGHEST_MAGNITUDE = 34;
+    private static final int BUCKETS_COUNT =
+            LINEAR_BUCKETS + (HIGHEST_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS_PER_MAGNITUDE;
+
+    private final long[] counts = new long[BUCKETS_COUNT];
+    private long totalCount = 0, maxNanos = 0;
+
+    /** Records one duration, negative durations are recorded as zero. */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[bucketIndex(nanos)]++;
+        totalCount++;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) return (int) value;
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > HIGHEST_MAGNITUDE) return BUCKETS_COUNT - 1;
+        /* the top SUB_BUCKET_BITS bits of the value, which are in [SUB_BUCKETS_PER_MAGNITUDE, LINEAR_BUCKETS) */
+        final int shift = magnitude - SUB_BUCKET_BITS + 1;
+        final int subBucket = (int) (value >> shift) - SUB_BUCKETS_PER_MAGNITUDE;
+        return LINEAR_BUCKETS + (magnitude - SUB_BUCKET_BITS) * SUB_BUCKETS_PER_MAGNITUDE + subBucket;
+    }
+
+    /** @return the middle of the range of values held by a bucket */
+    private static double bucketMiddle(int index) {
+        if (index < LINEAR_BUCKETS) return index;
+        final int magnitudeOffset = (index - LINEAR_BUCKETS) / SUB_BUCKETS_PER_MAGNITUDE;
+        final long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS_PER_MAGNITUDE + SUB_BUCKETS_PER_MAGNITUDE;
+        final int shift = magnitudeOffset + 1;
+        return (subBucket << shift) + ((1L << shift) - 1) / 2.0;
+    }
+
+    /**
+     * Finds the value at a given percentile, to the precision of the buckets.
+     *
+     * @param percentile the percentile, in [0, 100]
+     * @return the value at the percentile, in nanoseconds, or 0 if nothing is recorded
+     */
+    public double getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        final long targetCount = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            cumulativeCount += counts[i];
+            /* a bucket never reports more than the exact maximum */
+            if (cumulativeCount >= targetCount) return Math.min(bucketMiddle(i), maxNanos);
+        }
+        return maxNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        maxNanos = 0;
+    }
+}
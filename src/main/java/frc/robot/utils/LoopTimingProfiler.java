@@ -0,0 +1,134 @@
+package frc.robot.utils;
+
+import frc.robot.Robot;
+import frc.robot.constants.LogPaths;
+import java.util.ArrayList;
+import java.util.List;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ *
+ *
+ * <h1>Profiler for the main robot loop.</h1>
+ *
+ * <p>Code is timed with named {@link Scope}s, created once and then begun and ended every loop. Scopes can be nested
+ * with {@link Scope#child(String)}, and their names form a path, for example <code>Subsystems/Drive</code>.
+ * Each scope records its durations into a {@link LatencyHistogram}, and so does the full loop cycle, measured between
+ * two calls to {@link #startLoop()}.
+ *
+ * <p>Every {@link #PUBLISH_PERIOD_SECONDS}, the p50, p95, p99 and maximum of each scope are logged under
+ * {@link LogPaths#SYSTEM_PERFORMANCE_PATH}, and the histograms are cleared. The number of loop cycles longer than the
+ * robot period, which are the ones that trigger the watchdog warnings, is logged with them.
+ *
+ * <p>The profiler is only used from the main robot thread, and allocates nothing once all the scopes are created.
+ */
+public final class LoopTimingProfiler {
+    public static final double PUBLISH_PERIOD_SECONDS = 5.0;
+    /* the loop notifier jitters a bit, a cycle is only an overrun if it is late by more than this */
+    private static final double LOOP_OVERRUN_TOLERANCE_SECONDS = 0.001;
+    private static final String PROFILER_PATH = LogPaths.SYSTEM_PERFORMANCE_PATH + "LoopProfiler/";
+    private static final String LOOP_OVERRUNS_KEY = PROFILER_PATH + "LoopOverruns",
+            WINDOW_LOOP_OVERRUNS_KEY = PROFILER_PATH + "LoopOverrunsInWindow";
+
+    private static final List<Scope> scopes = new ArrayList<>();
+
+    public static final Scope LOOP_CYCLE = scope("LoopCycle");
+    public static final Scope COMMAND_SCHEDULER = scope("CommandScheduler");
+    public static final Scope SUBSYSTEMS = scope("Subsystems");
+    public static final Scope SIMULATION = scope("Simulation");
+
+    private static long previousLoopStartNanos = -1, previousPublishNanos = -1;
+    private static long totalLoopOverruns = 0, windowLoopOverruns = 0;
+
+    private LoopTimingProfiler() {}
+
+    /** Creates a top-level scope, to be stored and reused. */
+    public static Scope scope(String name) {
+        final Scope scope = new Scope(name);
+        scopes.add(scope);
+        return scope;
+    }
+
+    /**
+     * Marks the start of a loop cycle, and publishes the statistics if they are due.
+     *
+     * <p>Must be called once per loop, at the same point of the loop, which is the beginning of
+     * {@link Robot#robotPeriodic()}.
+     */
+    public static void startLoop() {
+        final long now = System.nanoTime();
+        if (previousLoopStartNanos >= 0) {
+            final long cycleNanos = now - previousLoopStartNanos;
+            LOOP_CYCLE.histogram.record(cycleNanos);
+            if (cycleNanos > (Robot.defaultPeriodSecs + LOOP_OVERRUN_TOLERANCE_SECONDS) * 1_000_000_000L) {
+                totalLoopOverruns++;
+                windowLoopOverruns++;
+            }
+        }
+        previousLoopStartNanos = now;
+
+        if (previousPublishNanos < 0) previousPublishNanos = now;
+        if (now - previousPublishNanos >= PUBLISH_PERIOD_SECONDS * 1_000_000_000L) {
+            publish();
+            previousPublishNanos = now;
+        }
+    }
+
+    private static void publish() {
+        for (Scope scope : scopes) scope.publish();
+        Logger.recordOutput(LOOP_OVERRUNS_KEY, totalLoopOverruns);
+        Logger.recordOutput(WINDOW_LOOP_OVERRUNS_KEY, windowLoopOverruns);
+        windowLoopOverruns = 0;
+    }
+
+    /** A named section of code that is timed every loop. */
+    public static final class Scope {
+        private final String path;
+        private final String p50Key, p95Key, p99Key, maxKey, samplesKey;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long startNanos = -1;
+
+        private Scope(String path) {
+            this.path = path;
+            final String prefix = PROFILER_PATH + path + "/";
+            this.p50Key = prefix + "P50MS";
+            this.p95Key = prefix + "P95MS";
+            this.p99Key = prefix + "P99MS";
+            this.maxKey = prefix + "MaxMS";
+            this.samplesKey = prefix + "Samples";
+        }
+
+        /** Creates a scope nested in this one, to be stored and reused. */
+        public Scope child(String name) {
+            final Scope child = new Scope(path + "/" + name);
+            scopes.add(child);
+            return child;
+        }
+
+        public void begin() {
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Ends the scope and records its duration.
+         *
+         * @return the duration since {@link #begin()}, in nanoseconds, or 0 if the scope was not begun
+         */
+        public long end() {
+            if (startNanos < 0) return 0;
+            final long elapsedNanos = System.nanoTime() - startNanos;
+            histogram.record(elapsedNanos);
+            startNanos = -1;
+            return elapsedNanos;
+        }
+
+        private void publish() {
+            Logger.recordOutput(p50Key, histogram.getValueAtPercentile(50) / 1_000_000.0);
+            Logger.recordOutput(p95Key, histogram.getValueAtPercentile(95) / 1_000_000.0);
+            Logger.recordOutput(p99Key, histogram.getValueAtPercentile(99) / 1_000_000.0);
+            Logger.recordOutput(maxKey, histogram.getMaxNanos() / 1_000_000.0);
+            Logger.recordOutput(samplesKey, histogram.getTotalCount());
+            histogram.reset();
+        }
+    }
+}
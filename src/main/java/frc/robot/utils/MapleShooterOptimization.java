@@ -8,6 +8,7 @@ import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.subsystems.drive.HolonomicDriveSubsystem;
 import frc.robot.utils.CustomConfigs.MapleInterpolationTable;
+import frc.robot.utils.CustomMaths.TrilinearLookupGrid;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
@@ -64,10 +65,31 @@ public class MapleShooterOptimization {
             double[] shooterAngleDegrees,
             double[] shooterRPM,
             double[] projectileFlightTimeSeconds) {
+        this(
+                name,
+                MapleInterpolationTable.InterpolationMode.MONOTONE_CUBIC,
+                distancesToTargetsMeters,
+                shooterAngleDegrees,
+                shooterRPM,
+                projectileFlightTimeSeconds);
+    }
+
+    /**
+     * @param interpolationMode how the shooter states are interpolated between the measured distances,
+     *     {@link MapleInterpolationTable.InterpolationMode#MONOTONE_CUBIC} gives smooth angle and RPM change rates
+     */
+    public MapleShooterOptimization(
+            String name,
+            MapleInterpolationTable.InterpolationMode interpolationMode,
+            double[] distancesToTargetsMeters,
+            double[] shooterAngleDegrees,
+            double[] shooterRPM,
+            double[] projectileFlightTimeSeconds) {
         this(
                 name,
                 new MapleInterpolationTable(
                         name,
+                        interpolationMode,
                         new Variable("Distance-To-Target", distancesToTargetsMeters),
                         new Variable("Shooter-Angle-Degrees", shooterAngleDegrees),
                         new Variable("Shooter-RPM", shooterRPM),
@@ -87,42 +109,187 @@ public class MapleShooterOptimization {
         return table.interpolateVariable("Flight-Time", distanceToTargetMeters);
     }
 
+    /* the shoot-on-the-move solver stops when the flight time changes by less than this, or after max iterations */
+    private static final double FLIGHT_TIME_TOLERANCE_SECONDS = 0.001;
+    private static final int SOLVER_MAX_ITERATIONS = 10;
+
+    /* the results of the latest solve */
+    private double solvedFlightTimeSeconds, solvedDistanceToTargetMeters, solvedRobotX, solvedRobotY;
+    private double solverResidualSeconds;
+    private int solverIterations;
+
+    /**
+     * Solves for the flight time of the shot while the robot is moving.
+     *
+     * <p>The robot shoots from where it is, but the projectile keeps the chassis velocity; so the shot must land on a
+     * virtual target, offset by the chassis velocity times the flight time. The flight time depends on the distance to
+     * that virtual target, so the solver iterates distance, flight time, virtual target until the flight time settles.
+     * Nothing is allocated, the results are stored in the solved* and solver* fields.
+     */
+    private void solveShootOnTheMove(
+            double targetX, double targetY, double robotX, double robotY, double velocityX, double velocityY) {
+        double flightTimeSeconds =
+                table.interpolateVariable("Flight-Time", Math.hypot(targetX - robotX, targetY - robotY));
+        double residualSeconds = Double.POSITIVE_INFINITY;
+        int iterations = 0;
+        while (iterations < SOLVER_MAX_ITERATIONS && residualSeconds > FLIGHT_TIME_TOLERANCE_SECONDS) {
+            solvedRobotX = robotX + velocityX * flightTimeSeconds;
+            solvedRobotY = robotY + velocityY * flightTimeSeconds;
+            solvedDistanceToTargetMeters = Math.hypot(targetX - solvedRobotX, targetY - solvedRobotY);
+            final double newFlightTimeSeconds = table.interpolateVariable("Flight-Time", solvedDistanceToTargetMeters);
+            residualSeconds = Math.abs(newFlightTimeSeconds - flightTimeSeconds);
+            flightTimeSeconds = newFlightTimeSeconds;
+            iterations++;
+        }
+        solvedFlightTimeSeconds = flightTimeSeconds;
+        solverIterations = iterations;
+        solverResidualSeconds = residualSeconds;
+    }
+
+    private void logSolverResults() {
+        Logger.recordOutput("ShooterStateOptimization/SolverIterations", solverIterations);
+        Logger.recordOutput("ShooterStateOptimization/SolverResidualSeconds", solverResidualSeconds);
+        Logger.recordOutput("ShooterStateOptimization/FlightTimeSeconds", solvedFlightTimeSeconds);
+    }
+
+    /* the channels of the precomputed grid */
+    private static final int GRID_SHOOTER_ANGLE = 0,
+            GRID_SHOOTER_ANGLE_RATE = 1,
+            GRID_SHOOTER_RPM = 2,
+            GRID_SHOOTER_RPM_RATE = 3,
+            GRID_AIM_OFFSET = 4,
+            GRID_CHANNELS = 5;
+
+    private TrilinearLookupGrid precomputedGrid = null;
+    private double precomputedGridMaxSpeedMPS;
+    private int precomputedGridDistanceNodes, precomputedGridVelocityNodes, precomputedGridTableVersion;
+    private final double[] gridSample = new double[GRID_CHANNELS];
+
+    /**
+     * Enables the precomputed grid, aiming then becomes a few array reads.
+     *
+     * <p>The shooter states and the chassis aim offsets are baked over (distance to target, radial velocity,
+     * tangential velocity), and sampled trilinearly. The grid is rebuilt when the table is tuned on the dashboard.
+     *
+     * @param maxChassisSpeedMPS the range of the radial and tangential velocities, faster speeds are clamped
+     * @param distanceNodes the amount of nodes along the distance axis
+     * @param velocityNodes the amount of nodes along each velocity axis
+     */
+    public void enablePrecomputedGrid(double maxChassisSpeedMPS, int distanceNodes, int velocityNodes) {
+        this.precomputedGridMaxSpeedMPS = maxChassisSpeedMPS;
+        this.precomputedGridDistanceNodes = distanceNodes;
+        this.precomputedGridVelocityNodes = velocityNodes;
+        buildPrecomputedGrid();
+    }
+
+    private void buildPrecomputedGrid() {
+        precomputedGridTableVersion = table.getCompiledVersion();
+        precomputedGrid = new TrilinearLookupGrid(
+                minShootingDistance,
+                maxShootingDistance,
+                precomputedGridDistanceNodes,
+                -precomputedGridMaxSpeedMPS,
+                precomputedGridMaxSpeedMPS,
+                precomputedGridVelocityNodes,
+                -precomputedGridMaxSpeedMPS,
+                precomputedGridMaxSpeedMPS,
+                precomputedGridVelocityNodes,
+                GRID_CHANNELS);
+        precomputedGrid.build(this::computeGridNode);
+    }
+
+    /* in the frame of the grid, the robot is at the origin and the target is at (distance, 0) */
+    private void computeGridNode(double distance, double radialVelocity, double tangentialVelocity, double[] out) {
+        solveShootOnTheMove(distance, 0, 0, 0, -radialVelocity, tangentialVelocity);
+        out[GRID_SHOOTER_ANGLE] = table.interpolateVariable("Shooter-Angle-Degrees", solvedDistanceToTargetMeters);
+        out[GRID_SHOOTER_ANGLE_RATE] =
+                table.findDerivative("Shooter-Angle-Degrees", solvedDistanceToTargetMeters) * radialVelocity;
+        out[GRID_SHOOTER_RPM] = table.interpolateVariable("Shooter-RPM", solvedDistanceToTargetMeters);
+        out[GRID_SHOOTER_RPM_RATE] = table.findDerivative("Shooter-RPM", solvedDistanceToTargetMeters) * radialVelocity;
+        out[GRID_AIM_OFFSET] = Math.atan2(-solvedRobotY, distance - solvedRobotX);
+    }
+
+    /**
+     * Samples the grid, the results are in {@link #gridSample}.
+     *
+     * @return the direction from the robot to the target, in radians
+     */
+    private double sampleGrid(
+            double targetX, double targetY, double robotX, double robotY, double robotVX, double robotVY) {
+        if (table.getCompiledVersion() != precomputedGridTableVersion) buildPrecomputedGrid();
+
+        final double dx = targetX - robotX, dy = targetY - robotY, distance = Math.hypot(dx, dy);
+        final double ux = distance == 0 ? 1 : dx / distance, uy = distance == 0 ? 0 : dy / distance;
+        precomputedGrid.sample(distance, -(ux * robotVX + uy * robotVY), ux * robotVY - uy * robotVX, gridSample);
+        return Math.atan2(dy, dx);
+    }
+
     public Rotation2d getShooterFacing(
             Translation2d targetPosition, Translation2d robotPosition, ChassisSpeeds robotVelocityFieldRelative) {
-        final double flightTime = getFlightTimeSeconds(targetPosition, robotPosition);
-        final Translation2d robotPositionAfterFlightTime = robotPosition.plus(new Translation2d(
-                robotVelocityFieldRelative.vxMetersPerSecond * flightTime,
-                robotVelocityFieldRelative.vyMetersPerSecond * flightTime));
+        return Rotation2d.fromRadians(getShooterFacingRadians(
+                targetPosition.getX(),
+                targetPosition.getY(),
+                robotPosition.getX(),
+                robotPosition.getY(),
+                robotVelocityFieldRelative.vxMetersPerSecond,
+                robotVelocityFieldRelative.vyMetersPerSecond));
+    }
+
+    /** Same as {@link #getShooterFacing(Translation2d, Translation2d, ChassisSpeeds)}, without allocating. */
+    public double getShooterFacingRadians(
+            double targetX, double targetY, double robotX, double robotY, double robotVX, double robotVY) {
+        if (precomputedGrid != null)
+            return sampleGrid(targetX, targetY, robotX, robotY, robotVX, robotVY) + gridSample[GRID_AIM_OFFSET];
+
+        solveShootOnTheMove(targetX, targetY, robotX, robotY, robotVX, robotVY);
+        logSolverResults();
 
-        return targetPosition.minus(robotPositionAfterFlightTime).getAngle();
+        return Math.atan2(targetY - solvedRobotY, targetX - solvedRobotX);
     }
 
     public ShooterState getOptimizedShootingState(
             Translation2d targetPosition, Translation2d robotPosition, ChassisSpeeds robotVelocityFieldRelative) {
-        final double flightTimeSeconds = getFlightTimeSeconds(targetPosition, robotPosition);
-        final Translation2d robotNewPosition = robotPosition.plus(new Translation2d(
-                robotVelocityFieldRelative.vxMetersPerSecond * flightTimeSeconds,
-                robotVelocityFieldRelative.vyMetersPerSecond * flightTimeSeconds));
-        final double newDistanceToTarget = targetPosition.getDistance(robotNewPosition);
-        final Rotation2d
-                chassisSpeedsDirection =
-                        new Rotation2d(
-                                robotVelocityFieldRelative.vxMetersPerSecond,
-                                robotVelocityFieldRelative.vyMetersPerSecond),
-                targetToChassisHeading = robotPosition.minus(targetPosition).getAngle();
-        final double distanceToTargetChangingRate =
-                targetToChassisHeading.minus(chassisSpeedsDirection).getCos()
-                        * Math.hypot(
-                                robotVelocityFieldRelative.vyMetersPerSecond,
-                                robotVelocityFieldRelative.vxMetersPerSecond);
+        if (precomputedGrid != null) {
+            sampleGrid(
+                    targetPosition.getX(),
+                    targetPosition.getY(),
+                    robotPosition.getX(),
+                    robotPosition.getY(),
+                    robotVelocityFieldRelative.vxMetersPerSecond,
+                    robotVelocityFieldRelative.vyMetersPerSecond);
+            return new ShooterState(
+                    gridSample[GRID_SHOOTER_ANGLE],
+                    gridSample[GRID_SHOOTER_ANGLE_RATE],
+                    gridSample[GRID_SHOOTER_RPM],
+                    gridSample[GRID_SHOOTER_RPM_RATE]);
+        }
+
+        solveShootOnTheMove(
+                targetPosition.getX(),
+                targetPosition.getY(),
+                robotPosition.getX(),
+                robotPosition.getY(),
+                robotVelocityFieldRelative.vxMetersPerSecond,
+                robotVelocityFieldRelative.vyMetersPerSecond);
+        final double newDistanceToTarget = solvedDistanceToTargetMeters;
+        logSolverResults();
+
+        /* the rate at which the distance from the robot to the target changes, along the robot-to-target direction */
+        final double distanceToTarget = targetPosition.getDistance(robotPosition);
+        final double distanceToTargetChangingRate = distanceToTarget == 0
+                ? 0
+                : ((robotPosition.getX() - targetPosition.getX()) * robotVelocityFieldRelative.vxMetersPerSecond
+                                + (robotPosition.getY() - targetPosition.getY())
+                                        * robotVelocityFieldRelative.vyMetersPerSecond)
+                        / distanceToTarget;
 
         Logger.recordOutput("ShooterStateOptimization/distance to target change rate", distanceToTargetChangingRate);
         final double shooterAngleDeg = table.interpolateVariable("Shooter-Angle-Degrees", newDistanceToTarget),
                 shooterAngleDegChangeRateToDistance =
-                        table.findDerivative("Shooter-Angle-Degrees", newDistanceToTarget, 0.1),
+                        table.findDerivative("Shooter-Angle-Degrees", newDistanceToTarget),
                 shooterAngleDegChangeRateDegPerSec = shooterAngleDegChangeRateToDistance * distanceToTargetChangingRate,
                 shooterRPM = table.interpolateVariable("Shooter-RPM", newDistanceToTarget),
-                shooterRPMChangeRateToDistance = table.findDerivative("Shooter-RPM", newDistanceToTarget, 0.1),
+                shooterRPMChangeRateToDistance = table.findDerivative("Shooter-RPM", newDistanceToTarget),
                 shooterRPMChangeRateRPMPerSec = shooterRPMChangeRateToDistance * distanceToTargetChangingRate;
 
         return new ShooterState(
@@ -0,0 +1,118 @@
+package frc.robot.utils;
+
+import frc.robot.utils.CustomMaths.PrimitiveTrapezoidProfile;
+import frc.robot.utils.CustomPIDs.MaplePIDController;
+
+/**
+ *
+ *
+ * <h1>Profiled Controller for Aligning the Chassis to a Position</h1>
+ *
+ * <p>Keeps a translational setpoint that moves toward the goal along a 2D trapezoid profile, planned every period from
+ * the setpoint state to the current goal (so a moving goal is followed without restarting). The profile is split into
+ * the direction toward the goal, which is driven to the goal with zero velocity, and the perpendicular direction, whose
+ * velocity is decelerated to zero (the next period plans toward the goal from wherever that leaves the setpoint).
+ *
+ * <p>The setpoint velocity is used as feed-forward and the PID controllers only correct the residual error between the
+ * setpoint and the measured position. If the chassis falls too far behind the setpoint, the profile is re-planned from
+ * the measured state.
+ */
+public class PoseAlignmentController {
+    private static final double REPLAN_TRACKING_ERROR_METERS = 0.3;
+
+    private final PrimitiveTrapezoidProfile profile;
+    private final MaplePIDController xController, yController;
+    private final double maxVelocityMPS, maxAccelerationMPSSq;
+    private double setpointX, setpointY, setpointVX, setpointVY;
+
+    /**
+     * @param maxVelocityMPS the maximum velocity of the profile
+     * @param maxAccelerationMPSSq the maximum acceleration of the profile
+     * @param translationCloseLoopConfig the PID configuration for the residual error, for both x and y
+     */
+    public PoseAlignmentController(
+            double maxVelocityMPS,
+            double maxAccelerationMPSSq,
+            MaplePIDController.MaplePIDConfig translationCloseLoopConfig) {
+        this.profile = new PrimitiveTrapezoidProfile(maxVelocityMPS, maxAccelerationMPSSq);
+        this.xController = new MaplePIDController(translationCloseLoopConfig);
+        this.yController = new MaplePIDController(translationCloseLoopConfig);
+        this.maxVelocityMPS = maxVelocityMPS;
+        this.maxAccelerationMPSSq = maxAccelerationMPSSq;
+    }
+
+    /** Re-plans from a measured state, field-relative. */
+    public void reset(double robotX, double robotY, double robotVX, double robotVY) {
+        setpointX = robotX;
+        setpointY = robotY;
+        setpointVX = robotVX;
+        setpointVY = robotVY;
+        xController.reset();
+        yController.reset();
+    }
+
+    /**
+     * Advances the setpoint by one period toward the goal, and calculates the velocity to follow it.
+     *
+     * @param robotX the measured x position of the robot, field-relative, in meters
+     * @param robotY the measured y position of the robot, field-relative, in meters
+     * @param robotVX the measured x velocity of the robot, field-relative, in m/s
+     * @param robotVY the measured y velocity of the robot, field-relative, in m/s
+     * @param goalX the x position of the goal, in meters
+     * @param goalY the y position of the goal, in meters
+     * @param dtSeconds the robot period
+     * @param outFieldVelocity the velocity to run, field-relative, as (vx, vy)
+     */
+    public void calculate(
+            double robotX,
+            double robotY,
+            double robotVX,
+            double robotVY,
+            double goalX,
+            double goalY,
+            double dtSeconds,
+            double[] outFieldVelocity) {
+        if (Math.hypot(setpointX - robotX, setpointY - robotY) > REPLAN_TRACKING_ERROR_METERS)
+            reset(robotX, robotY, robotVX, robotVY);
+
+        final double dx = goalX - setpointX, dy = goalY - setpointY, distance = Math.hypot(dx, dy);
+        /* u is the direction toward the goal, n is perpendicular to it */
+        final double ux = distance < 1e-9 ? 1 : dx / distance, uy = distance < 1e-9 ? 0 : dy / distance;
+        final double nx = -uy, ny = ux;
+
+        profile.calculate(dtSeconds, 0, setpointVX * ux + setpointVY * uy, distance, 0);
+        final double parallelPosition = profile.getPosition(), parallelVelocity = profile.getVelocity();
+        final double previousPerpendicularVelocity = setpointVX * nx + setpointVY * ny;
+        final double perpendicularVelocity = previousPerpendicularVelocity
+                - Math.copySign(
+                        Math.min(Math.abs(previousPerpendicularVelocity), maxAccelerationMPSSq * dtSeconds),
+                        previousPerpendicularVelocity);
+        final double perpendicularPosition = (previousPerpendicularVelocity + perpendicularVelocity) / 2 * dtSeconds;
+
+        setpointX += ux * parallelPosition + nx * perpendicularPosition;
+        setpointY += uy * parallelPosition + ny * perpendicularPosition;
+        setpointVX = ux * parallelVelocity + nx * perpendicularVelocity;
+        setpointVY = uy * parallelVelocity + ny * perpendicularVelocity;
+        final double setpointSpeed = Math.hypot(setpointVX, setpointVY);
+        if (setpointSpeed > maxVelocityMPS) {
+            setpointVX *= maxVelocityMPS / setpointSpeed;
+            setpointVY *= maxVelocityMPS / setpointSpeed;
+        }
+
+        outFieldVelocity[0] = setpointVX + xController.calculate(robotX, setpointX);
+        outFieldVelocity[1] = setpointVY + yController.calculate(robotY, setpointY);
+    }
+
+    public double getSetpointX() {
+        return setpointX;
+    }
+
+    public double getSetpointY() {
+        return setpointY;
+    }
+
+    /** @return the distance between the setpoint and a measured position */
+    public double getTrackingErrorMeters(double robotX, double robotY) {
+        return Math.hypot(setpointX - robotX, setpointY - robotY);
+    }
+}
@@ -0,0 +1,38 @@
+package frc.robot.utils;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/**
+ *
+ *
+ * <h1>The state of one simulated match.</h1>
+ *
+ * <p>Owns the simulated field and the AI robots on it, which the robot code reaches through this object rather than
+ * through static fields, so that a fresh match is built just by creating a new context.
+ *
+ * <p>One robot program runs one context. maple-sim still looks up {@link
+ * org.ironmaple.simulation.SimulatedArena#getInstance()} internally, and the WPILib command scheduler, the driver
+ * station and the AdvantageKit logger are global too, so simulations run in parallel as separate processes, see
+ * {@link frc.robot.HeadlessAutoRunner}.
+ */
+public class SimulationContext {
+    public final SubTickedCrescendoArena arena;
+    private AIRobotInSimulation[] aiRobots = new AIRobotInSimulation[0];
+
+    public SimulationContext() {
+        this.arena = SubTickedCrescendoArena.install();
+    }
+
+    /** Adds the opponent and alliance-partner robots to the field. */
+    public void startAIRobots() {
+        this.aiRobots = AIRobotInSimulation.startOpponentRobotSimulations(arena);
+    }
+
+    public Pose2d[] getOpponentRobotPoses() {
+        return aiRobots.length == 0 ? new Pose2d[0] : AIRobotInSimulation.getOpponentRobotPoses(aiRobots);
+    }
+
+    public Pose2d[] getAlliancePartnerRobotPoses() {
+        return aiRobots.length == 0 ? new Pose2d[0] : AIRobotInSimulation.getAlliancePartnerRobotPoses(aiRobots);
+    }
+}
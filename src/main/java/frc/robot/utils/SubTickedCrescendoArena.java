@@ -0,0 +1,64 @@
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.dynamics.TimeStep;
+import org.dyn4j.world.PhysicsWorld;
+import org.dyn4j.world.listener.StepListenerAdapter;
+import org.ironmaple.simulation.SimulatedArena;
+import org.ironmaple.simulation.gamepieces.GamePieceOnFieldSimulation;
+import org.ironmaple.simulation.seasonspecific.crescendo2024.Arena2024Crescendo;
+
+/**
+ *
+ *
+ * <h1>The simulated field, with callbacks on every physics sub-tick.</h1>
+ *
+ * <p>{@link SimulatedArena#simulationPeriodic()} runs several physics sub-ticks per robot period, while the robot code
+ * runs once per period, so the simulated motors hold the same voltage for the whole period. The callbacks added with
+ * {@link #addSubTickCallback(SubTickCallback)} run on every sub-tick, after the drivetrains are updated and right
+ * before the physics step, so that control laws can run at the rate of the physics, like a high-rate controller on
+ * the real robot. What they request is applied from the next sub-tick.
+ *
+ * <p>maple-sim has no sub-tick hook, so the callbacks are run by a dyn4j step listener on the physics world, which is
+ * stepped exactly once per sub-tick.
+ */
+public class SubTickedCrescendoArena extends Arena2024Crescendo {
+    @FunctionalInterface
+    public interface SubTickCallback {
+        /** @param dtSeconds the duration of the physics sub-tick */
+        void simulationSubTick(double dtSeconds);
+    }
+
+    private final List<SubTickCallback> subTickCallbacks = new ArrayList<>();
+
+    public SubTickedCrescendoArena() {
+        super();
+        super.physicsWorld.addStepListener(new StepListenerAdapter<Body>() {
+            @Override
+            public void begin(TimeStep step, PhysicsWorld<Body, ?> world) {
+                for (SubTickCallback callback : subTickCallbacks) callback.simulationSubTick(step.getDeltaTime());
+            }
+        });
+    }
+
+    /** Creates the arena and makes it the one returned by {@link SimulatedArena#getInstance()}. */
+    public static SubTickedCrescendoArena install() {
+        final SubTickedCrescendoArena arena = new SubTickedCrescendoArena();
+        SimulatedArena.overrideInstance(arena);
+        return arena;
+    }
+
+    /** Adds a callback, run on every physics sub-tick, in the order they are added. */
+    public void addSubTickCallback(SubTickCallback callback) {
+        subTickCallbacks.add(callback);
+    }
+
+    /** @return whether a body, like a drivetrain, touches an obstacle or another robot, the game pieces excluded */
+    public boolean isTouchingObstacle(Body body) {
+        for (Body other : super.physicsWorld.getInContactBodies(body, false))
+            if (!(other instanceof GamePieceOnFieldSimulation)) return true;
+        return false;
+    }
+}
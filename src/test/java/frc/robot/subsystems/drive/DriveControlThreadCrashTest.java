@@ -0,0 +1,96 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.constants.DriveTrainConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.Robot;
+import frc.robot.subsystems.drive.IO.ModuleIO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the modules are stopped and handed back to the main thread when a tick of the {@link DriveControlThread}
+ * throws.
+ */
+class DriveControlThreadCrashTest {
+    private static final double SUB_TICK_SECONDS = Robot.defaultPeriodSecs / SIMULATION_TICKS_IN_1_PERIOD;
+
+    @BeforeAll
+    static void initializeHAL() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @Test
+    void crashStopsTheModules() {
+        final RecordingModuleIO[] moduleIOs = new RecordingModuleIO[4];
+        final SwerveModule[] modules = new SwerveModule[4];
+        for (int i = 0; i < 4; i++) modules[i] = new SwerveModule(moduleIOs[i] = new RecordingModuleIO(), "Test" + i);
+        final DriveControlThread controlThread = new DriveControlThread(modules, SUB_TICK_SECONDS, 1);
+
+        for (int i = 0; i < 10; i++) {
+            controlThread.publishSetpoint(2, 0, 0, true);
+            controlThread.simulationSubTick(SUB_TICK_SECONDS);
+        }
+        assertFalse(controlThread.isCrashed());
+        for (RecordingModuleIO moduleIO : moduleIOs) assertNotEquals(0, moduleIO.driveVoltage, "driving before crash");
+
+        moduleIOs[2].failing = true;
+        controlThread.publishSetpoint(2, 0, 0, true);
+        controlThread.simulationSubTick(SUB_TICK_SECONDS);
+        assertTrue(controlThread.isCrashed());
+        for (RecordingModuleIO moduleIO : moduleIOs) {
+            assertEquals(0, moduleIO.driveVoltage, "drive output after crash");
+            assertEquals(0, moduleIO.steerPower, "steer output after crash");
+        }
+
+        /* no more ticks run after the crash */
+        final int feedbackReadsAtCrash = moduleIOs[0].feedbackReads;
+        controlThread.publishSetpoint(2, 0, 0, true);
+        controlThread.simulationSubTick(SUB_TICK_SECONDS);
+        assertEquals(feedbackReadsAtCrash, moduleIOs[0].feedbackReads);
+
+        /* the modules are controlled by the main thread again, so they stop themselves when disabled */
+        moduleIOs[0].setDriveVoltage(6);
+        moduleIOs[0].setSteerPowerPercent(0.5);
+        modules[0].onDisable();
+        assertEquals(0, moduleIOs[0].driveVoltage, "drive output after disable");
+        assertEquals(0, moduleIOs[0].steerPower, "steer output after disable");
+    }
+
+    /** A still module that records its outputs, and whose feedback can be made to fail. */
+    private static final class RecordingModuleIO implements ModuleIO {
+        private final Rotation2d steerFacing = new Rotation2d();
+        boolean failing = false;
+        double driveVoltage = 0, steerPower = 0;
+        int feedbackReads = 0;
+
+        @Override
+        public void updateInputs(ModuleIOInputs inputs) {
+            inputs.steerFacing = steerFacing;
+            inputs.hardwareConnected = true;
+        }
+
+        @Override
+        public void updateControlFeedback(double[] feedback) {
+            feedbackReads++;
+            if (failing) throw new IllegalStateException("simulated feedback failure");
+            feedback[0] = 0;
+            feedback[1] = 0;
+        }
+
+        @Override
+        public void setDriveVoltage(double speedPercent) {
+            driveVoltage = speedPercent;
+        }
+
+        @Override
+        public void setSteerPowerPercent(double powerPercent) {
+            steerPower = powerPercent;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package frc.robot.subsystems.drive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.Robot;
+import frc.robot.testing.Allocations;
+import frc.robot.testing.ConstantSpeedModuleIO;
+import frc.robot.testing.StillGyroIO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link SwerveDrive#periodic(double, boolean)} does not allocate once warmed up, in simulation mode: the
+ * odometry inputs, the module positions and the odometry batch are all pre-allocated and refilled in place.
+ *
+ * <p>The module and gyro IOs are synthetic, so that only the drive code is measured, not the physics simulation.
+ */
+class SwerveDriveAllocationTest {
+    private static final int WARM_UP_CALLS = 20_000, MEASURED_CALLS = 1_000;
+
+    @BeforeAll
+    static void initializeHAL() {
+        assertTrue(HAL.initialize(500, 0));
+        /* the clock stays at zero, so the vision timeout alert, which formats its text while displayed, stays off */
+        SimHooks.pauseTiming();
+        SimHooks.restartTiming();
+    }
+
+    @Test
+    void periodicDoesNotAllocate() {
+        final SwerveDrive drive = new SwerveDrive(
+                SwerveDrive.DriveType.GENERIC,
+                new StillGyroIO(),
+                new ConstantSpeedModuleIO(2, Robot.defaultPeriodSecs),
+                new ConstantSpeedModuleIO(2, Robot.defaultPeriodSecs),
+                new ConstantSpeedModuleIO(2, Robot.defaultPeriodSecs),
+                new ConstantSpeedModuleIO(2, Robot.defaultPeriodSecs));
+
+        final long allocatedBytes = Allocations.allocatedBytes(
+                () -> drive.periodic(Robot.defaultPeriodSecs, true), WARM_UP_CALLS, MEASURED_CALLS);
+        assertEquals(0, allocatedBytes, "bytes allocated by " + MEASURED_CALLS + " drive periodics");
+    }
+}
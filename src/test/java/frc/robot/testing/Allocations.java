@@ -0,0 +1,34 @@
+package frc.robot.testing;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap allocated by the current thread, to check that the hot paths of the robot loop do not allocate.
+ *
+ * <p>Reads {@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()}, which is exact: it counts every
+ * object allocated by the thread, including the ones in its thread-local allocation buffer.
+ */
+public final class Allocations {
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocations() {}
+
+    /**
+     * Runs an action to warm it up, then measures the bytes it allocates over more calls.
+     *
+     * <p>The warm-up takes the action through class loading, the one-time initializations and the JIT compilers, so
+     * that only the steady state is measured.
+     *
+     * @return the bytes allocated by the current thread during the measured calls
+     */
+    public static long allocatedBytes(Runnable action, int warmUpCalls, int measuredCalls) {
+        for (int i = 0; i < warmUpCalls; i++) action.run();
+        /* the first reading may initialize the measurement itself */
+        THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+
+        final long allocatedBytesBefore = THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < measuredCalls; i++) action.run();
+        return THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() - allocatedBytesBefore;
+    }
+}
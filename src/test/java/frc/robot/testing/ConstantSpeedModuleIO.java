@@ -0,0 +1,48 @@
+package frc.robot.testing;
+
+import static edu.wpi.first.units.Units.Meters;
+import static frc.robot.constants.DriveTrainConstants.*;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.subsystems.drive.IO.ModuleIO;
+
+/**
+ * A module driving straight ahead at a constant speed, with one odometry sample per simulation tick.
+ *
+ * <p>Shared by the tests and the benchmarks, it reuses its arrays so that only the drive code is measured.
+ */
+public final class ConstantSpeedModuleIO implements ModuleIO {
+    private final double revolutionsPerSample;
+    private final Rotation2d steerFacing = new Rotation2d();
+    private double revolutions = 0;
+
+    /**
+     * @param wheelSpeedMPS the speed of the wheel, in m/s
+     * @param periodSeconds the time between two calls to {@link #updateInputs(ModuleIOInputs)}
+     */
+    public ConstantSpeedModuleIO(double wheelSpeedMPS, double periodSeconds) {
+        this.revolutionsPerSample = wheelSpeedMPS
+                / (2 * Math.PI * WHEEL_RADIUS.in(Meters))
+                * periodSeconds
+                / SIMULATION_TICKS_IN_1_PERIOD;
+    }
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {
+        inputs.odometrySamplesCount = SIMULATION_TICKS_IN_1_PERIOD;
+        for (int i = 0; i < SIMULATION_TICKS_IN_1_PERIOD; i++) {
+            inputs.odometryDriveWheelRevolutions[i] = revolutions += revolutionsPerSample;
+            inputs.odometrySteerPositionsRad[i] = 0;
+        }
+        inputs.driveWheelFinalRevolutions = revolutions;
+        inputs.driveWheelFinalVelocityRevolutionsPerSec = revolutionsPerSample * SIMULATION_TICKS_IN_1_PERIOD;
+        inputs.steerFacing = steerFacing;
+        inputs.hardwareConnected = true;
+    }
+
+    @Override
+    public void updateControlFeedback(double[] feedback) {
+        feedback[0] = revolutionsPerSample * SIMULATION_TICKS_IN_1_PERIOD;
+        feedback[1] = 0;
+    }
+}
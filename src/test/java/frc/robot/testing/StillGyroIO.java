@@ -0,0 +1,20 @@
+package frc.robot.testing;
+
+import static frc.robot.constants.DriveTrainConstants.SIMULATION_TICKS_IN_1_PERIOD;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.subsystems.drive.IO.GyroIO;
+
+/** A gyro facing forward, with one odometry sample per simulation tick. */
+public final class StillGyroIO implements GyroIO {
+    private final Rotation2d yaw = new Rotation2d();
+
+    @Override
+    public void updateInputs(GyroIOInputs inputs) {
+        inputs.connected = true;
+        inputs.yawPosition = yaw;
+        inputs.odometrySamplesCount = SIMULATION_TICKS_IN_1_PERIOD;
+        for (int i = 0; i < SIMULATION_TICKS_IN_1_PERIOD; i++) inputs.odometryYawPositionsRad[i] = 0;
+        inputs.yawVelocityRadPerSec = 0;
+    }
+}
@@ -0,0 +1,70 @@
+package frc.robot.utils;
+
+import static edu.wpi.first.units.Units.*;
+import static frc.robot.constants.DriveTrainConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import frc.robot.Robot;
+import frc.robot.constants.DriveControlLoops;
+import frc.robot.testing.Allocations;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link ChassisHeadingController#calculate(double, double, double, double, double, double)} does not
+ * allocate once warmed up, for every kind of heading request.
+ */
+class ChassisHeadingControllerAllocationTest {
+    private static final int WARM_UP_CALLS = 20_000, MEASURED_CALLS = 1_000;
+
+    private final ChassisHeadingController controller = new ChassisHeadingController(
+            new TrapezoidProfile.Constraints(
+                    CHASSIS_MAX_ANGULAR_VELOCITY.in(RadiansPerSecond),
+                    CHASSIS_MAX_ANGULAR_ACCELERATION.in(RadiansPerSecondPerSecond)),
+            DriveControlLoops.CHASSIS_ROTATION_CLOSE_LOOP,
+            new Rotation2d(),
+            DriveControlLoops.CHASSIS_HEADING_ACTUATION_DELAY_SECONDS);
+    private double robotY = 1;
+
+    @BeforeAll
+    static void initializeHAL() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @Test
+    void faceToRotationDoesNotAllocate() {
+        controller.setHeadingRequest(new ChassisHeadingController.FaceToRotationRequest(Rotation2d.fromDegrees(90)));
+        assertCalculateDoesNotAllocate();
+    }
+
+    @Test
+    void faceToTargetDoesNotAllocate() {
+        final Translation2d target = new Translation2d(16, 5.5);
+        controller.setHeadingRequest(new ChassisHeadingController.FaceToTargetRequest(() -> target, null));
+        assertCalculateDoesNotAllocate();
+    }
+
+    @Test
+    void nullRequestDoesNotAllocate() {
+        controller.setHeadingRequest(new ChassisHeadingController.NullRequest());
+        assertCalculateDoesNotAllocate();
+    }
+
+    private void assertCalculateDoesNotAllocate() {
+        controller.setOdometryLatencySeconds(0.01);
+        final long allocatedBytes =
+                Allocations.allocatedBytes(this::calculateWhileTranslating, WARM_UP_CALLS, MEASURED_CALLS);
+        assertEquals(0, allocatedBytes, "bytes allocated by " + MEASURED_CALLS + " heading corrections");
+    }
+
+    /* drives across the field, wrapping around so that the pose stays in range */
+    private void calculateWhileTranslating() {
+        robotY = robotY > 7 ? 1 : robotY + 3 * Robot.defaultPeriodSecs;
+        controller.calculate(0, 3, 0.5, 10, robotY, 0.1);
+    }
+}
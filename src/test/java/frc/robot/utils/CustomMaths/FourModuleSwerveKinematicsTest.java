@@ -0,0 +1,177 @@
+package frc.robot.utils.CustomMaths;
+
+import static frc.robot.constants.DriveTrainConstants.MODULE_TRANSLATIONS;
+import static frc.robot.utils.CustomMaths.FourModuleSwerveKinematics.MODULES_COUNT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** Compares {@link FourModuleSwerveKinematics} to {@link SwerveDriveKinematics}, on random speeds and states. */
+class FourModuleSwerveKinematicsTest {
+    private static final int SAMPLES = 1000;
+    private static final double TOLERANCE = 1e-9;
+
+    /* the robot's layout, and an asymmetric one whose center of the modules is not the center of rotation */
+    private static final Translation2d[][] LAYOUTS = {
+        MODULE_TRANSLATIONS,
+        {
+            new Translation2d(0.4, 0.2),
+            new Translation2d(0.3, -0.35),
+            new Translation2d(-0.25, 0.3),
+            new Translation2d(-0.2, -0.15)
+        }
+    };
+
+    private final Random random = new Random(488);
+
+    @Test
+    void toModuleStatesMatchesWPILib() {
+        for (Translation2d[] layout : LAYOUTS) {
+            final FourModuleSwerveKinematics kinematics = new FourModuleSwerveKinematics(layout);
+            final SwerveDriveKinematics expectedKinematics = new SwerveDriveKinematics(layout);
+            final double[] speeds = new double[MODULES_COUNT], anglesRad = new double[MODULES_COUNT];
+
+            for (int sample = 0; sample < SAMPLES; sample++) {
+                final ChassisSpeeds chassisSpeeds = randomChassisSpeeds();
+                kinematics.toModuleStates(
+                        chassisSpeeds.vxMetersPerSecond,
+                        chassisSpeeds.vyMetersPerSecond,
+                        chassisSpeeds.omegaRadiansPerSecond,
+                        speeds,
+                        anglesRad);
+                assertModuleStatesEqual(expectedKinematics.toSwerveModuleStates(chassisSpeeds), speeds, anglesRad);
+            }
+        }
+    }
+
+    @Test
+    void toModuleStatesKeepsHeadingsAtZeroSpeed() {
+        final FourModuleSwerveKinematics kinematics = new FourModuleSwerveKinematics(MODULE_TRANSLATIONS);
+        final SwerveDriveKinematics expectedKinematics = new SwerveDriveKinematics(MODULE_TRANSLATIONS);
+        final double[] speeds = new double[MODULES_COUNT], anglesRad = new double[MODULES_COUNT];
+
+        /* before any movement, the modules face forward */
+        kinematics.toModuleStates(0, 0, 0, speeds, anglesRad);
+        assertModuleStatesEqual(expectedKinematics.toSwerveModuleStates(new ChassisSpeeds()), speeds, anglesRad);
+
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            final ChassisSpeeds chassisSpeeds = randomChassisSpeeds();
+            kinematics.toModuleStates(
+                    chassisSpeeds.vxMetersPerSecond,
+                    chassisSpeeds.vyMetersPerSecond,
+                    chassisSpeeds.omegaRadiansPerSecond,
+                    speeds,
+                    anglesRad);
+            expectedKinematics.toSwerveModuleStates(chassisSpeeds);
+
+            kinematics.toModuleStates(0, 0, 0, speeds, anglesRad);
+            assertModuleStatesEqual(expectedKinematics.toSwerveModuleStates(new ChassisSpeeds()), speeds, anglesRad);
+        }
+
+        final double[] headingsRad = {0.1, -0.2, 0.3, -0.4};
+        kinematics.resetHeadings(headingsRad);
+        expectedKinematics.resetHeadings(
+                Rotation2d.fromRadians(headingsRad[0]),
+                Rotation2d.fromRadians(headingsRad[1]),
+                Rotation2d.fromRadians(headingsRad[2]),
+                Rotation2d.fromRadians(headingsRad[3]));
+        kinematics.toModuleStates(0, 0, 0, speeds, anglesRad);
+        assertModuleStatesEqual(expectedKinematics.toSwerveModuleStates(new ChassisSpeeds()), speeds, anglesRad);
+    }
+
+    @Test
+    void toChassisSpeedsMatchesWPILib() {
+        for (Translation2d[] layout : LAYOUTS) {
+            final FourModuleSwerveKinematics kinematics = new FourModuleSwerveKinematics(layout);
+            final SwerveDriveKinematics expectedKinematics = new SwerveDriveKinematics(layout);
+            final double[] speeds = new double[MODULES_COUNT], anglesRad = new double[MODULES_COUNT];
+            final double[] chassisSpeeds = new double[3];
+
+            for (int sample = 0; sample < SAMPLES; sample++) {
+                final SwerveModuleState[] states = new SwerveModuleState[MODULES_COUNT];
+                for (int i = 0; i < MODULES_COUNT; i++) {
+                    speeds[i] = randomInRange(-5, 5);
+                    anglesRad[i] = randomInRange(-Math.PI, Math.PI);
+                    states[i] = new SwerveModuleState(speeds[i], Rotation2d.fromRadians(anglesRad[i]));
+                }
+
+                kinematics.toChassisSpeeds(speeds, anglesRad, chassisSpeeds);
+                final ChassisSpeeds expected = expectedKinematics.toChassisSpeeds(states);
+                assertEquals(expected.vxMetersPerSecond, chassisSpeeds[0], TOLERANCE);
+                assertEquals(expected.vyMetersPerSecond, chassisSpeeds[1], TOLERANCE);
+                assertEquals(expected.omegaRadiansPerSecond, chassisSpeeds[2], TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    void toTwistMatchesWPILib() {
+        for (Translation2d[] layout : LAYOUTS) {
+            final FourModuleSwerveKinematics kinematics = new FourModuleSwerveKinematics(layout);
+            final SwerveDriveKinematics expectedKinematics = new SwerveDriveKinematics(layout);
+            final double[] distanceDeltas = new double[MODULES_COUNT], anglesRad = new double[MODULES_COUNT];
+            final double[] twist = new double[3];
+
+            for (int sample = 0; sample < SAMPLES; sample++) {
+                final SwerveModulePosition[] deltas = new SwerveModulePosition[MODULES_COUNT];
+                for (int i = 0; i < MODULES_COUNT; i++) {
+                    distanceDeltas[i] = randomInRange(-0.1, 0.1);
+                    anglesRad[i] = randomInRange(-Math.PI, Math.PI);
+                    deltas[i] = new SwerveModulePosition(distanceDeltas[i], Rotation2d.fromRadians(anglesRad[i]));
+                }
+
+                kinematics.toTwist(distanceDeltas, anglesRad, twist);
+                final Twist2d expected = expectedKinematics.toTwist2d(deltas);
+                assertEquals(expected.dx, twist[0], TOLERANCE);
+                assertEquals(expected.dy, twist[1], TOLERANCE);
+                assertEquals(expected.dtheta, twist[2], TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    void desaturateWheelSpeedsMatchesWPILib() {
+        final double[] speeds = new double[MODULES_COUNT];
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            final double maxSpeed = randomInRange(1, 5);
+            final SwerveModuleState[] states = new SwerveModuleState[MODULES_COUNT];
+            for (int i = 0; i < MODULES_COUNT; i++) {
+                speeds[i] = randomInRange(-8, 8);
+                states[i] = new SwerveModuleState(speeds[i], new Rotation2d());
+            }
+
+            FourModuleSwerveKinematics.desaturateWheelSpeeds(speeds, maxSpeed);
+            SwerveDriveKinematics.desaturateWheelSpeeds(states, maxSpeed);
+            for (int i = 0; i < MODULES_COUNT; i++)
+                assertEquals(states[i].speedMetersPerSecond, speeds[i], TOLERANCE, "speed of module " + i);
+        }
+    }
+
+    private static void assertModuleStatesEqual(SwerveModuleState[] expected, double[] speeds, double[] anglesRad) {
+        for (int i = 0; i < MODULES_COUNT; i++) {
+            assertEquals(expected[i].speedMetersPerSecond, speeds[i], TOLERANCE, "speed of module " + i);
+            assertEquals(
+                    0,
+                    MathUtil.angleModulus(expected[i].angle.getRadians() - anglesRad[i]),
+                    TOLERANCE,
+                    "angle of module " + i);
+        }
+    }
+
+    private ChassisSpeeds randomChassisSpeeds() {
+        return new ChassisSpeeds(randomInRange(-5, 5), randomInRange(-5, 5), randomInRange(-10, 10));
+    }
+
+    private double randomInRange(double min, double max) {
+        return min + (max - min) * random.nextDouble();
+    }
+}